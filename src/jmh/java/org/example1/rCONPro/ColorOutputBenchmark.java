@@ -0,0 +1,41 @@
+package org.example1.rCONPro;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 控制端着色：按文本查找替换的formatLogLine 与直接使用事件字段的formatEvent
+ * 每次调用依次处理下一条样本，覆盖加入/离开、聊天、警告和带异常堆栈的日志
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColorOutputBenchmark {
+    private static final int SAMPLES = 64;
+    
+    private String[] lines;
+    private LogEvent[] events;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        events = PaperLogSamples.events(SAMPLES);
+        lines = PaperLogSamples.lines(SAMPLES);
+    }
+    
+    @Benchmark
+    public String formatLogLine() {
+        next = (next + 1) % SAMPLES;
+        return ColorOutput.formatLogLine(lines[next]);
+    }
+    
+    @Benchmark
+    public String formatEvent() {
+        next = (next + 1) % SAMPLES;
+        return ColorOutput.formatEvent(events[next]);
+    }
+}
@@ -0,0 +1,155 @@
+package org.example1.rCONPro;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 负载测试用的RCON服务器 - 按原版RconClient的方式读取和响应，不需要真实的Minecraft服务器
+ * 与原版一样，每次read最多读取1460字节并当作一个完整的数据包，长度不符（多个包粘在一起或一个包被拆开）时关闭连接，
+ * 因此客户端的写出方式有问题时在这里同样会失败
+ * 认证接受任意密码；命令在指定延迟后返回"ok 命令"加填充内容，超过4096字节时像原版一样分片；
+ * 其他类型的请求（如RCONClient用于标记响应结束的类型0）按原版行为回复"Unknown request 0"
+ */
+class FakeRconServer implements Closeable {
+    private static final int MAX_CHUNK = 4096;
+    private static final int MAX_READ = 1460;
+    
+    private final ServerSocket serverSocket;
+    private final int responseBytes;
+    private final long latencyMs;
+    private final AtomicLong commandCount = new AtomicLong();
+    private final AtomicLong malformedReads = new AtomicLong();
+    private volatile boolean running = true;
+    
+    /**
+     * @param responseBytes 每个命令响应的大小
+     * @param latencyMs 执行每个命令前的等待时间，模拟主线程排队
+     */
+    FakeRconServer(int responseBytes, long latencyMs) throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.responseBytes = responseBytes;
+        this.latencyMs = latencyMs;
+        Thread acceptor = new Thread(this::acceptLoop, "FakeRcon-Acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+    
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+    
+    long getCommandCount() {
+        return commandCount.get();
+    }
+    
+    /**
+     * 因读到的数据不是恰好一个数据包而关闭的连接数，不为0说明客户端的写出方式在原版服务器上会断线
+     */
+    long getMalformedReads() {
+        return malformedReads.get();
+    }
+    
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread connection = new Thread(() -> serve(socket), "FakeRcon-Connection");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+    
+    private void serve(Socket socket) {
+        try (socket) {
+            InputStream socketIn = socket.getInputStream();
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            byte[] buf = new byte[MAX_READ];
+            while (running) {
+                // 与原版相同：每轮新建BufferedInputStream读取一次，多读入的字节随之丢弃
+                int read = new BufferedInputStream(socketIn).read(buf, 0, MAX_READ);
+                if (read < 10) {
+                    return;
+                }
+                ByteBuffer packet = ByteBuffer.wrap(buf, 0, read).order(ByteOrder.LITTLE_ENDIAN);
+                int length = packet.getInt();
+                if (length != read - 4) {
+                    malformedReads.incrementAndGet();
+                    return;
+                }
+                int requestId = packet.getInt();
+                int type = packet.getInt();
+                if (type == 3) {
+                    // 认证成功：回复类型2，请求ID原样返回
+                    write(out, requestId, 2, new byte[0]);
+                } else if (type == 2) {
+                    if (latencyMs > 0) {
+                        Thread.sleep(latencyMs);
+                    }
+                    commandCount.incrementAndGet();
+                    writeResponse(out, requestId, readString(buf, 12, read));
+                } else {
+                    write(out, requestId, 0, ("Unknown request " + Integer.toHexString(type)).getBytes(StandardCharsets.UTF_8));
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // 连接关闭
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 读取以0结尾的字符串（与原版PktUtils.stringFromByteArray相同）
+     */
+    private static String readString(byte[] buf, int offset, int limit) {
+        int end = offset;
+        while (end < limit && buf[end] != 0) {
+            end++;
+        }
+        return new String(buf, offset, end - offset, StandardCharsets.UTF_8);
+    }
+    
+    private void writeResponse(OutputStream out, int requestId, String command) throws IOException {
+        StringBuilder response = new StringBuilder("ok ").append(command).append(' ');
+        while (response.length() < responseBytes) {
+            response.append('x');
+        }
+        byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+        for (int offset = 0; offset < body.length; offset += MAX_CHUNK) {
+            int length = Math.min(MAX_CHUNK, body.length - offset);
+            byte[] chunk = new byte[length];
+            System.arraycopy(body, offset, chunk, 0, length);
+            write(out, requestId, 0, chunk);
+        }
+    }
+    
+    private static void write(OutputStream out, int requestId, int type, byte[] body) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(4 + 4 + body.length + 2).putInt(requestId).putInt(type);
+        out.write(header.array());
+        out.write(body);
+        out.write(0);
+        out.write(0);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,127 @@
+package org.example1.rCONPro;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无界面的控制端 - 与RemoteConsoleClient使用相同的协议（batch,seq,events,keepalive），但不读写终端
+ * 收到的日志只解析写入时间并记录延迟；命令逐个发送，以响应的第一段到达的时间计算延迟
+ */
+class HeadlessConsoleClient implements Closeable {
+    private final Socket socket;
+    private final DataInputStream input;
+    private final DataOutputStream output;
+    private final LatencyRecorder logLatency;
+    private final List<String> names = new ArrayList<>();
+    private final LogEventCodec.NameResolver resolver = LogNameTable.resolver(names);
+    private final BlockingQueue<String> responses = new ArrayBlockingQueue<>(1);
+    private final AtomicLong receivedLines = new AtomicLong();
+    private final AtomicLong lostLines = new AtomicLong();
+    private volatile String awaitedResponse;
+    private long lastSequence = -1;
+    private volatile boolean running = true;
+    
+    HeadlessConsoleClient(int port, String rconPassword, LatencyRecorder logLatency) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.socket.setTcpNoDelay(true);
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.logLatency = logLatency;
+        
+        NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_HELLO,
+                NetworkProtocol.CAP_BATCH + "," + NetworkProtocol.CAP_SEQ + "," + NetworkProtocol.CAP_EVENTS
+                        + "," + NetworkProtocol.CAP_KEEPALIVE);
+        NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_RCON_CONFIG, rconPassword);
+        
+        Thread receiver = new Thread(this::receiveLoop, "Headless-Receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+    
+    private void receiveLoop() {
+        try {
+            while (running) {
+                NetworkProtocol.Message msg = NetworkProtocol.receiveMessage(input);
+                if (msg.type == NetworkProtocol.MSG_LOG_EVENTS) {
+                    long[] firstSequence = new long[1];
+                    List<LogEvent> events = LogEventCodec.decodeEvents(msg.payload, resolver, firstSequence);
+                    long now = System.nanoTime();
+                    if (lastSequence >= 0 && firstSequence[0] > lastSequence + 1) {
+                        lostLines.addAndGet(firstSequence[0] - lastSequence - 1);
+                    }
+                    lastSequence = firstSequence[0] + events.size() - 1;
+                    for (LogEvent event : events) {
+                        long writeTime = SyntheticLogWriter.parseWriteTime(event.message);
+                        if (writeTime > 0) {
+                            logLatency.record(now - writeTime);
+                            receivedLines.incrementAndGet();
+                        }
+                    }
+                } else if (msg.type == NetworkProtocol.MSG_NAME_DEFS) {
+                    LogNameTable.applyDefinitions(msg.payload, names);
+                } else if (msg.type == NetworkProtocol.MSG_LOG_LOST) {
+                    lostLines.addAndGet(Long.parseLong(msg.content.trim()));
+                } else if (msg.type == NetworkProtocol.MSG_PING) {
+                    // 只接收日志时插件收不到数据，需要回复心跳，否则超过失效时间会被断开
+                    synchronized (output) {
+                        NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_PONG, msg.content);
+                    }
+                } else if (msg.type == NetworkProtocol.MSG_LOG) {
+                    // 命令响应：只关心正在等待的命令的第一段
+                    String awaited = awaitedResponse;
+                    if (awaited != null && msg.content.startsWith(awaited)) {
+                        awaitedResponse = null;
+                        responses.offer(msg.content);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            running = false;
+        }
+    }
+    
+    /**
+     * 发送命令并等待响应
+     * @return 从发送到收到响应第一段的纳秒数，超时返回-1
+     */
+    long executeCommand(String command, long timeoutMillis) throws IOException, InterruptedException {
+        responses.clear();
+        awaitedResponse = "ok " + command;
+        long start = System.nanoTime();
+        synchronized (output) {
+            NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_COMMAND, command);
+        }
+        String response = responses.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        return response != null ? System.nanoTime() - start : -1;
+    }
+    
+    long getReceivedLines() {
+        return receivedLines.get();
+    }
+    
+    long getLostLines() {
+        return lostLines.get();
+    }
+    
+    boolean isConnected() {
+        return running;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        running = false;
+        socket.close();
+    }
+}
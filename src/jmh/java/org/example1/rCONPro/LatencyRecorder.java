@@ -0,0 +1,44 @@
+package org.example1.rCONPro;
+
+import java.util.Arrays;
+
+/**
+ * 延迟记录 - 保存每个样本，结束后排序计算分位数（负载测试的样本数不大，不需要直方图）
+ */
+class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int count = 0;
+    
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+    
+    synchronized int count() {
+        return count;
+    }
+    
+    synchronized void reset() {
+        count = 0;
+    }
+    
+    /**
+     * 分位数摘要（毫秒）：p50/p99/p999/max
+     */
+    synchronized String summary() {
+        if (count == 0) {
+            return "无样本";
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return String.format("p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms",
+                millis(sorted, 0.50), millis(sorted, 0.99), millis(sorted, 0.999), sorted[count - 1] / 1e6);
+    }
+    
+    private static double millis(long[] sorted, double quantile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,222 @@
+package org.example1.rCONPro;
+
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 端到端负载测试 - 不需要Minecraft服务器，用于升级前的容量评估
+ * 本地启动假的RCON服务器和PluginMode（日志来源为文件），由写入器按逐级提高的速率向logs/latest.log追加日志，
+ * 无界面控制端接收日志并同时按固定频率执行命令；每一级报告日志从写入到控制端收到的延迟、命令延迟和丢失行数，
+ * 最后给出没有丢失的最高持续速率
+ *
+ * 运行：mvn -Pbenchmark test-compile exec:exec@load-harness -Dharness.args="--rates=1000,10000 --stage-seconds=10"
+ * 参数（--名称=值）：rates 每级速率（行/秒，逗号分隔），stage-seconds 每级时长，line-bytes 每行大小，
+ * commands-per-second 命令频率，rcon-response-bytes 命令响应大小，rcon-latency-ms 命令执行延迟，port 插件监听端口
+ */
+public class LoadHarness {
+    private static final Path LOG_FILE = Paths.get("logs", "latest.log");
+    private static final String RCON_PASSWORD = "harness";
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int[] rates = parseRates(options.getOrDefault("rates", "1000,5000,20000,50000,100000"));
+        long stageMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("stage-seconds", "10")));
+        int lineBytes = Integer.parseInt(options.getOrDefault("line-bytes", "120"));
+        int commandsPerSecond = Integer.parseInt(options.getOrDefault("commands-per-second", "20"));
+        int responseBytes = Integer.parseInt(options.getOrDefault("rcon-response-bytes", "256"));
+        long rconLatencyMs = Long.parseLong(options.getOrDefault("rcon-latency-ms", "1"));
+        int port = Integer.parseInt(options.getOrDefault("port", "25590"));
+        
+        // 不覆盖真实服务器的日志
+        if (Files.exists(LOG_FILE)) {
+            System.err.println("当前目录已存在 " + LOG_FILE.toAbsolutePath() + "，请在空目录中运行");
+            System.exit(1);
+        }
+        Files.createDirectories(LOG_FILE.getParent());
+        Files.createFile(LOG_FILE);
+        
+        Logger logger = Logger.getLogger("LoadHarness");
+        ConfigManager.PluginConfig config = new ConfigManager.PluginConfig();
+        config.listenPort = port;
+        config.logSource = PluginMode.LogSource.FILE;
+        config.commandBackend = PluginMode.CommandBackendType.RCON;
+        
+        try (FakeRconServer rcon = new FakeRconServer(responseBytes, rconLatencyMs)) {
+            config.rconHost = "localhost";
+            config.rconPort = rcon.getPort();
+            PluginMode pluginMode = new PluginMode(fakePlugin(logger), config);
+            pluginMode.start();
+            
+            LatencyRecorder logLatency = new LatencyRecorder();
+            LatencyRecorder commandLatency = new LatencyRecorder();
+            SyntheticLogWriter writer = new SyntheticLogWriter(LOG_FILE, lineBytes);
+            List<String> report = new ArrayList<>();
+            int sustainedRate = 0;
+            
+            try (HeadlessConsoleClient client = new HeadlessConsoleClient(port, RCON_PASSWORD, logLatency)) {
+                // 等待会话建立和RCON预连接
+                Thread.sleep(1000);
+                for (int rate : rates) {
+                    logLatency.reset();
+                    commandLatency.reset();
+                    long receivedBefore = client.getReceivedLines();
+                    long lostBefore = client.getLostLines();
+                    long droppedBefore = pluginMode.getLogDroppedCount();
+                    
+                    CommandDriver commands = new CommandDriver(client, commandsPerSecond, commandLatency);
+                    commands.start();
+                    long start = System.nanoTime();
+                    long written = writer.run(rate, stageMillis);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    commands.stop();
+                    // 等待积压的日志送达
+                    long deadline = System.currentTimeMillis() + 5000;
+                    while (client.getReceivedLines() - receivedBefore < written && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(50);
+                    }
+                    
+                    long received = client.getReceivedLines() - receivedBefore;
+                    long lost = written - received;
+                    String line = String.format("%7d 行/秒: 写入 %d 行（%.0f 行/秒），收到 %d 行，丢失 %d 行（插件缓冲区丢弃 %d，序号缺口 %d）%n"
+                                    + "          日志延迟 %s%n          命令延迟 %s（%d 个，超时 %d）",
+                            rate, written, written / seconds, received, lost,
+                            pluginMode.getLogDroppedCount() - droppedBefore, client.getLostLines() - lostBefore,
+                            logLatency.summary(), commandLatency.summary(), commandLatency.count(), commands.getTimeouts());
+                    System.out.println(line);
+                    report.add(line);
+                    if (lost == 0 && written >= rate * seconds * 0.95) {
+                        sustainedRate = rate;
+                    }
+                    if (!client.isConnected()) {
+                        System.out.println("控制端连接已断开，停止测试");
+                        break;
+                    }
+                }
+            } finally {
+                pluginMode.stop();
+            }
+            
+            System.out.println("================ 负载测试结果 ================");
+            report.forEach(System.out::println);
+            System.out.println("RCON执行命令 " + rcon.getCommandCount() + " 个，因数据包粘连或拆分断开连接 " + rcon.getMalformedReads() + " 次");
+            System.out.println(sustainedRate > 0
+                    ? "没有丢失的最高持续速率: " + sustainedRate + " 行/秒"
+                    : "所有速率下都有丢失");
+        } finally {
+            Files.deleteIfExists(LOG_FILE);
+        }
+        System.exit(0);
+    }
+    
+    /**
+     * 按固定频率逐个执行命令并记录延迟
+     */
+    private static class CommandDriver {
+        private final HeadlessConsoleClient client;
+        private final long intervalNanos;
+        private final LatencyRecorder latency;
+        private final Thread thread;
+        private volatile boolean running = true;
+        private int timeouts = 0;
+        private int sequence = 0;
+        
+        CommandDriver(HeadlessConsoleClient client, int commandsPerSecond, LatencyRecorder latency) {
+            this.client = client;
+            this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, commandsPerSecond);
+            this.latency = latency;
+            this.thread = new Thread(this::run, "Harness-Commands");
+            this.thread.setDaemon(true);
+        }
+        
+        void start() {
+            thread.start();
+        }
+        
+        void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+        }
+        
+        int getTimeouts() {
+            return timeouts;
+        }
+        
+        private void run() {
+            long next = System.nanoTime();
+            while (running) {
+                try {
+                    long nanos = client.executeCommand("say harness-" + sequence++, 5000);
+                    if (nanos >= 0) {
+                        latency.record(nanos);
+                    } else {
+                        timeouts++;
+                    }
+                } catch (IOException e) {
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                next += intervalNanos;
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                } else {
+                    next = System.nanoTime();
+                }
+            }
+        }
+    }
+    
+    /**
+     * PluginMode只用到插件的日志记录器
+     */
+    private static Plugin fakePlugin(Logger logger) {
+        return (Plugin) Proxy.newProxyInstance(LoadHarness.class.getClassLoader(), new Class<?>[] {Plugin.class},
+                (proxy, method, methodArgs) -> {
+                    switch (method.getName()) {
+                        case "getLogger": return logger;
+                        case "getName": return "RCONPro";
+                        case "isEnabled": return true;
+                        case "toString": return "RCONPro(LoadHarness)";
+                        default: return null;
+                    }
+                });
+    }
+    
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("参数格式应为 --名称=值: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+    
+    private static int[] parseRates(String value) {
+        String[] parts = value.split(",");
+        int[] rates = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            rates[i] = Integer.parseInt(parts[i].trim());
+        }
+        return rates;
+    }
+}
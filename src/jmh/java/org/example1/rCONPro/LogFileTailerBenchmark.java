@@ -0,0 +1,165 @@
+package org.example1.rCONPro;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 日志文件追踪性能对比：LogFileTailer 与旧的 RandomAccessFile + split 实现
+ * catchUp：一次读完积压的日志（启动后或长时间暂停后的大量写入）
+ * incremental：每次只追加少量日志后读取（服务器正常运行时的情况）
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogFileTailerBenchmark {
+    
+    @Param({"1000", "100000"})
+    public int backlogLines;
+    
+    @Param({"16"})
+    public int appendLines;
+    
+    private Path catchUpFile;
+    private Path incrementalFile;
+    private byte[] appendChunk;
+    // 汇总转发的字符数并作为结果返回，防止JIT消除行的生成
+    private long consumedChars;
+    private final Consumer<String> sink = line -> consumedChars += line.length();
+    private LogFileTailer catchUpTailer;
+    private LegacyTailer catchUpLegacy;
+    private LogFileTailer incrementalTailer;
+    private LegacyTailer incrementalLegacy;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        catchUpFile = Files.createTempFile("rconpro-catchup", ".log");
+        Files.write(catchUpFile, sampleLines(0, backlogLines));
+        catchUpTailer = new LogFileTailer(catchUpFile, sink);
+        catchUpLegacy = new LegacyTailer(catchUpFile, sink);
+        
+        incrementalFile = Files.createTempFile("rconpro-incremental", ".log");
+        appendChunk = sampleLines(0, appendLines);
+        incrementalTailer = new LogFileTailer(incrementalFile, sink);
+        incrementalLegacy = new LegacyTailer(incrementalFile, sink);
+    }
+    
+    @Setup(Level.Iteration)
+    public void resetIncremental() throws IOException {
+        // 每轮清空，避免文件在测量过程中无限增长
+        Files.write(incrementalFile, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+        incrementalTailer.seek(0);
+        incrementalLegacy.lastPosition = 0;
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        catchUpTailer.close();
+        incrementalTailer.close();
+        Files.deleteIfExists(catchUpFile);
+        Files.deleteIfExists(incrementalFile);
+    }
+    
+    @Benchmark
+    public long catchUpTailer() throws IOException {
+        catchUpTailer.seek(0);
+        catchUpTailer.poll();
+        return consumedChars;
+    }
+    
+    @Benchmark
+    public long catchUpLegacy() {
+        catchUpLegacy.lastPosition = 0;
+        catchUpLegacy.readNewLines();
+        return consumedChars;
+    }
+    
+    @Benchmark
+    public long incrementalTailer() throws IOException {
+        Files.write(incrementalFile, appendChunk, StandardOpenOption.APPEND);
+        incrementalTailer.poll();
+        return consumedChars;
+    }
+    
+    @Benchmark
+    public long incrementalLegacy() throws IOException {
+        Files.write(incrementalFile, appendChunk, StandardOpenOption.APPEND);
+        incrementalLegacy.readNewLines();
+        return consumedChars;
+    }
+    
+    /**
+     * 接近真实服务器日志的样本，包含中文（多字节UTF-8）
+     */
+    static byte[] sampleLines(int from, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = from; i < from + count; i++) {
+            builder.append("[12:34:56] [Server thread/INFO]: ");
+            switch (i % 4) {
+                case 0 -> builder.append("Player").append(i).append(" joined the game");
+                case 1 -> builder.append("玩家").append(i).append(" 说: 你好，服务器！");
+                case 2 -> builder.append("Saved the game (").append(i).append(" chunks)");
+                default -> builder.append("Can't keep up! Is the server overloaded? Running 2034ms or 40 ticks behind");
+            }
+            builder.append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * 旧实现：每次轮询新建RandomAccessFile，按增量大小分配数组，整体解码后split
+     */
+    static class LegacyTailer {
+        private final Path logFile;
+        private final Consumer<String> consumer;
+        long lastPosition = 0;
+        
+        LegacyTailer(Path logFile, Consumer<String> consumer) {
+            this.logFile = logFile;
+            this.consumer = consumer;
+        }
+        
+        long readNewLines() {
+            try {
+                long currentSize = Files.size(logFile);
+                if (currentSize < lastPosition) {
+                    lastPosition = 0;
+                }
+                if (currentSize > lastPosition) {
+                    try (RandomAccessFile raf = new RandomAccessFile(logFile.toFile(), "r")) {
+                        raf.seek(lastPosition);
+                        byte[] buffer = new byte[(int)(currentSize - lastPosition)];
+                        int bytesRead = raf.read(buffer);
+                        if (bytesRead > 0) {
+                            String newContent = new String(buffer, 0, bytesRead, StandardCharsets.UTF_8);
+                            String[] lines = newContent.split("\n", -1);
+                            for (int i = 0; i < lines.length; i++) {
+                                String line = lines[i];
+                                if (i < lines.length - 1 || !line.isEmpty()) {
+                                    if (!line.trim().isEmpty()) {
+                                        consumer.accept(line);
+                                    }
+                                }
+                            }
+                            lastPosition = raf.getFilePointer();
+                            return bytesRead;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // 与旧实现一致，忽略错误
+            }
+            return 0;
+        }
+    }
+}
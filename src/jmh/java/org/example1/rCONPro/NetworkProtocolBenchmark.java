@@ -0,0 +1,108 @@
+package org.example1.rCONPro;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 插件与控制端之间的协议编解码：单行MSG_LOG、文本批次和结构化事件批次
+ * 都在内存流上进行，只测量编解码本身；用-prof gc观察每次操作分配的字节数
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworkProtocolBenchmark {
+    
+    @Param({"64"})
+    public int batchLines;
+    
+    private String line;
+    private String[] lines;
+    private LogEvent[] events;
+    private LogNameTable names;
+    private List<String> clientNames;
+    private LogEventCodec.NameResolver clientResolver;
+    
+    private ByteArrayOutputStream sink;
+    private DataOutputStream out;
+    private ByteArrayInputStream lineSource;
+    private DataInputStream lineIn;
+    private byte[] sequencedPayload;
+    private byte[] eventPayload;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        lines = PaperLogSamples.lines(batchLines);
+        events = PaperLogSamples.events(batchLines);
+        line = lines[1];
+        names = new LogNameTable(4096);
+        
+        sink = new ByteArrayOutputStream(64 * 1024);
+        out = new DataOutputStream(sink);
+        lineSource = new ByteArrayInputStream(NetworkProtocol.encode(NetworkProtocol.MSG_LOG, line));
+        lineIn = new DataInputStream(lineSource);
+        
+        sequencedPayload = payloadOf(encodeTextBatch());
+        eventPayload = payloadOf(encodeEventBatch());
+        // 控制端按插件发来的定义解析名称引用
+        clientNames = new ArrayList<>();
+        LogNameTable.applyDefinitions(payloadOf(names.encodeDefinitions(0)), clientNames);
+        clientResolver = LogNameTable.resolver(clientNames);
+    }
+    
+    private static byte[] payloadOf(byte[] frame) {
+        return Arrays.copyOfRange(frame, 8, frame.length);
+    }
+    
+    @Benchmark
+    public int sendMessage() throws IOException {
+        sink.reset();
+        NetworkProtocol.sendMessage(out, NetworkProtocol.MSG_LOG, line);
+        return sink.size();
+    }
+    
+    @Benchmark
+    public NetworkProtocol.Message receiveMessage() throws IOException {
+        lineSource.reset();
+        return NetworkProtocol.receiveMessage(lineIn);
+    }
+    
+    @Benchmark
+    public byte[] encodeTextBatch() {
+        NetworkProtocol.BatchBuilder batch = new NetworkProtocol.BatchBuilder();
+        for (String batchLine : lines) {
+            batch.add(batchLine);
+        }
+        return batch.toSequencedFrame(1);
+    }
+    
+    @Benchmark
+    public List<String> decodeTextBatch() throws IOException {
+        return NetworkProtocol.decodeBatch(sequencedPayload, 8);
+    }
+    
+    @Benchmark
+    public byte[] encodeEventBatch() {
+        LogEventCodec.EventBatchBuilder batch = new LogEventCodec.EventBatchBuilder();
+        for (LogEvent event : events) {
+            batch.add(event, names);
+        }
+        return batch.toFrame(1);
+    }
+    
+    @Benchmark
+    public List<LogEvent> decodeEventBatch() throws IOException {
+        return LogEventCodec.decodeEvents(eventPayload, clientResolver, new long[1]);
+    }
+}
@@ -0,0 +1,47 @@
+package org.example1.rCONPro;
+
+/**
+ * 基准测试用的日志样本，内容和比例接近Paper服务器的实际日志
+ */
+final class PaperLogSamples {
+    private static final long BASE_TIMESTAMP = 1_700_000_000_000L;
+    
+    private PaperLogSamples() {
+    }
+    
+    /**
+     * 生成结构化日志事件，时间戳逐条递增
+     */
+    static LogEvent[] events(int count) {
+        LogEvent[] events = new LogEvent[count];
+        for (int i = 0; i < count; i++) {
+            long timestamp = BASE_TIMESTAMP + i * 37L;
+            switch (i % 8) {
+                case 0 -> events[i] = new LogEvent(timestamp, "INFO", "Minecraft", "Server thread", "Player" + i + " joined the game", null);
+                case 1 -> events[i] = new LogEvent(timestamp, "INFO", "Minecraft", "Async Chat Thread - #3", "<玩家" + i + "> 今晚八点在主城集合，一起去打末影龙！", null);
+                case 2 -> events[i] = new LogEvent(timestamp, "WARN", "Minecraft", "Server thread", "Can't keep up! Is the server overloaded? Running 2034ms or 40 ticks behind", null);
+                case 3 -> events[i] = new LogEvent(timestamp, "INFO", "Essentials", "Server thread", "Player" + i + " issued server command: /tp Player" + (i + 1), null);
+                case 4 -> events[i] = new LogEvent(timestamp, "INFO", "net.minecraft.server.MinecraftServer", "Server thread", "Saved the game (" + i + " chunks)", null);
+                case 5 -> events[i] = new LogEvent(timestamp, "ERROR", "WorldEdit", "Craft Scheduler Thread - 12", "Could not pass event PlayerInteractEvent to WorldEdit v7.3.0",
+                        "java.lang.NullPointerException: Cannot invoke \"org.bukkit.block.Block.getType()\" because \"block\" is null\n"
+                        + "\tat com.sk89q.worldedit.bukkit.WorldEditListener.onPlayerInteract(WorldEditListener.java:123)\n"
+                        + "\tat co.aikar.timings.TimedEventExecutor.execute(TimedEventExecutor.java:80)");
+                case 6 -> events[i] = new LogEvent(timestamp, "INFO", "Minecraft", "Server thread", "Player" + (i - 6) + " left the game", null);
+                default -> events[i] = new LogEvent(timestamp, "INFO", "LuckPerms", "luckperms-worker-2", "Performing sync for " + i + " users", null);
+            }
+        }
+        return events;
+    }
+    
+    /**
+     * 生成与latest.log格式相同的文本行
+     */
+    static String[] lines(int count) {
+        LogEvent[] events = events(count);
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = events[i].toLine();
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,50 @@
+package org.example1.rCONPro;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RCON数据包编解码：短命令的编码和典型命令响应（list、长输出）的解码
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RCONPacketBenchmark {
+    
+    @Param({"64", "4096"})
+    public int responseBytes;
+    
+    private String command;
+    private ByteArrayInputStream responseSource;
+    private DataInputStream responseIn;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        command = "tp Player123 100 64 -200";
+        StringBuilder response = new StringBuilder("There are 3 of a max of 100 players online: ");
+        while (response.length() < responseBytes) {
+            response.append("Player").append(response.length()).append(", ");
+        }
+        response.setLength(responseBytes);
+        responseSource = new ByteArrayInputStream(RCONClient.encodePacket(42, 0, response.toString()));
+        responseIn = new DataInputStream(responseSource);
+    }
+    
+    @Benchmark
+    public byte[] encodeCommand() {
+        return RCONClient.encodePacket(42, 2, command);
+    }
+    
+    @Benchmark
+    public byte[] decodeResponse() throws IOException {
+        responseSource.reset();
+        return RCONClient.decodePacket(responseIn).body;
+    }
+}
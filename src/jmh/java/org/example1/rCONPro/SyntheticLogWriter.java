@@ -0,0 +1,93 @@
+package org.example1.rCONPro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 负载测试用的日志写入器 - 按指定速率向日志文件追加Paper格式的日志行
+ * 每行带有序号和写入时的System.nanoTime()（seq=… t=…），控制端据此计算从写入到收到的延迟
+ * 每毫秒把应写的行合并成一次写入，速率高时也不会被系统调用次数限制
+ */
+class SyntheticLogWriter {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    
+    private final Path logFile;
+    private final int lineBytes;
+    private long written = 0;
+    
+    /**
+     * @param lineBytes 每行的大致字节数（不足时用填充内容补齐）
+     */
+    SyntheticLogWriter(Path logFile, int lineBytes) {
+        this.logFile = logFile;
+        this.lineBytes = lineBytes;
+    }
+    
+    /**
+     * 以linesPerSecond的速率写入durationMillis毫秒（阻塞调用线程）
+     * @return 实际写入的行数
+     */
+    long run(int linesPerSecond, long durationMillis) throws IOException {
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long stageWritten = 0;
+        StringBuilder chunk = new StringBuilder();
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long now;
+            while ((now = System.nanoTime()) < end) {
+                long due = (now - start) * linesPerSecond / TimeUnit.SECONDS.toNanos(1);
+                if (due > stageWritten) {
+                    chunk.setLength(0);
+                    String time = LocalTime.now().format(TIME_FORMAT);
+                    for (; stageWritten < due; stageWritten++) {
+                        appendLine(chunk, time, System.nanoTime());
+                    }
+                    ByteBuffer bytes = ByteBuffer.wrap(chunk.toString().getBytes(StandardCharsets.UTF_8));
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        return stageWritten;
+    }
+    
+    private void appendLine(StringBuilder chunk, String time, long nanos) {
+        int start = chunk.length();
+        chunk.append('[').append(time).append("] [Server thread/INFO]: [LoadHarness] seq=")
+                .append(written++).append(" t=").append(nanos).append(' ');
+        while (chunk.length() - start < lineBytes - 1) {
+            chunk.append('x');
+        }
+        chunk.append('\n');
+    }
+    
+    /**
+     * 从日志消息中取出写入时间，不是本写入器生成的行返回-1
+     */
+    static long parseWriteTime(String message) {
+        int index = message.indexOf(" t=");
+        if (index < 0 || message.indexOf("[LoadHarness]") < 0) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = index + 3; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,102 @@
+package org.example1.rCONPro;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * System.out捕获性能对比：按块处理的TeeOutputStream 与旧的逐字节加锁实现
+ * 两者都包在PrintStream中，与System.setOut后的真实调用路径一致
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SystemOutCaptureBenchmark {
+    
+    @Param({"ascii", "cjk"})
+    public String text;
+    
+    private String line;
+    // 汇总转发的字符数并作为结果返回，防止JIT消除行的生成
+    private long consumedChars;
+    private final Consumer<String> sink = forwarded -> consumedChars += forwarded.length();
+    private PrintStream capture;
+    private PrintStream legacy;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        line = text.equals("cjk")
+                ? "[12:34:56] [Server thread/INFO]: 玩家小明 说: 今晚八点在主城集合，一起去打末影龙！"
+                : "[12:34:56] [Server thread/INFO]: Player123 issued server command: /tp Player456";
+        OutputStream discard = OutputStream.nullOutputStream();
+        capture = new PrintStream(new SystemOutCapture.TeeOutputStream(discard, StandardCharsets.UTF_8, sink),
+                true, StandardCharsets.UTF_8);
+        legacy = new PrintStream(new LegacyTeeOutputStream(discard, sink), true, StandardCharsets.UTF_8);
+    }
+    
+    @Benchmark
+    public long printlnCapture() {
+        capture.println(line);
+        return consumedChars;
+    }
+    
+    @Benchmark
+    public long printlnLegacy() {
+        legacy.println(line);
+        return consumedChars;
+    }
+    
+    /**
+     * 旧实现：只重写write(int)，每个字节加锁一次，按字节强转为char（多字节字符会乱码）
+     */
+    static class LegacyTeeOutputStream extends OutputStream {
+        private final OutputStream original;
+        private final Consumer<String> consumer;
+        private final StringBuilder buffer = new StringBuilder();
+        private final Object lock = new Object();
+        private final ThreadLocal<Boolean> isForwarding = ThreadLocal.withInitial(() -> false);
+        
+        LegacyTeeOutputStream(OutputStream original, Consumer<String> consumer) {
+            this.original = original;
+            this.consumer = consumer;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (lock) {
+                original.write(b);
+                if (isForwarding.get()) {
+                    return;
+                }
+                if (b == '\n') {
+                    String line = buffer.toString();
+                    buffer.setLength(0);
+                    String trimmedLine = line.trim();
+                    if (!trimmedLine.isEmpty()) {
+                        isForwarding.set(true);
+                        try {
+                            consumer.accept(trimmedLine);
+                        } finally {
+                            isForwarding.set(false);
+                        }
+                    }
+                } else if (b != '\r') {
+                    buffer.append((char) b);
+                }
+            }
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            original.flush();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.example1.rCONPro;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 进程内命令后端 - 通过按tick执行的调度器在服务器主线程上调用Bukkit.dispatchCommand，不经过RCON的本机TCP往返
+ * 命令的反馈由Paper的转发型CommandSender（权限与控制台相同）收集，执行期间缓存，执行完毕后一次交出；
+ * 之后才到达的反馈（异步执行的命令）直接转发
+ * 没有RCON的认证握手，也没有单个响应包4096字节的限制
+ * 所有命令（包括批量命令的每一行）都进入调度器的通道，每个tick按时间预算执行，
+ * 大量命令分摊到多个tick，操作员的交互命令排在批量命令之前
+ */
+public class BukkitCommandBackend implements CommandBackend {
+    private final Plugin plugin;
+    private final TickCommandScheduler scheduler;
+    private final long timeoutMs;
+    private final PluginMetrics metrics;
+    
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batchLines = new LongAdder();
+    
+    /**
+     * @param scheduler 执行命令的调度器，由调用方启动和停止
+     * @param timeoutMs 主线程长时间没有执行命令（如服务器卡顿或排队过长）时的超时时间
+     */
+    public BukkitCommandBackend(Plugin plugin, TickCommandScheduler scheduler, long timeoutMs, PluginMetrics metrics) {
+        this.plugin = plugin;
+        this.scheduler = scheduler;
+        this.timeoutMs = timeoutMs;
+        this.metrics = metrics;
+    }
+    
+    @Override
+    public CompletableFuture<Void> executeCommand(String command, Consumer<String> outputConsumer) {
+        return executeCommand(command, TickCommandScheduler.Lane.INTERACTIVE, outputConsumer);
+    }
+    
+    @Override
+    public CompletableFuture<Void> executeCommand(String command, TickCommandScheduler.Lane lane, Consumer<String> outputConsumer) {
+        String line = stripSlash(command);
+        long startNanos = System.nanoTime();
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Runnable discard = () -> future.completeExceptionally(new IllegalStateException("命令调度器已停止"));
+        if (!scheduler.submit(lane, () -> dispatch(line, outputConsumer, future), discard)) {
+            discard.run();
+        }
+        CompletableFuture.delayedExecutor(timeoutMs, TimeUnit.MILLISECONDS).execute(() -> future.completeExceptionally(
+                new TimeoutException("服务器主线程 " + timeoutMs + "ms 内未执行完命令")));
+        return future.whenComplete((v, error) -> {
+            if (error == null) {
+                executed.increment();
+                metrics.commandLatency.recordNanos(System.nanoTime() - startNanos);
+            } else {
+                failed.increment();
+                metrics.commandFailures.increment();
+            }
+        });
+    }
+    
+    /**
+     * 在主线程中执行；dispatchCommand返回false（命令不存在或执行失败）时与批量命令一样按失败处理，
+     * 服务器给出的提示仍作为输出转发
+     */
+    private void dispatch(String command, Consumer<String> outputConsumer, CompletableFuture<Void> future) {
+        if (future.isDone()) {
+            return; // 排队期间已超时
+        }
+        CapturedOutput output = new CapturedOutput(outputConsumer);
+        try {
+            CommandSender sender = Bukkit.createCommandSender(output::accept);
+            boolean success = Bukkit.dispatchCommand(sender, command);
+            output.finish();
+            if (success) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(new IllegalStateException("命令不存在或执行失败: " + command));
+            }
+        } catch (RuntimeException e) {
+            output.finish();
+            future.completeExceptionally(e);
+        }
+    }
+    
+    /**
+     * 每一行作为一个条目进入批量通道，按顺序执行；一个tick内执行多少行由调度器的预算决定
+     * 调度器停止时丢弃的行标记为跳过；主线程超过超时时间没有执行任何一行时，按已有结果结束，其余行标记为跳过
+     */
+    @Override
+    public CompletableFuture<List<CommandBatch.LineResult>> executeBatch(List<String> commands) {
+        CompletableFuture<List<CommandBatch.LineResult>> future = new CompletableFuture<>();
+        if (commands.isEmpty()) {
+            future.complete(new ArrayList<>());
+            return future;
+        }
+        AtomicReferenceArray<CommandBatch.LineResult> results = new AtomicReferenceArray<>(commands.size());
+        AtomicInteger remaining = new AtomicInteger(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            int index = i;
+            Runnable discard = () -> finishLine(future, results, remaining, index,
+                    new CommandBatch.LineResult(CommandBatch.STATUS_SKIPPED, 0, "命令调度器已停止"));
+            boolean queued = scheduler.submit(TickCommandScheduler.Lane.BULK, () -> {
+                if (future.isDone()) {
+                    return; // 批量命令已超时
+                }
+                batchLines.increment();
+                finishLine(future, results, remaining, index, executeLine(commands.get(index)));
+            }, discard);
+            if (!queued) {
+                // 调度器已停止，未能排队的行标记为跳过
+                for (int j = i; j < commands.size(); j++) {
+                    finishLine(future, results, remaining, j,
+                            new CommandBatch.LineResult(CommandBatch.STATUS_SKIPPED, 0, "命令调度器已停止"));
+                }
+                break;
+            }
+        }
+        scheduleBatchTimeout(future, results, remaining, remaining.get());
+        return future;
+    }
+    
+    private static void finishLine(CompletableFuture<List<CommandBatch.LineResult>> future,
+                                   AtomicReferenceArray<CommandBatch.LineResult> results, AtomicInteger remaining,
+                                   int index, CommandBatch.LineResult result) {
+        results.set(index, result);
+        if (remaining.decrementAndGet() == 0) {
+            future.complete(snapshot(results, null));
+        }
+    }
+    
+    /**
+     * 每隔超时时间检查一次进度，期间一行都没有执行完时结束批量命令
+     */
+    private void scheduleBatchTimeout(CompletableFuture<List<CommandBatch.LineResult>> future,
+                                      AtomicReferenceArray<CommandBatch.LineResult> results, AtomicInteger remaining,
+                                      int lastRemaining) {
+        if (future.isDone()) {
+            return;
+        }
+        CompletableFuture.delayedExecutor(timeoutMs, TimeUnit.MILLISECONDS).execute(() -> {
+            int current = remaining.get();
+            if (current < lastRemaining) {
+                scheduleBatchTimeout(future, results, remaining, current);
+            } else {
+                future.complete(snapshot(results, "服务器主线程 " + timeoutMs + "ms 内未执行命令"));
+            }
+        });
+    }
+    
+    /**
+     * 按脚本顺序取出结果，尚未执行的行标记为跳过
+     */
+    private static List<CommandBatch.LineResult> snapshot(AtomicReferenceArray<CommandBatch.LineResult> results, String skipReason) {
+        List<CommandBatch.LineResult> list = new ArrayList<>(results.length());
+        for (int i = 0; i < results.length(); i++) {
+            CommandBatch.LineResult result = results.get(i);
+            list.add(result != null ? result : new CommandBatch.LineResult(CommandBatch.STATUS_SKIPPED, 0, skipReason));
+        }
+        return list;
+    }
+    
+    /**
+     * 在主线程中执行一行，输出和结果都在本tick内收集
+     */
+    private CommandBatch.LineResult executeLine(String command) {
+        long start = System.nanoTime();
+        StringBuilder text = new StringBuilder();
+        CapturedOutput output = new CapturedOutput(chunk -> {
+            synchronized (text) {
+                CommandBatch.appendOutput(text, chunk);
+            }
+        });
+        byte status;
+        try {
+            CommandSender sender = Bukkit.createCommandSender(output::accept);
+            status = Bukkit.dispatchCommand(sender, stripSlash(command)) ? CommandBatch.STATUS_OK : CommandBatch.STATUS_ERROR;
+            output.finish();
+        } catch (RuntimeException e) {
+            output.finish();
+            synchronized (text) {
+                CommandBatch.appendOutput(text, String.valueOf(e.getMessage()));
+            }
+            status = CommandBatch.STATUS_ERROR;
+        }
+        synchronized (text) {
+            return new CommandBatch.LineResult(status, (System.nanoTime() - start) / 1000, text.toString());
+        }
+    }
+    
+    /**
+     * 控制台输入习惯带斜杠，dispatchCommand需要去掉
+     */
+    private static String stripSlash(String command) {
+        return command.startsWith("/") ? command.substring(1) : command;
+    }
+    
+    @Override
+    public String getStats() {
+        return "进程内执行 " + executed.sum() + " 条，失败 " + failed.sum() + " 条，批量 " + batchLines.sum() + " 行";
+    }
+    
+    @Override
+    public void close() {
+        // 没有需要释放的资源，调度器由PluginMode停止，仍在排队的命令随之失败
+    }
+    
+    /**
+     * 命令反馈：执行期间合并为一段，执行完毕后到达的逐条转发
+     */
+    private static class CapturedOutput {
+        private final Consumer<String> consumer;
+        private final StringBuilder buffer = new StringBuilder();
+        private boolean finished = false;
+        
+        CapturedOutput(Consumer<String> consumer) {
+            this.consumer = consumer;
+        }
+        
+        void accept(Component message) {
+            String text = PlainTextComponentSerializer.plainText().serialize(message);
+            synchronized (this) {
+                if (!finished) {
+                    if (buffer.length() > 0) {
+                        buffer.append('\n');
+                    }
+                    buffer.append(text);
+                    return;
+                }
+            }
+            consumer.accept(text);
+        }
+        
+        void finish() {
+            String text;
+            synchronized (this) {
+                finished = true;
+                text = buffer.toString();
+                buffer.setLength(0);
+            }
+            if (!text.isEmpty()) {
+                consumer.accept(text);
+            }
+        }
+    }
+}
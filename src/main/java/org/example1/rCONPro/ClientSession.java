@@ -0,0 +1,589 @@
+package org.example1.rCONPro;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 远程控制端会话 - 插件端为每个已连接的控制端维护一个会话
+ * 所有会话由PluginMode的单个IO线程通过Selector服务：非阻塞读、聚集写、处理部分写入
+ * 每个会话有独立的有界发送队列，慢速控制端不会拖慢其他控制端或日志产生方
+ */
+public class ClientSession {
+    // 发送队列中的特殊标记：IO线程遇到它时，之后的帧都经过压缩
+    private static final byte[] COMPRESSION_MARKER = new byte[0];
+    private static final int MAX_FRAME_LENGTH = 1024 * 1024;
+    private static final int MAX_GATHER = 64;
+    
+    private final SocketChannel channel;
+    private final String remoteAddress;
+    private final int queueCapacity;
+    private final Consumer<ClientSession> writeScheduler;
+    private SelectionKey key;
+    
+    // 发送队列：日志帧受容量限制，控制帧（握手、心跳、命令结果）不丢弃
+    private final ConcurrentLinkedQueue<byte[]> sendQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    
+    // 以下字段只由IO线程访问
+    private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+    private byte[] plain = new byte[64 * 1024];   // 已解压的入站字节
+    private int plainStart = 0;
+    private int plainEnd = 0;
+    private Deflater deflater;
+    private byte[] deflateOut;
+    private int deflateLength;
+    private int currentLevel;
+    private Inflater inflater;
+    // 最后一次收到数据和发送心跳的时间，用于心跳和失效检测
+    private long lastReceivedNanos = System.nanoTime();
+    // 接受连接的时间和当时最近一行日志的序号，旧版控制端从这里开始接收日志（只由IO线程访问）
+    private final long connectedNanos = System.nanoTime();
+    private long connectedSequence = 0;
+    private long lastPingNanos;
+    private boolean pinged = false;
+    
+    // 流量统计：raw为压缩前的帧字节，wire为实际网络字节
+    private final AtomicLong rawBytesOut = new AtomicLong();
+    private final AtomicLong wireBytesOut = new AtomicLong();
+    private final AtomicLong rawBytesIn = new AtomicLong();
+    private final AtomicLong wireBytesIn = new AtomicLong();
+    private volatile Set<String> capabilities = Collections.emptySet();
+    private volatile boolean outputCompressionRequested = false;
+    private volatile int compressionLevel;
+    private volatile int compressionMinFrameSize;
+    private volatile boolean closed = false;
+    // 日志订阅：IO线程在收到首条消息时申请加入，分发线程补发断线期间的日志后才开始推送实时日志
+    private volatile boolean logJoinRequested = false;
+    private volatile boolean receivingLogs = false;
+    // 日志订阅，null表示接收全部日志；IO线程替换，分发线程读取，下一批日志即生效
+    private volatile LogSubscription subscription;
+    // 已发送给控制端的名称定义数量（只由分发线程读写）
+    private int definedNames = 0;
+    // 正在执行的命令数量，用于区分交互输入和大量流水线发送
+    private final AtomicInteger commandsInFlight = new AtomicInteger();
+    // BUKKIT方式下该控制端是否已通过密码验证
+    private volatile boolean passwordVerified = false;
+    // RCON方式下该控制端发送的密码，与当前连接池的密码一致时才能执行命令
+    private volatile String rconPassword;
+    // 进行中的密码验证，之后收到的命令依次排在它后面（只由IO线程替换）
+    private CompletableFuture<Void> verification = CompletableFuture.completedFuture(null);
+    
+    public ClientSession(SocketChannel channel, int queueCapacity, Consumer<ClientSession> writeScheduler) throws IOException {
+        this.channel = channel;
+        this.remoteAddress = String.valueOf(channel.getRemoteAddress());
+        this.queueCapacity = queueCapacity;
+        this.writeScheduler = writeScheduler;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+    
+    /**
+     * 注册到Selector（只能在IO线程中调用）
+     */
+    public void register(Selector selector) throws IOException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+    
+    /**
+     * 将已编码的帧放入发送队列（不阻塞）
+     * 队列已满时丢弃该帧并计数，返回false
+     */
+    public boolean offer(byte[] frame) {
+        if (closed) {
+            return false;
+        }
+        if (queueSize.incrementAndGet() > queueCapacity) {
+            queueSize.decrementAndGet();
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+        sendQueue.add(frame);
+        scheduleWrite();
+        return true;
+    }
+    
+    /**
+     * 放入控制帧（不受队列容量限制，不会被丢弃）
+     */
+    public void offerControl(byte[] frame) {
+        if (closed) {
+            return;
+        }
+        queueSize.incrementAndGet();
+        sendQueue.add(frame);
+        scheduleWrite();
+    }
+    
+    private void scheduleWrite() {
+        if (writeScheduled.compareAndSet(false, true)) {
+            writeScheduler.accept(this);
+        }
+    }
+    
+    /**
+     * 启用发送方向的压缩
+     * 先用未压缩的流发送MSG_HELLO确认，此后发出的所有字节都经过DEFLATE
+     */
+    public void enableOutputCompression(int level, int minFrameSize) {
+        if (outputCompressionRequested) {
+            return;
+        }
+        this.compressionLevel = level;
+        this.compressionMinFrameSize = minFrameSize;
+        outputCompressionRequested = true;
+        offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_HELLO, NetworkProtocol.CAP_DEFLATE));
+        offerControl(COMPRESSION_MARKER);
+    }
+    
+    public boolean isOutputCompressionRequested() {
+        return outputCompressionRequested;
+    }
+    
+    /**
+     * 启用接收方向的解压（只能在IO线程的消息回调中调用）
+     * 控制端发送确认MSG_HELLO后，其后的所有字节都是压缩数据，包括已读入但尚未解析的部分
+     */
+    public void enableInputCompression() {
+        if (inflater != null) {
+            return;
+        }
+        inflater = new Inflater();
+        int remaining = plainEnd - plainStart;
+        if (remaining > 0) {
+            inflater.setInput(Arrays.copyOfRange(plain, plainStart, plainEnd));
+            rawBytesIn.addAndGet(-remaining); // 这部分会在解压后重新计数
+        }
+        plainStart = 0;
+        plainEnd = 0;
+    }
+    
+    /**
+     * 通道可读时调用（只能在IO线程中调用）
+     * 读取所有可用数据，解析出完整的帧并逐个交给handler
+     * @return false表示连接已断开
+     */
+    public boolean onReadable(Consumer<NetworkProtocol.Message> handler) throws IOException {
+        while (true) {
+            readBuffer.clear();
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                return false;
+            }
+            if (n == 0) {
+                return true;
+            }
+            wireBytesIn.addAndGet(n);
+            lastReceivedNanos = System.nanoTime();
+            readBuffer.flip();
+            if (inflater != null) {
+                inflater.setInput(Arrays.copyOf(readBuffer.array(), readBuffer.limit()));
+            } else {
+                appendPlain(readBuffer.array(), 0, readBuffer.limit());
+            }
+            decodeFrames(handler);
+            if (closed) {
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * 从入站缓冲区解析帧，压缩模式下按需解压
+     */
+    private void decodeFrames(Consumer<NetworkProtocol.Message> handler) throws IOException {
+        while (true) {
+            NetworkProtocol.Message msg;
+            while ((msg = nextFrame()) != null) {
+                handler.accept(msg);
+                if (closed) {
+                    return;
+                }
+            }
+            if (inflater == null || inflater.needsInput()) {
+                return;
+            }
+            inflateMore();
+        }
+    }
+    
+    /**
+     * 解压更多数据到入站缓冲区
+     */
+    private void inflateMore() throws IOException {
+        compactPlain();
+        if (plainEnd == plain.length) {
+            plain = Arrays.copyOf(plain, plain.length * 2);
+        }
+        try {
+            int n = inflater.inflate(plain, plainEnd, plain.length - plainEnd);
+            if (n == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                throw new IOException("压缩流状态异常");
+            }
+            plainEnd += n;
+            rawBytesIn.addAndGet(n);
+        } catch (DataFormatException e) {
+            throw new IOException("压缩数据格式错误: " + e.getMessage(), e);
+        }
+    }
+    
+    private void appendPlain(byte[] data, int offset, int length) {
+        compactPlain();
+        if (plainEnd + length > plain.length) {
+            plain = Arrays.copyOf(plain, Math.max(plain.length * 2, plainEnd + length));
+        }
+        System.arraycopy(data, offset, plain, plainEnd, length);
+        plainEnd += length;
+        rawBytesIn.addAndGet(length);
+    }
+    
+    private void compactPlain() {
+        if (plainStart > 0) {
+            System.arraycopy(plain, plainStart, plain, 0, plainEnd - plainStart);
+            plainEnd -= plainStart;
+            plainStart = 0;
+        }
+    }
+    
+    /**
+     * 取出一个完整的帧，数据不足时返回null
+     */
+    private NetworkProtocol.Message nextFrame() throws IOException {
+        int available = plainEnd - plainStart;
+        if (available < 8) {
+            return null;
+        }
+        int type = readInt(plain, plainStart);
+        int length = readInt(plain, plainStart + 4);
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("消息长度异常: " + length);
+        }
+        if (available < 8 + length) {
+            return null;
+        }
+        byte[] payload = Arrays.copyOfRange(plain, plainStart + 8, plainStart + 8 + length);
+        plainStart += 8 + length;
+        return new NetworkProtocol.Message(type, payload);
+    }
+    
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+    
+    /**
+     * 距最后一次收到数据的时间（只能在IO线程中调用）
+     */
+    public long nanosSinceReceived(long nowNanos) {
+        return nowNanos - lastReceivedNanos;
+    }
+    
+    /**
+     * 链路空闲时发送带时间标记的心跳（只能在IO线程中调用）
+     * 一个间隔内收到过数据时不发送；等待响应期间每个间隔最多发送一次
+     * @return 是否发送了心跳
+     */
+    public boolean pingIfIdle(long nowNanos, long intervalNanos) {
+        if (nowNanos - lastReceivedNanos < intervalNanos || (pinged && nowNanos - lastPingNanos < intervalNanos)) {
+            return false;
+        }
+        offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_PING, Long.toString(nowNanos)));
+        lastPingNanos = nowNanos;
+        pinged = true;
+        return true;
+    }
+    
+    /**
+     * 写出队列中的数据（只能在IO线程中调用）
+     * 使用聚集写一次提交多个帧；未写完的部分保留到下次OP_WRITE
+     */
+    public void onWritable() throws IOException {
+        writeScheduled.set(false);
+        while (true) {
+            if (pendingWrites.isEmpty() && !fillPendingWrites()) {
+                break;
+            }
+            int count = 0;
+            for (ByteBuffer buffer : pendingWrites) {
+                gather[count++] = buffer;
+                if (count == MAX_GATHER) {
+                    break;
+                }
+            }
+            long written = channel.write(gather, 0, count);
+            Arrays.fill(gather, 0, count, null);
+            wireBytesOut.addAndGet(written);
+            while (!pendingWrites.isEmpty() && !pendingWrites.peekFirst().hasRemaining()) {
+                pendingWrites.pollFirst();
+            }
+            if (!pendingWrites.isEmpty()) {
+                // 发送缓冲区已满，等待通道再次可写
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+    
+    /**
+     * 从发送队列取出帧放入待写列表
+     * @return 是否取到了数据
+     */
+    private boolean fillPendingWrites() {
+        if (deflater != null) {
+            return fillCompressed();
+        }
+        int frames = 0;
+        byte[] frame;
+        while (frames < MAX_GATHER && (frame = sendQueue.poll()) != null) {
+            queueSize.decrementAndGet();
+            if (frame == COMPRESSION_MARKER) {
+                deflater = new Deflater(compressionLevel);
+                currentLevel = compressionLevel;
+                deflateOut = new byte[64 * 1024];
+                // 标记之前的帧仍以明文发送，之后的帧在下一轮压缩
+                return frames > 0 || fillCompressed();
+            }
+            pendingWrites.add(ByteBuffer.wrap(frame));
+            rawBytesOut.addAndGet(frame.length);
+            frames++;
+        }
+        return frames > 0;
+    }
+    
+    /**
+     * 把队列中的帧压缩进一个缓冲区，最后做一次SYNC_FLUSH
+     * 压缩输出缓冲区复用，只有上一批完全写出后才会再次填充
+     */
+    private boolean fillCompressed() {
+        deflateLength = 0;
+        int frames = 0;
+        byte[] frame;
+        while (deflateLength < deflateOut.length / 2 && (frame = sendQueue.poll()) != null) {
+            queueSize.decrementAndGet();
+            int wanted = frame.length < compressionMinFrameSize ? Deflater.NO_COMPRESSION : compressionLevel;
+            if (wanted != currentLevel) {
+                deflater.setLevel(wanted);
+                currentLevel = wanted;
+            }
+            deflater.setInput(frame);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+            rawBytesOut.addAndGet(frame.length);
+            frames++;
+        }
+        if (frames == 0) {
+            return false;
+        }
+        deflate(Deflater.SYNC_FLUSH);
+        pendingWrites.add(ByteBuffer.wrap(deflateOut, 0, deflateLength));
+        return true;
+    }
+    
+    private void deflate(int flush) {
+        while (true) {
+            if (deflateLength == deflateOut.length) {
+                deflateOut = Arrays.copyOf(deflateOut, deflateOut.length * 2);
+            }
+            int n = deflater.deflate(deflateOut, deflateLength, deflateOut.length - deflateLength, flush);
+            deflateLength += n;
+            if (deflateLength < deflateOut.length) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 关闭会话（可在任意线程调用）
+     */
+    public void close() {
+        closed = true;
+        sendQueue.clear();
+        queueSize.set(0);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+    
+    /**
+     * 释放压缩资源（只能在IO线程中调用）
+     */
+    public void releaseCompression() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+    
+    /**
+     * 设置控制端在MSG_HELLO中声明的能力
+     */
+    public void setCapabilities(Set<String> capabilities) {
+        this.capabilities = capabilities;
+    }
+    
+    public boolean hasCapability(String capability) {
+        return capabilities.contains(capability);
+    }
+    
+    public long nanosSinceConnected(long nowNanos) {
+        return nowNanos - connectedNanos;
+    }
+    
+    public long getConnectedSequence() {
+        return connectedSequence;
+    }
+    
+    public void setConnectedSequence(long connectedSequence) {
+        this.connectedSequence = connectedSequence;
+    }
+    
+    /**
+     * 标记已申请接收日志，首次调用返回true
+     */
+    public boolean requestLogJoin() {
+        if (logJoinRequested) {
+            return false;
+        }
+        logJoinRequested = true;
+        return true;
+    }
+    
+    public boolean isReceivingLogs() {
+        return receivingLogs;
+    }
+    
+    public void setReceivingLogs(boolean receivingLogs) {
+        this.receivingLogs = receivingLogs;
+    }
+    
+    /**
+     * 开始执行一条命令
+     * @return 包括这条命令在内的在途命令数量
+     */
+    public int commandStarted() {
+        return commandsInFlight.incrementAndGet();
+    }
+    
+    public void commandFinished() {
+        commandsInFlight.decrementAndGet();
+    }
+    
+    public String getRconPassword() {
+        return rconPassword;
+    }
+    
+    public void setRconPassword(String rconPassword) {
+        this.rconPassword = rconPassword;
+    }
+    
+    public boolean isPasswordVerified() {
+        return passwordVerified;
+    }
+    
+    public void setPasswordVerified(boolean passwordVerified) {
+        this.passwordVerified = passwordVerified;
+    }
+    
+    /**
+     * 在执行器中验证密码（只能在IO线程中调用），排在之前的验证和命令之后
+     */
+    public void verifyPassword(Runnable task, Executor executor) {
+        verification = verification.handleAsync((v, error) -> {
+            task.run();
+            return null;
+        }, executor);
+    }
+    
+    /**
+     * 在进行中的密码验证完成后执行（只能在IO线程中调用）：没有进行中的验证时立即执行，
+     * 否则按收到的顺序排在验证之后，在验证所在的线程中执行
+     */
+    public void afterVerification(Runnable action) {
+        if (verification.isDone()) {
+            action.run();
+            return;
+        }
+        verification = verification.handle((v, error) -> {
+            action.run();
+            return null;
+        });
+    }
+    
+    public LogSubscription getSubscription() {
+        return subscription;
+    }
+    
+    public void setSubscription(LogSubscription subscription) {
+        this.subscription = subscription;
+    }
+    
+    public int getDefinedNames() {
+        return definedNames;
+    }
+    
+    public void setDefinedNames(int definedNames) {
+        this.definedNames = definedNames;
+    }
+    
+    public boolean isClosed() {
+        return closed || !channel.isOpen();
+    }
+    
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+    
+    public int getQueueDepth() {
+        return queueSize.get();
+    }
+    
+    public long getRawBytesOut() {
+        return rawBytesOut.get();
+    }
+    
+    public long getWireBytesOut() {
+        return wireBytesOut.get();
+    }
+    
+    public long getRawBytesIn() {
+        return rawBytesIn.get();
+    }
+    
+    public long getWireBytesIn() {
+        return wireBytesIn.get();
+    }
+    
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+}
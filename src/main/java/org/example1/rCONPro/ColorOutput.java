@@ -11,6 +11,12 @@ public class ColorOutput {
     private static final String ERROR_COLOR = "\u001B[31m";    // 暗红色
     private static final String BRIGHT_YELLOW = "\u001B[93m";  // 亮黄色
     
+    // 结构化日志的级别文本，预先拼好颜色代码
+    private static final String INFO_LEVEL = INFO_COLOR + "INFO" + RESET;
+    private static final String WARN_LEVEL = WARN_COLOR + "WARN" + RESET;
+    private static final String ERROR_LEVEL = ERROR_COLOR + "ERROR" + RESET;
+    private static final String FATAL_LEVEL = ERROR_COLOR + "FATAL" + RESET;
+    
     private static boolean ansiEnabled = false;
     
     /**
@@ -100,5 +106,50 @@ public class ColorOutput {
         
         return result;
     }
+    
+    /**
+     * 格式化结构化日志事件，添加颜色
+     * 级别和消息已经是独立的字段，不需要在整行中查找替换
+     */
+    public static String formatEvent(LogEvent event) {
+        if (event.isPlainLine()) {
+            return formatLogLine(event.message);
+        }
+        StringBuilder builder = new StringBuilder(event.message.length() + 64);
+        event.appendTo(builder, colorLevel(event.level), highlightJoinLeave(event.message));
+        return builder.toString();
+    }
+    
+    private static String colorLevel(String level) {
+        switch (level) {
+            case "INFO": return INFO_LEVEL;
+            case "WARN": return WARN_LEVEL;
+            case "ERROR": return ERROR_LEVEL;
+            case "FATAL": return FATAL_LEVEL;
+            default: return level;
+        }
+    }
+    
+    /**
+     * 玩家加入/离开游戏的消息中，给玩家名字和特殊文本加上亮黄色
+     */
+    private static String highlightJoinLeave(String message) {
+        String pattern;
+        if (message.endsWith(" joined the game")) {
+            pattern = "joined the game";
+        } else if (message.endsWith(" left the game")) {
+            pattern = "left the game";
+        } else {
+            return message;
+        }
+        int patternIndex = message.length() - pattern.length();
+        // 玩家名字是特殊文本之前的最后一个单词
+        int nameStart = message.lastIndexOf(' ', patternIndex - 2) + 1;
+        String playerName = message.substring(nameStart, patternIndex - 1);
+        if (playerName.isEmpty()) {
+            return message;
+        }
+        return message.substring(0, nameStart) + BRIGHT_YELLOW + playerName + RESET + " " + BRIGHT_YELLOW + pattern + RESET;
+    }
 }
 
@@ -0,0 +1,37 @@
+package org.example1.rCONPro;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * 命令执行后端 - 插件收到控制端的命令后交给当前后端执行
+ * 实现必须是异步的：调用方是网络IO线程，不能被阻塞
+ */
+public interface CommandBackend {
+    /**
+     * 执行命令，输出按到达顺序交给outputConsumer（可能在任意线程中调用）
+     * @return 命令执行完毕（输出已全部交出）时完成；失败或超时时异常完成
+     */
+    CompletableFuture<Void> executeCommand(String command, Consumer<String> outputConsumer);
+    
+    /**
+     * 按优先级通道执行命令，不区分通道的后端（如RCON）忽略lane
+     */
+    default CompletableFuture<Void> executeCommand(String command, TickCommandScheduler.Lane lane, Consumer<String> outputConsumer) {
+        return executeCommand(command, outputConsumer);
+    }
+    
+    /**
+     * 批量执行命令（脚本），单条命令失败不影响后续命令
+     * @return 全部执行完毕时完成，结果按命令顺序排列
+     */
+    CompletableFuture<List<CommandBatch.LineResult>> executeBatch(List<String> commands);
+    
+    /**
+     * 统计摘要
+     */
+    String getStats();
+    
+    void close();
+}
@@ -0,0 +1,224 @@
+package org.example1.rCONPro;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量命令（脚本） - 控制端一次发送整段脚本，插件流水线执行后返回一个汇总结果
+ * 脚本格式：每行一条命令，空行和以#开头的注释行忽略
+ * 结果帧格式（二进制，大端序）：
+ *   [2字节长度+UTF-8 关联标识][8字节 总耗时微秒][4字节 行数]
+ *   每行：[1字节 状态][8字节 耗时微秒][4字节长度+UTF-8 输出]
+ * 结果按脚本中命令的顺序排列，不重复命令本身（控制端保留了发送的脚本）；
+ * 单行输出和整帧输出都有上限，超出的部分截断，保证结果帧不超过协议的1MB限制
+ */
+public class CommandBatch {
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;   // 命令不存在或执行失败（输出为原因）
+    public static final byte STATUS_SKIPPED = 2; // 批量执行中止，未执行
+    
+    private static final int MAX_LINE_OUTPUT_CHARS = 1024;
+    private static final int MAX_TOTAL_OUTPUT_CHARS = 128 * 1024;
+    private static final String TRUNCATED = "…";
+    
+    /**
+     * 单行的执行结果
+     */
+    public static class LineResult {
+        public final byte status;
+        public final long micros;
+        public final String output;
+        
+        public LineResult(byte status, long micros, String output) {
+            this.status = status;
+            this.micros = micros;
+            this.output = output;
+        }
+    }
+    
+    /**
+     * 解码后的结果帧
+     */
+    public static class Result {
+        public final String id;
+        public final long totalMicros;
+        public final List<LineResult> lines;
+        
+        Result(String id, long totalMicros, List<LineResult> lines) {
+            this.id = id;
+            this.totalMicros = totalMicros;
+            this.lines = lines;
+        }
+        
+        public int count(byte status) {
+            int count = 0;
+            for (LineResult line : lines) {
+                if (line.status == status) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+    
+    /**
+     * 拆出脚本中的命令
+     */
+    public static List<String> parseScript(String script) {
+        List<String> commands = new ArrayList<>();
+        for (String line : script.split("\n")) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                commands.add(line);
+            }
+        }
+        return commands;
+    }
+    
+    /**
+     * 通过逐条执行的后端流水线执行：同时最多window条在途，结果按脚本顺序排列
+     * 用于没有批量执行能力的后端（如RCON），每行的输出合并为一段
+     */
+    public static CompletableFuture<List<LineResult>> pipeline(CommandBackend backend, List<String> commands, int window) {
+        CompletableFuture<List<LineResult>> future = new CompletableFuture<>();
+        if (commands.isEmpty()) {
+            future.complete(new ArrayList<>());
+            return future;
+        }
+        LineResult[] results = new LineResult[commands.size()];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(commands.size());
+        Runnable[] startNext = new Runnable[1];
+        startNext[0] = () -> {
+            int index = next.getAndIncrement();
+            if (index >= commands.size()) {
+                return;
+            }
+            String command = commands.get(index);
+            StringBuilder output = new StringBuilder();
+            long start = System.nanoTime();
+            backend.executeCommand(command, chunk -> {
+                synchronized (output) {
+                    appendOutput(output, chunk);
+                }
+            }).whenCompleteAsync((v, error) -> {
+                // 异步继续，避免后端同步完成（如立即失败）时逐行递归
+                long micros = (System.nanoTime() - start) / 1000;
+                synchronized (output) {
+                    results[index] = error == null
+                            ? new LineResult(STATUS_OK, micros, output.toString())
+                            : new LineResult(STATUS_ERROR, micros, describe(error));
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    future.complete(Arrays.asList(results));
+                } else {
+                    startNext[0].run();
+                }
+            });
+        };
+        for (int i = 0; i < Math.min(window, commands.size()); i++) {
+            startNext[0].run();
+        }
+        return future;
+    }
+    
+    /**
+     * 追加一段输出，超过单行上限的部分丢弃
+     */
+    static void appendOutput(StringBuilder output, String text) {
+        if (output.length() >= MAX_LINE_OUTPUT_CHARS) {
+            return;
+        }
+        if (output.length() > 0) {
+            output.append('\n');
+        }
+        output.append(text, 0, Math.min(text.length(), MAX_LINE_OUTPUT_CHARS - output.length()));
+        if (output.length() >= MAX_LINE_OUTPUT_CHARS) {
+            output.append(TRUNCATED);
+        }
+    }
+    
+    /**
+     * 失败原因：最内层异常的消息，没有消息时用异常类型名
+     */
+    static String describe(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null && cause != cause.getCause()) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+    
+    /**
+     * 编码结果帧（含帧头）
+     */
+    public static byte[] encodeResult(String id, long totalMicros, List<LineResult> results) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + results.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(NetworkProtocol.MSG_COMMAND_BATCH_RESULT);
+            out.writeInt(0); // 长度，最后回填
+            out.writeUTF(id);
+            out.writeLong(totalMicros);
+            out.writeInt(results.size());
+            int outputBudget = MAX_TOTAL_OUTPUT_CHARS;
+            for (LineResult result : results) {
+                String output = result.output;
+                if (output.length() > outputBudget) {
+                    output = outputBudget > 0 ? output.substring(0, outputBudget) + TRUNCATED : TRUNCATED;
+                }
+                outputBudget -= output.length();
+                out.writeByte(result.status);
+                out.writeLong(result.micros);
+                writeString(out, output);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // ByteArrayOutputStream不会抛出
+        }
+        byte[] frame = bytes.toByteArray();
+        NetworkProtocol.writeInt(frame, 4, frame.length - 8);
+        return frame;
+    }
+    
+    /**
+     * 解码结果帧的消息体
+     */
+    public static Result decodeResult(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        String id = in.readUTF();
+        long totalMicros = in.readLong();
+        int count = in.readInt();
+        if (count < 0 || count > payload.length) {
+            throw new IOException("批量命令结果行数异常: " + count);
+        }
+        List<LineResult> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte status = in.readByte();
+            long micros = in.readLong();
+            String output = readString(in, payload.length);
+            lines.add(new LineResult(status, micros, output));
+        }
+        return new Result(id, totalMicros, lines);
+    }
+    
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in, int limit) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > limit) {
+            throw new IOException("批量命令结果长度异常: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,6 +1,7 @@
 package org.example1.rCONPro;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -21,7 +22,7 @@ public class ConfigManager {
      * 加载插件配置
      */
     public static PluginConfig loadPluginConfig() {
-        Properties props = loadProperties(PLUGIN_CONFIG_FILE);
+        Properties props = loadProperties(PLUGIN_CONFIG_FILE, pluginEntries(new PluginConfig()));
         if (props == null) {
             // 创建默认配置
             PluginConfig config = new PluginConfig();
@@ -33,6 +34,35 @@ public class ConfigManager {
         config.rconHost = props.getProperty("rcon.host", "localhost");
         config.rconPort = Integer.parseInt(props.getProperty("rcon.port", "25575"));
         config.listenPort = Integer.parseInt(props.getProperty("listen.port", "25577"));
+        config.sessionQueueCapacity = Integer.parseInt(props.getProperty("session.queue.capacity", "4096"));
+        config.logSource = PluginMode.LogSource.valueOf(props.getProperty("log.source", "LOG4J").toUpperCase());
+        config.commandBackend = PluginMode.CommandBackendType.valueOf(props.getProperty("command.backend", "BUKKIT").toUpperCase());
+        // command.batch.tick.budget.ms是旧版本的配置项，现在对所有命令生效
+        config.commandTickBudgetMs = Long.parseLong(props.getProperty("command.tick.budget.ms",
+                props.getProperty("command.batch.tick.budget.ms", "10")));
+        config.commandInteractiveMaxInFlight = Integer.parseInt(props.getProperty("command.interactive.max.inflight", "4"));
+        config.commandBatchMaxLines = Integer.parseInt(props.getProperty("command.batch.max.lines", "10000"));
+        config.historyParallelism = Integer.parseInt(props.getProperty("history.parallelism", String.valueOf(config.historyParallelism)));
+        config.historyMaxLines = Integer.parseInt(props.getProperty("history.max.lines", "10000"));
+        config.logQueueCapacity = Integer.parseInt(props.getProperty("log.queue.capacity", "65536"));
+        config.logQueueOverflow = LogRingBuffer.OverflowPolicy.valueOf(
+                props.getProperty("log.queue.overflow", "DROP_OLDEST").toUpperCase());
+        config.logQueueBlockTimeoutMs = Long.parseLong(props.getProperty("log.queue.block.timeout.ms", "5"));
+        config.batchMaxBytes = Integer.parseInt(props.getProperty("batch.max.bytes", "16384"));
+        config.batchLingerMs = Long.parseLong(props.getProperty("batch.linger.ms", "5"));
+        config.logTailBufferSize = Integer.parseInt(props.getProperty("log.tail.buffer.size", "65536"));
+        config.logTailMaxPollMs = Long.parseLong(props.getProperty("log.tail.max.poll.ms", "1000"));
+        config.replayBufferMb = Integer.parseInt(props.getProperty("replay.buffer.mb", "4"));
+        config.compressionEnabled = Boolean.parseBoolean(props.getProperty("compression.enabled", "true"));
+        config.compressionLevel = Integer.parseInt(props.getProperty("compression.level", "6"));
+        config.compressionMinFrameSize = Integer.parseInt(props.getProperty("compression.min.frame.size", "64"));
+        config.rconRequestTimeoutMs = Long.parseLong(props.getProperty("rcon.request.timeout.ms", "10000"));
+        config.rconPoolMaxSize = Integer.parseInt(props.getProperty("rcon.pool.max.size", "4"));
+        config.rconPoolIdleTimeoutMs = Long.parseLong(props.getProperty("rcon.pool.idle.timeout.ms", "300000"));
+        config.rconPoolAcquireTimeoutMs = Long.parseLong(props.getProperty("rcon.pool.acquire.timeout.ms", "5000"));
+        config.rconPoolHealthCheckMs = Long.parseLong(props.getProperty("rcon.pool.health.check.ms", "60000"));
+        config.keepaliveIntervalMs = Long.parseLong(props.getProperty("keepalive.interval.ms", "10000"));
+        config.keepaliveTimeoutMs = Long.parseLong(props.getProperty("keepalive.timeout.ms", "30000"));
         
         return config;
     }
@@ -41,18 +71,51 @@ public class ConfigManager {
      * 保存插件配置
      */
     public static void savePluginConfig(PluginConfig config) {
-        savePropertiesWithComments(PLUGIN_CONFIG_FILE, new String[][] {
+        savePropertiesWithComments(PLUGIN_CONFIG_FILE, pluginEntries(config));
+    }
+    
+    /**
+     * 插件配置项，每个元素为 [key, value, comment]
+     */
+    private static String[][] pluginEntries(PluginConfig config) {
+        return new String[][] {
             {"rcon.host", config.rconHost, "MC服务器RCON地址"},
             {"rcon.port", String.valueOf(config.rconPort), "MC服务器RCON端口"},
-            {"listen.port", String.valueOf(config.listenPort), "插件监听端口（用于接收远程控制端连接）"}
-        });
+            {"listen.port", String.valueOf(config.listenPort), "插件监听端口（用于接收远程控制端连接）"},
+            {"session.queue.capacity", String.valueOf(config.sessionQueueCapacity), "每个控制端的发送队列容量（帧数，满了丢弃）"},
+            {"log.queue.capacity", String.valueOf(config.logQueueCapacity), "日志环形缓冲区容量（条数）"},
+            {"log.source", config.logSource.name(), "日志来源：LOG4J（进程内捕获服务器日志，失败时回退到FILE）/ FILE（监控logs/latest.log）/ STDOUT（捕获System.out和System.err）"},
+            {"command.backend", config.commandBackend.name(), "命令执行方式：BUKKIT（在服务器主线程直接执行，控制端的密码需与server.properties中的rcon.password一致）/ RCON（通过本机RCON端口执行）"},
+            {"command.tick.budget.ms", String.valueOf(config.commandTickBudgetMs), "命令每个tick最多占用的主线程时间（毫秒，BUKKIT方式），超出的命令留到下一个tick"},
+            {"command.interactive.max.inflight", String.valueOf(config.commandInteractiveMaxInFlight), "单个控制端同时在途的命令超过该数量时，后续命令按批量命令排队（BUKKIT方式）"},
+            {"command.batch.max.lines", String.valueOf(config.commandBatchMaxLines), "单个批量命令脚本的最大行数"},
+            {"history.parallelism", String.valueOf(config.historyParallelism), "历史日志查询同时读取的文件数（独立线程池，不占用服务器主线程）"},
+            {"history.max.lines", String.valueOf(config.historyMaxLines), "单次历史日志查询最多返回的行数"},
+            {"log.queue.overflow", config.logQueueOverflow.name(), "缓冲区满时的策略：DROP_OLDEST / DROP_NEWEST / BLOCK"},
+            {"log.queue.block.timeout.ms", String.valueOf(config.logQueueBlockTimeoutMs), "BLOCK策略下的最长等待时间（毫秒）"},
+            {"batch.max.bytes", String.valueOf(config.batchMaxBytes), "批量日志帧达到该大小时立即发送（字节）"},
+            {"batch.linger.ms", String.valueOf(config.batchLingerMs), "批量日志最长等待时间（毫秒）"},
+            {"log.tail.buffer.size", String.valueOf(config.logTailBufferSize), "读取日志文件的缓冲区大小（字节）"},
+            {"log.tail.max.poll.ms", String.valueOf(config.logTailMaxPollMs), "日志文件空闲时的最长轮询间隔（毫秒）"},
+            {"replay.buffer.mb", String.valueOf(config.replayBufferMb), "为重连的控制端保留的最近日志大小（MB，堆外内存）"},
+            {"compression.enabled", String.valueOf(config.compressionEnabled), "控制端支持时启用DEFLATE流压缩"},
+            {"compression.level", String.valueOf(config.compressionLevel), "压缩级别（1-9）"},
+            {"compression.min.frame.size", String.valueOf(config.compressionMinFrameSize), "小于该大小的帧不压缩（字节）"},
+            {"rcon.request.timeout.ms", String.valueOf(config.rconRequestTimeoutMs), "单个RCON命令的超时时间（毫秒）"},
+            {"rcon.pool.max.size", String.valueOf(config.rconPoolMaxSize), "RCON连接池最大连接数，即同时执行的RCON命令数（每个连接一次只执行一条命令）"},
+            {"rcon.pool.idle.timeout.ms", String.valueOf(config.rconPoolIdleTimeoutMs), "空闲连接超过该时间后关闭（毫秒）"},
+            {"rcon.pool.acquire.timeout.ms", String.valueOf(config.rconPoolAcquireTimeoutMs), "等待空闲连接的最长时间（毫秒）"},
+            {"rcon.pool.health.check.ms", String.valueOf(config.rconPoolHealthCheckMs), "空闲连接健康检查间隔（毫秒）"},
+            {"keepalive.interval.ms", String.valueOf(config.keepaliveIntervalMs), "超过该时间未收到控制端的数据时发送心跳（毫秒，0表示不发送）"},
+            {"keepalive.timeout.ms", String.valueOf(config.keepaliveTimeoutMs), "超过该时间未收到控制端的任何数据时断开连接（毫秒，0表示不检测；旧版控制端每10秒发送一次心跳）"}
+        };
     }
     
     /**
      * 加载远程控制端配置
      */
     public static ClientConfig loadClientConfig() {
-        Properties props = loadProperties(CLIENT_CONFIG_FILE);
+        Properties props = loadProperties(CLIENT_CONFIG_FILE, clientEntries(new ClientConfig()));
         if (props == null) {
             // 创建默认配置
             ClientConfig config = new ClientConfig();
@@ -64,6 +127,17 @@ public class ConfigManager {
         config.pluginHost = props.getProperty("plugin.host", "localhost");
         config.pluginPort = Integer.parseInt(props.getProperty("plugin.port", "25577"));
         config.rconPassword = props.getProperty("rcon.password", "");
+        config.compressionEnabled = Boolean.parseBoolean(props.getProperty("compression.enabled", "true"));
+        config.compressionLevel = Integer.parseInt(props.getProperty("compression.level", "6"));
+        config.compressionMinFrameSize = Integer.parseInt(props.getProperty("compression.min.frame.size", "64"));
+        config.renderFps = Integer.parseInt(props.getProperty("render.fps", "30"));
+        config.renderMaxPendingKb = Integer.parseInt(props.getProperty("render.max.pending.kb", "1024"));
+        config.archiveEnabled = Boolean.parseBoolean(props.getProperty("archive.enabled", "true"));
+        config.archiveDirectory = props.getProperty("archive.directory", "rconpro-archive");
+        config.archiveSegmentMb = Integer.parseInt(props.getProperty("archive.segment.mb", "64"));
+        config.archiveMaxMb = Long.parseLong(props.getProperty("archive.max.mb", "2048"));
+        config.keepaliveIntervalMs = Long.parseLong(props.getProperty("keepalive.interval.ms", "10000"));
+        config.keepaliveTimeoutMs = Long.parseLong(props.getProperty("keepalive.timeout.ms", "30000"));
         
         return config;
     }
@@ -72,22 +146,52 @@ public class ConfigManager {
      * 保存远程控制端配置
      */
     public static void saveClientConfig(ClientConfig config) {
-        savePropertiesWithComments(CLIENT_CONFIG_FILE, new String[][] {
+        savePropertiesWithComments(CLIENT_CONFIG_FILE, clientEntries(config));
+    }
+    
+    /**
+     * 远程控制端配置项，每个元素为 [key, value, comment]
+     */
+    private static String[][] clientEntries(ClientConfig config) {
+        return new String[][] {
             {"plugin.host", config.pluginHost, "插件服务器地址"},
             {"plugin.port", String.valueOf(config.pluginPort), "插件监听端口（必须与插件配置中的listen.port一致）"},
-            {"rcon.password", config.rconPassword, "RCON密码（连接时发送给插件）"}
-        });
+            {"rcon.password", config.rconPassword, "RCON密码（连接时发送给插件）"},
+            {"compression.enabled", String.valueOf(config.compressionEnabled), "插件支持时启用DEFLATE流压缩"},
+            {"compression.level", String.valueOf(config.compressionLevel), "压缩级别（1-9）"},
+            {"compression.min.frame.size", String.valueOf(config.compressionMinFrameSize), "小于该大小的帧不压缩（字节）"},
+            {"render.fps", String.valueOf(config.renderFps), "日志输出到终端的最高刷新次数（每秒）"},
+            {"render.max.pending.kb", String.valueOf(config.renderMaxPendingKb), "两次刷新之间最多积压的日志（K字符），终端跟不上时超出的行被跳过"},
+            {"archive.enabled", String.valueOf(config.archiveEnabled), "把收到的日志保存到本地归档，可用:grep、:since、:level检索"},
+            {"archive.directory", config.archiveDirectory, "本地归档目录"},
+            {"archive.segment.mb", String.valueOf(config.archiveSegmentMb), "归档分段文件大小（MB）"},
+            {"archive.max.mb", String.valueOf(config.archiveMaxMb), "归档总大小上限（MB），超出时删除最旧的分段"},
+            {"keepalive.interval.ms", String.valueOf(config.keepaliveIntervalMs), "超过该时间未收到插件的数据时发送心跳（毫秒，0表示不发送）"},
+            {"keepalive.timeout.ms", String.valueOf(config.keepaliveTimeoutMs), "超过该时间未收到插件的任何数据时断开并重连（毫秒，0表示不检测）"}
+        };
     }
     
-    private static Properties loadProperties(String filePath) {
+    /**
+     * 加载配置文件（UTF-8，与生成时一致）
+     * @param entries 当前版本的配置项，用于识别旧版本生成的行内注释
+     */
+    private static Properties loadProperties(String filePath, String[][] entries) {
         Path path = Paths.get(filePath);
         if (!Files.exists(path)) {
             return null;
         }
         
         Properties props = new Properties();
-        try (InputStream is = Files.newInputStream(path)) {
-            props.load(is);
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            props.load(reader);
+            // 旧版本把注释写在值的后面（"值 # 注释"），只去掉与该项注释完全相同的后缀，值本身可以包含" #"
+            for (String[] entry : entries) {
+                String value = props.getProperty(entry[0]);
+                String legacyComment = " # " + entry[2];
+                if (value != null && value.endsWith(legacyComment)) {
+                    props.setProperty(entry[0], value.substring(0, value.length() - legacyComment.length()).trim());
+                }
+            }
             return props;
         } catch (IOException e) {
             System.err.println("加载配置文件失败: " + filePath);
@@ -109,15 +213,19 @@ public class ConfigManager {
                 Files.createDirectories(parent);
             }
             try (PrintWriter writer = new PrintWriter(
-                    new OutputStreamWriter(Files.newOutputStream(path), "UTF-8"))) {
+                    new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8))) {
                 writer.println("# RCONPro Configuration");
                 writer.println("# Generated automatically");
-                writer.println();
                 for (String[] entry : entries) {
                     String key = entry[0];
                     String value = entry[1];
                     String comment = entry.length > 2 ? entry[2] : "";
-                    writer.println(key + "=" + value + (comment.isEmpty() ? "" : " # " + comment));
+                    // 注释单独占一行，值原样保留（properties格式中行内的#不是注释）
+                    writer.println();
+                    if (!comment.isEmpty()) {
+                        writer.println("# " + comment);
+                    }
+                    writer.println(key + "=" + escapeValue(value));
                 }
                 System.out.println("配置文件已生成: " + path.toAbsolutePath());
             }
@@ -127,6 +235,28 @@ public class ConfigManager {
         }
     }
     
+    /**
+     * 按properties格式转义值：反斜杠、换行和开头的空格
+     */
+    private static String escapeValue(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                escaped.append("\\\\");
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else if (c == '\r') {
+                escaped.append("\\r");
+            } else if (c == ' ' && escaped.length() == 0) {
+                escaped.append("\\ ");
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+    
     /**
      * 插件配置类
      */
@@ -134,6 +264,32 @@ public class ConfigManager {
         public String rconHost = "localhost";       // MC服务器RCON地址（等待控制端提供密码后连接）
         public int rconPort = 25575;               // MC服务器RCON端口
         public int listenPort = 25577;             // 插件监听端口（用于接收控制端连接）
+        public int sessionQueueCapacity = 4096;    // 每个控制端的发送队列容量
+        public int logQueueCapacity = 65536;       // 日志环形缓冲区容量
+        public PluginMode.LogSource logSource = PluginMode.LogSource.LOG4J; // 日志来源
+        public PluginMode.CommandBackendType commandBackend = PluginMode.CommandBackendType.BUKKIT; // 命令执行方式
+        public long commandTickBudgetMs = 10;      // 命令每个tick最多占用的主线程时间
+        public int commandInteractiveMaxInFlight = 4; // 单个控制端按交互命令排队的最大在途数量
+        public int commandBatchMaxLines = 10000;   // 单个批量命令脚本的最大行数
+        public int historyParallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 2); // 历史日志查询同时读取的文件数
+        public int historyMaxLines = 10000;        // 单次历史日志查询最多返回的行数
+        public LogRingBuffer.OverflowPolicy logQueueOverflow = LogRingBuffer.OverflowPolicy.DROP_OLDEST; // 缓冲区满时的策略
+        public long logQueueBlockTimeoutMs = 5;    // BLOCK策略下的最长等待时间
+        public int batchMaxBytes = 16384;          // 批量日志帧大小阈值
+        public long batchLingerMs = 5;             // 批量日志最长等待时间
+        public int logTailBufferSize = 65536;      // 读取日志文件的缓冲区大小
+        public long logTailMaxPollMs = 1000;       // 日志文件空闲时的最长轮询间隔
+        public int replayBufferMb = 4;             // 为重连的控制端保留的最近日志大小（MB）
+        public boolean compressionEnabled = true;  // 是否允许流压缩
+        public int compressionLevel = 6;           // 压缩级别
+        public int compressionMinFrameSize = 64;   // 小于该大小的帧不压缩
+        public long rconRequestTimeoutMs = 10000;  // 单个RCON命令的超时时间
+        public int rconPoolMaxSize = 4;            // RCON连接池最大连接数（即同时执行的RCON命令数）
+        public long rconPoolIdleTimeoutMs = 300000; // 空闲连接超时
+        public long rconPoolAcquireTimeoutMs = 5000; // 等待空闲连接的最长时间
+        public long rconPoolHealthCheckMs = 60000; // 空闲连接健康检查间隔
+        public long keepaliveIntervalMs = 10000;   // 链路空闲多久后发送心跳
+        public long keepaliveTimeoutMs = 30000;    // 多久未收到数据判定控制端已失效
     }
     
     /**
@@ -143,6 +299,17 @@ public class ConfigManager {
         public String pluginHost = "localhost";    // 插件服务器地址
         public int pluginPort = 25577;             // 插件监听端口
         public String rconPassword = "";           // RCON密码（连接时发送给插件）
+        public boolean compressionEnabled = true;  // 是否请求流压缩
+        public int compressionLevel = 6;           // 压缩级别
+        public int compressionMinFrameSize = 64;   // 小于该大小的帧不压缩
+        public int renderFps = 30;                 // 终端最高刷新次数（每秒）
+        public int renderMaxPendingKb = 1024;      // 两次刷新之间最多积压的日志（K字符）
+        public boolean archiveEnabled = true;      // 是否保存本地日志归档
+        public String archiveDirectory = "rconpro-archive"; // 本地归档目录
+        public int archiveSegmentMb = 64;          // 归档分段文件大小
+        public long archiveMaxMb = 2048;           // 归档总大小上限
+        public long keepaliveIntervalMs = 10000;   // 链路空闲多久后发送心跳
+        public long keepaliveTimeoutMs = 30000;    // 多久未收到数据判定插件已失效
     }
 }
 
@@ -0,0 +1,183 @@
+package org.example1.rCONPro;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 终端渲染器 - 控制端的日志输出不再逐行经过加锁且自动刷新的System.out
+ * 接收线程只把格式化好的行追加到待输出缓冲区，渲染线程按固定帧率把缓冲区整块编码后通过通道写出，
+ * 每帧只需一次编码和少量系统调用；终端跟不上时待输出内容达到上限后的行被跳过，下一帧输出跳过的行数
+ * 接收线程永远不会因终端输出而阻塞，输入命令的提示也不会被日志刷屏拖慢
+ */
+public class ConsoleRenderer {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final long frameNanos;
+    private final int maxPendingChars;
+    private final ByteBuffer output = ByteBuffer.allocateDirect(64 * 1024);
+    
+    // 双缓冲：接收线程追加到pending，渲染时与drawing交换
+    private final Object pendingLock = new Object();
+    private StringBuilder pending = new StringBuilder();
+    private StringBuilder drawing = new StringBuilder();
+    private long skippedLines = 0;
+    private long totalSkippedLines = 0;
+    
+    // 保证同一时间只有一个线程在写终端（渲染线程或调用flush的线程）
+    private final Object renderLock = new Object();
+    private Thread renderThread;
+    private volatile boolean running = false;
+    
+    /**
+     * 输出到标准输出，编码与System.out一致
+     */
+    public ConsoleRenderer(int framesPerSecond, int maxPendingChars) {
+        this(new FileOutputStream(FileDescriptor.out), SystemOutCapture.consoleCharset(), framesPerSecond, maxPendingChars);
+    }
+    
+    /**
+     * @param framesPerSecond 每秒最多输出的次数
+     * @param maxPendingChars 两帧之间最多积压的字符数，超出的行被跳过
+     */
+    public ConsoleRenderer(OutputStream out, Charset charset, int framesPerSecond, int maxPendingChars) {
+        this.channel = Channels.newChannel(out);
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.frameNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, framesPerSecond);
+        this.maxPendingChars = Math.max(4096, maxPendingChars);
+    }
+    
+    /**
+     * 启动渲染线程
+     */
+    public void start() {
+        running = true;
+        renderThread = new Thread(this::renderLoop, "RCONPro-Renderer");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+    
+    /**
+     * 输出一行（不阻塞，在下一帧写出）
+     */
+    public void println(String line) {
+        synchronized (pendingLock) {
+            if (pending.length() > 0 && pending.length() + line.length() > maxPendingChars) {
+                skippedLines++;
+                return;
+            }
+            pending.append(line).append(LINE_SEPARATOR);
+        }
+    }
+    
+    /**
+     * 立即写出所有待输出的内容（在直接使用System.out输出之前调用，保证先后顺序）
+     */
+    public void flush() {
+        renderFrame();
+    }
+    
+    /**
+     * 停止渲染线程并写出剩余内容
+     */
+    public void stop() {
+        running = false;
+        if (renderThread != null) {
+            LockSupport.unpark(renderThread);
+            try {
+                renderThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        renderFrame();
+    }
+    
+    /**
+     * 因终端跟不上而跳过的总行数
+     */
+    public long getTotalSkippedLines() {
+        synchronized (pendingLock) {
+            return totalSkippedLines;
+        }
+    }
+    
+    private void renderLoop() {
+        long nextFrame = System.nanoTime();
+        while (running) {
+            nextFrame += frameNanos;
+            long wait = nextFrame - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            } else {
+                // 写终端本身超过了一帧的时间，从现在开始重新计时，不追赶落下的帧
+                nextFrame = System.nanoTime();
+            }
+            renderFrame();
+        }
+    }
+    
+    private void renderFrame() {
+        synchronized (renderLock) {
+            long skipped;
+            synchronized (pendingLock) {
+                StringBuilder swap = pending;
+                pending = drawing;
+                drawing = swap;
+                skipped = skippedLines;
+                totalSkippedLines += skipped;
+                skippedLines = 0;
+            }
+            if (skipped > 0) {
+                drawing.append(ColorOutput.formatLogLine("[WARN] 终端输出跟不上，跳过了 " + skipped + " 行日志"))
+                        .append(LINE_SEPARATOR);
+            }
+            if (drawing.length() == 0) {
+                return;
+            }
+            try {
+                write(drawing);
+            } catch (IOException e) {
+                // 标准输出已关闭，没有其他地方可以报告
+            }
+            drawing.setLength(0);
+        }
+    }
+    
+    /**
+     * 整块编码并写出，输出缓冲区满时先写出再继续编码
+     */
+    private void write(CharSequence text) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (encoder.encode(chars, output, true).isOverflow()) {
+            drain();
+        }
+        while (encoder.flush(output).isOverflow()) {
+            drain();
+        }
+        drain();
+    }
+    
+    private void drain() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            channel.write(output);
+        }
+        output.clear();
+    }
+}
@@ -0,0 +1,128 @@
+package org.example1.rCONPro;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图 - 以微秒记录，按对数-线性分桶（与HdrHistogram相同的思路）
+ * 每个2的幂区间再均分为16个子桶，相对误差不超过1/16，覆盖1微秒到约2^40微秒（约12天）
+ * 记录只是一次数组元素的原子加和两个分段计数器的更新，可以在热路径上由多个线程同时调用
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    
+    /**
+     * 记录一次耗时（纳秒）
+     */
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+    
+    /**
+     * 记录一次耗时（微秒），负值按0处理
+     */
+    public void recordMicros(long micros) {
+        long value = Math.max(0, micros);
+        buckets.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+    
+    /**
+     * 小于16的值各占一个桶；其余按最高位所在的2的幂区间和其后4位确定子桶
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+        int sub = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+    }
+    
+    /**
+     * 桶内的最大值（百分位按桶的上界报告，不会低估）
+     */
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+    
+    public long getCount() {
+        return count.sum();
+    }
+    
+    public long getMaxMicros() {
+        return max.get();
+    }
+    
+    public long getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+    
+    /**
+     * 百分位（微秒），没有记录时返回0
+     * 记录和读取并发时结果是近似值
+     * @param percentile 0到100之间，如99.9
+     */
+    public long getPercentileMicros(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+    
+    /**
+     * 摘要，如"1234 次，p50 1.2ms，p99 8.5ms，p99.9 20ms，最大 31ms"
+     */
+    public String summary() {
+        long n = getCount();
+        if (n == 0) {
+            return "0 次";
+        }
+        return n + " 次，p50 " + formatMicros(getPercentileMicros(50))
+                + "，p99 " + formatMicros(getPercentileMicros(99))
+                + "，p99.9 " + formatMicros(getPercentileMicros(99.9))
+                + "，最大 " + formatMicros(getMaxMicros());
+    }
+    
+    static String formatMicros(long micros) {
+        if (micros < 1000) {
+            return micros + "us";
+        }
+        if (micros < 1000_000) {
+            return String.format("%.1fms", micros / 1000.0);
+        }
+        return String.format("%.2fs", micros / 1000_000.0);
+    }
+}
@@ -0,0 +1,94 @@
+package org.example1.rCONPro;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.function.Consumer;
+
+/**
+ * Log4j2 日志捕获 - 在服务器的根记录器上挂接一个Appender，直接在进程内获得结构化日志
+ * 不需要读磁盘上的latest.log，也没有轮询延迟
+ * 服务器没有使用Log4j2 Core时start()抛出异常，由调用方回退到日志文件监控
+ */
+public class Log4jLogCapture {
+    private static final String APPENDER_NAME = "RCONPro";
+    
+    private final Consumer<LogEvent> eventConsumer;
+    private CaptureAppender appender;
+    private Logger rootLogger;
+    
+    public Log4jLogCapture(Consumer<LogEvent> eventConsumer) {
+        this.eventConsumer = eventConsumer;
+    }
+    
+    /**
+     * 挂接到根记录器
+     * @throws IllegalStateException 根记录器不是Log4j2 Core实现
+     * @throws LinkageError 运行环境中没有Log4j2 Core
+     */
+    public void start() {
+        org.apache.logging.log4j.Logger root = LogManager.getRootLogger();
+        if (!(root instanceof Logger)) {
+            throw new IllegalStateException("根记录器不是Log4j2 Core实现: " + (root == null ? "null" : root.getClass().getName()));
+        }
+        rootLogger = (Logger) root;
+        appender = new CaptureAppender();
+        appender.start();
+        rootLogger.addAppender(appender);
+    }
+    
+    /**
+     * 从根记录器上移除
+     */
+    public void stop() {
+        if (rootLogger != null && appender != null) {
+            rootLogger.removeAppender(appender);
+            appender.stop();
+        }
+    }
+    
+    /**
+     * 捕获用的Appender
+     * Log4j可能复用事件对象（异步或无垃圾模式），所以在append中立即复制需要的字段
+     */
+    private class CaptureAppender extends AbstractAppender {
+        private final ThreadLocal<Boolean> isForwarding = ThreadLocal.withInitial(() -> false);
+        
+        CaptureAppender() {
+            super(APPENDER_NAME, null, null, true, Property.EMPTY_ARRAY);
+        }
+        
+        @Override
+        public void append(org.apache.logging.log4j.core.LogEvent event) {
+            // 避免转发过程中产生的日志再次进入（例如缓冲区阻塞时的警告）
+            if (isForwarding.get()) {
+                return;
+            }
+            isForwarding.set(true);
+            try {
+                eventConsumer.accept(new LogEvent(
+                        event.getTimeMillis(),
+                        event.getLevel().name(),
+                        event.getLoggerName(),
+                        event.getThreadName(),
+                        event.getMessage().getFormattedMessage(),
+                        formatThrowable(event.getThrown())));
+            } finally {
+                isForwarding.set(false);
+            }
+        }
+        
+        private String formatThrowable(Throwable thrown) {
+            if (thrown == null) {
+                return null;
+            }
+            StringWriter writer = new StringWriter();
+            thrown.printStackTrace(new PrintWriter(writer));
+            return writer.toString().stripTrailing();
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package org.example1.rCONPro;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 本地日志归档 - 控制端把收到的日志追加写入内存映射的分段文件，控制端重启后仍可检索
+ * 每个分段是固定大小的文件，写满后封存并新建下一段；总大小超过上限时删除最旧的分段
+ * 记录格式（大端序）：[4字节 长度][8字节 时间戳毫秒][1字节 级别][UTF-8 文本]，长度为0表示分段中数据的结尾
+ * 稀疏索引：每写入约64KB形成一个块，记录块的位置、最晚的时间戳和出现过的级别；检索时跳过时间或级别不符合的块，
+ * 其余块并行扫描。封存分段的索引保存在同名的.idx文件中，启动时只需扫描未封存的最后一段
+ * 只有一个写入线程（控制端的接收线程），检索可以在任意线程中同时进行
+ */
+public class LogArchive implements Closeable {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int HEADER_BYTES = 13;
+    private static final int BLOCK_BYTES = 64 * 1024;
+    private static final int MAX_TEXT_BYTES = 32 * 1024;
+    
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private Segment active; // 只由写入线程访问
+    // 已移出归档但文件未能删除的分段（Windows上仍被映射的文件不能删除），之后封存分段和关闭时重试；只由写入线程访问
+    // 只保存路径，不引用分段本身，映射才能被回收
+    private final List<Path> pendingDeletes = new ArrayList<>();
+    
+    /**
+     * 检索条件，各项为空时不限
+     */
+    public static class Query {
+        final long sinceMillis;
+        final byte minLevel;
+        final Pattern pattern;
+        // 不含正则元字符时直接按字节查找，不必解码
+        final byte[] literal;
+        
+        /**
+         * @param sinceMillis 最早的时间戳，0表示不限
+         * @param minLevel 最低级别，LogEventCodec.LEVEL_PLAIN表示不限
+         * @param regex 在整行中查找的正则，null表示不限
+         */
+        public Query(long sinceMillis, byte minLevel, String regex) {
+            this.sinceMillis = sinceMillis;
+            this.minLevel = minLevel;
+            this.pattern = regex != null ? Pattern.compile(regex) : null;
+            this.literal = regex != null && isLiteral(regex) ? regex.getBytes(StandardCharsets.UTF_8) : null;
+        }
+        
+        private static boolean isLiteral(String regex) {
+            for (int i = 0; i < regex.length(); i++) {
+                if ("\\[](){}.*+?^$|".indexOf(regex.charAt(i)) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * 一条匹配的记录
+     */
+    public static class Match {
+        public final long timestamp;
+        public final byte level;
+        public final String line;
+        
+        Match(long timestamp, byte level, String line) {
+            this.timestamp = timestamp;
+            this.level = level;
+            this.line = line;
+        }
+    }
+    
+    /**
+     * 检索结果：最近的若干条匹配（按写入顺序）和扫描统计
+     */
+    public static class SearchResult {
+        public final List<Match> matches;
+        public final long totalMatches;
+        public final long scannedBytes;
+        public final int scannedBlocks;
+        public final int skippedBlocks;
+        public final long elapsedNanos;
+        
+        SearchResult(List<Match> matches, long totalMatches, long scannedBytes, int scannedBlocks, int skippedBlocks, long elapsedNanos) {
+            this.matches = matches;
+            this.totalMatches = totalMatches;
+            this.scannedBytes = scannedBytes;
+            this.scannedBlocks = scannedBlocks;
+            this.skippedBlocks = skippedBlocks;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+    
+    /**
+     * 打开（或创建）归档目录，已有的分段可以继续检索，最后一段未封存时继续写入
+     * @param segmentBytes 单个分段文件的大小
+     * @param maxBytes 所有分段的总大小上限
+     */
+    public LogArchive(Path directory, int segmentBytes, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = Math.max(BLOCK_BYTES * 4, segmentBytes);
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().collect(Collectors.toList());
+        }
+        for (int i = 0; i < files.size(); i++) {
+            Path path = files.get(i);
+            long id;
+            try {
+                String name = path.getFileName().toString();
+                id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue; // 不是本归档的文件
+            }
+            boolean last = i == files.size() - 1;
+            Segment segment = Segment.open(id, path, indexPath(path), last);
+            segments.add(segment);
+            if (!segment.sealed) {
+                active = segment;
+            }
+        }
+    }
+    
+    /**
+     * 追加一条日志；没有时间戳的日志使用收到的时间
+     */
+    public void append(LogEvent event) throws IOException {
+        long timestamp = event.timestamp > 0 ? event.timestamp : System.currentTimeMillis();
+        append(timestamp, LogSubscription.levelOf(event), event.toLine());
+    }
+    
+    public void append(long timestamp, byte level, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length > MAX_TEXT_BYTES ? LogFileTailer.completeUtf8Length(bytes, MAX_TEXT_BYTES) : bytes.length;
+        int recordSize = HEADER_BYTES + length;
+        if (active == null || active.limit + recordSize > active.buffer.capacity()) {
+            roll();
+        }
+        Segment segment = active;
+        ByteBuffer buffer = segment.buffer;
+        int position = segment.limit;
+        buffer.putLong(position + 4, timestamp);
+        buffer.put(position + 12, level);
+        buffer.put(position + HEADER_BYTES, bytes, 0, length);
+        // 长度最后写入，进程中途退出时不会留下不完整的记录
+        buffer.putInt(position, recordSize - 4);
+        segment.appended(position, recordSize, timestamp, level);
+    }
+    
+    /**
+     * 封存当前分段并新建下一段，超出总大小上限时删除最旧的分段
+     */
+    private void roll() throws IOException {
+        long id = 1;
+        if (active != null) {
+            active.seal(indexPath(active.path));
+            id = active.id + 1;
+        } else if (!segments.isEmpty()) {
+            id = segments.get(segments.size() - 1).id + 1;
+        }
+        Path path = directory.resolve(String.format("%016d", id) + SEGMENT_SUFFIX);
+        active = Segment.create(id, path, segmentBytes);
+        segments.add(active);
+        
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.buffer.capacity();
+        }
+        while (total > maxBytes && segments.size() > 1) {
+            // 正在进行的检索仍持有映射，删除文件不影响读取
+            Segment oldest = segments.remove(0);
+            total -= oldest.buffer.capacity();
+            pendingDeletes.add(oldest.path);
+        }
+        deletePending();
+    }
+    
+    /**
+     * 删除已移出归档的分段文件；删除失败的（映射尚未被回收）留到下次重试，不影响写入
+     * 先删分段再删索引，分段未能删除时保留索引，重启后仍按已封存的分段打开
+     */
+    private void deletePending() {
+        Iterator<Path> iterator = pendingDeletes.iterator();
+        while (iterator.hasNext()) {
+            Path path = iterator.next();
+            try {
+                Files.deleteIfExists(path);
+                Files.deleteIfExists(indexPath(path));
+                iterator.remove();
+            } catch (IOException e) {
+                // 下次重试
+            }
+        }
+    }
+    
+    private static Path indexPath(Path segmentPath) {
+        String name = segmentPath.getFileName().toString();
+        return segmentPath.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+    
+    /**
+     * 检索归档，块之间并行扫描
+     * @param limit 最多返回的匹配数，保留最近的
+     */
+    public SearchResult search(Query query, int limit) {
+        long start = System.nanoTime();
+        int levelMask = query.minLevel == LogEventCodec.LEVEL_PLAIN ? -1 : -1 << query.minLevel;
+        List<Range> ranges = new ArrayList<>();
+        int skipped = 0;
+        for (Segment segment : segments) {
+            // 先读块数再读数组，数组替换发生在块数增加之前
+            int count = segment.blockCount;
+            Block[] blocks = segment.blocks;
+            int indexedEnd = 0;
+            for (int i = 0; i < count; i++) {
+                Block block = blocks[i];
+                indexedEnd = block.end;
+                if (block.maxTimestamp < query.sinceMillis || (block.levelMask & levelMask) == 0) {
+                    skipped++;
+                } else {
+                    ranges.add(new Range(segment, block.start, block.end));
+                }
+            }
+            // 尚未形成块的部分没有索引，整段扫描
+            int limitPosition = segment.limit;
+            if (limitPosition > indexedEnd) {
+                ranges.add(new Range(segment, indexedEnd, limitPosition));
+            }
+        }
+        
+        List<RangeResult> results = ranges.parallelStream().map(range -> scan(range, query, limit)).collect(Collectors.toList());
+        
+        long total = 0;
+        long scannedBytes = 0;
+        ArrayDeque<Match> recent = new ArrayDeque<>();
+        for (int i = results.size() - 1; i >= 0; i--) {
+            RangeResult result = results.get(i);
+            total += result.matched;
+            scannedBytes += ranges.get(i).end - ranges.get(i).start;
+            ByteBuffer buffer = ranges.get(i).segment.buffer.duplicate();
+            Iterator<Integer> positions = result.positions.descendingIterator();
+            while (positions.hasNext() && recent.size() < limit) {
+                recent.addFirst(decode(buffer, positions.next()));
+            }
+        }
+        return new SearchResult(new ArrayList<>(recent), total, scannedBytes, ranges.size(), skipped, System.nanoTime() - start);
+    }
+    
+    private static RangeResult scan(Range range, Query query, int limit) {
+        ByteBuffer buffer = range.segment.buffer.duplicate();
+        RangeResult result = new RangeResult();
+        Matcher matcher = query.pattern != null ? query.pattern.matcher("") : null;
+        byte[] bytes = new byte[1024];
+        int position = range.start;
+        while (position < range.end) {
+            int length = buffer.getInt(position);
+            long timestamp = buffer.getLong(position + 4);
+            byte level = buffer.get(position + 12);
+            int textLength = length + 4 - HEADER_BYTES;
+            if (timestamp >= query.sinceMillis && level >= query.minLevel) {
+                if (query.pattern != null) {
+                    if (bytes.length < textLength) {
+                        bytes = new byte[Math.max(textLength, bytes.length * 2)];
+                    }
+                    buffer.get(position + HEADER_BYTES, bytes, 0, textLength);
+                }
+                boolean matched = query.literal != null ? indexOf(bytes, textLength, query.literal) >= 0
+                        : matcher == null || matcher.reset(new String(bytes, 0, textLength, StandardCharsets.UTF_8)).find();
+                if (matched) {
+                    // 只记录位置，最终保留的记录在合并时才解码
+                    result.matched++;
+                    if (result.positions.size() == limit) {
+                        result.positions.removeFirst();
+                    }
+                    result.positions.addLast(position);
+                }
+            }
+            position += 4 + length;
+        }
+        return result;
+    }
+    
+    private static Match decode(ByteBuffer buffer, int position) {
+        int textLength = buffer.getInt(position) + 4 - HEADER_BYTES;
+        byte[] bytes = new byte[textLength];
+        buffer.get(position + HEADER_BYTES, bytes, 0, textLength);
+        return new Match(buffer.getLong(position + 4), buffer.get(position + 12), new String(bytes, StandardCharsets.UTF_8));
+    }
+    
+    private static int indexOf(byte[] bytes, int length, byte[] pattern) {
+        if (pattern.length == 0) {
+            return 0;
+        }
+        byte first = pattern[0];
+        outer:
+        for (int i = 0; i <= length - pattern.length; i++) {
+            if (bytes[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * 分段数量和已写入的数据量
+     */
+    public String getStats() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.limit;
+        }
+        return segments.size() + " 个分段，" + (bytes / 1024 / 1024) + " MB";
+    }
+    
+    /**
+     * 把当前分段写回磁盘；当前分段保持未封存，下次打开时继续写入
+     * 仍未能删除的旧分段留在目录中，下次打开后超出总大小上限时再次删除
+     */
+    @Override
+    public void close() {
+        if (active != null && active.buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) active.buffer).force();
+        }
+        deletePending();
+    }
+    
+    /**
+     * 一个分段文件
+     */
+    private static class Segment {
+        final long id;
+        final Path path;
+        final ByteBuffer buffer;
+        // 已形成的块；写入线程先替换数组再增加块数
+        volatile Block[] blocks = new Block[16];
+        volatile int blockCount = 0;
+        // 已写入数据的结尾，检索只读到这里
+        volatile int limit = 0;
+        boolean sealed = false;
+        // 正在形成的块（只由写入线程访问）
+        private int blockStart = 0;
+        private long blockMaxTimestamp = Long.MIN_VALUE;
+        private int blockLevelMask = 0;
+        
+        private Segment(long id, Path path, ByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+        
+        static Segment create(long id, Path path, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // 映射在通道关闭后仍然有效
+                return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+        
+        /**
+         * 打开已有的分段：有索引文件的是已封存的分段，否则扫描记录重建索引；
+         * 只有最后一段可以继续写入，其他没有索引的分段扫描后立即封存
+         */
+        static Segment open(long id, Path path, Path indexPath, boolean writable) throws IOException {
+            boolean indexed = Files.exists(indexPath);
+            Segment segment;
+            boolean mapWritable = writable && !indexed;
+            try (FileChannel channel = mapWritable
+                    ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(path, StandardOpenOption.READ)) {
+                segment = new Segment(id, path, channel.map(mapWritable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                        0, channel.size()));
+            }
+            if (indexed && segment.loadIndex(indexPath)) {
+                segment.sealed = true;
+                return segment;
+            }
+            segment.rebuildIndex();
+            if (!writable || indexed) {
+                segment.seal(indexPath);
+            }
+            return segment;
+        }
+        
+        private void rebuildIndex() {
+            int position = 0;
+            int capacity = buffer.capacity();
+            while (position + HEADER_BYTES <= capacity) {
+                int length = buffer.getInt(position);
+                if (length < HEADER_BYTES - 4 || position + 4 + length > capacity) {
+                    break;
+                }
+                appended(position, 4 + length, buffer.getLong(position + 4), buffer.get(position + 12));
+                position += 4 + length;
+            }
+        }
+        
+        /**
+         * 记录已写入（只由写入线程调用），写满一个块时形成索引
+         */
+        void appended(int position, int recordSize, long timestamp, byte level) {
+            blockMaxTimestamp = Math.max(blockMaxTimestamp, timestamp);
+            blockLevelMask |= 1 << level;
+            limit = position + recordSize;
+            if (limit - blockStart >= BLOCK_BYTES) {
+                closeBlock();
+            }
+        }
+        
+        private void closeBlock() {
+            if (limit == blockStart) {
+                return;
+            }
+            addBlock(new Block(blockStart, limit, blockMaxTimestamp, blockLevelMask));
+            blockStart = limit;
+            blockMaxTimestamp = Long.MIN_VALUE;
+            blockLevelMask = 0;
+        }
+        
+        private void addBlock(Block block) {
+            Block[] current = blocks;
+            int count = blockCount;
+            if (count == current.length) {
+                Block[] grown = new Block[count * 2];
+                System.arraycopy(current, 0, grown, 0, count);
+                blocks = grown;
+                current = grown;
+            }
+            current[count] = block;
+            blockCount = count + 1;
+        }
+        
+        /**
+         * 封存：形成最后一个块并写出索引文件（先写临时文件再改名）
+         */
+        void seal(Path indexPath) throws IOException {
+            closeBlock();
+            sealed = true;
+            if (buffer instanceof MappedByteBuffer && !buffer.isReadOnly()) {
+                ((MappedByteBuffer) buffer).force();
+            }
+            Path temp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                int count = blockCount;
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    Block block = blocks[i];
+                    out.writeInt(block.start);
+                    out.writeInt(block.end);
+                    out.writeLong(block.maxTimestamp);
+                    out.writeInt(block.levelMask);
+                }
+            }
+            Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        
+        /**
+         * 读取索引文件，内容与分段不符时返回false（改为扫描重建）
+         */
+        private boolean loadIndex(Path indexPath) {
+            List<Block> loaded = new ArrayList<>();
+            int expectedStart = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+                int count = in.readInt();
+                if (count < 0 || count > buffer.capacity() / HEADER_BYTES) {
+                    return false;
+                }
+                for (int i = 0; i < count; i++) {
+                    Block block = new Block(in.readInt(), in.readInt(), in.readLong(), in.readInt());
+                    if (block.start != expectedStart || block.end <= block.start || block.end > buffer.capacity()) {
+                        return false;
+                    }
+                    loaded.add(block);
+                    expectedStart = block.end;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+            for (Block block : loaded) {
+                addBlock(block);
+            }
+            limit = expectedStart;
+            blockStart = expectedStart;
+            return true;
+        }
+    }
+    
+    /**
+     * 稀疏索引的一项：一段连续的记录
+     */
+    private static class Block {
+        final int start;
+        final int end;
+        final long maxTimestamp;
+        final int levelMask; // 第n位表示出现过级别代码为n的记录
+        
+        Block(int start, int end, long maxTimestamp, int levelMask) {
+            this.start = start;
+            this.end = end;
+            this.maxTimestamp = maxTimestamp;
+            this.levelMask = levelMask;
+        }
+    }
+    
+    private static class Range {
+        final Segment segment;
+        final int start;
+        final int end;
+        
+        Range(Segment segment, int start, int end) {
+            this.segment = segment;
+            this.start = start;
+            this.end = end;
+        }
+    }
+    
+    private static class RangeResult {
+        long matched = 0;
+        final ArrayDeque<Integer> positions = new ArrayDeque<>();
+    }
+}
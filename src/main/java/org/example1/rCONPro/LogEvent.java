@@ -0,0 +1,107 @@
+package org.example1.rCONPro;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 日志事件 - 日志来源和分发线程之间传递的结构化日志
+ * 来自Log4j的事件保留时间、级别、记录器、线程和异常等字段；来自日志文件或控制台的只有已格式化的文本
+ */
+public class LogEvent {
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+    // 同一秒内的日志共用格式化好的时间，避免每条日志都经过DateTimeFormatter
+    private static volatile FormattedSecond lastSecond = new FormattedSecond(Long.MIN_VALUE, "");
+    
+    public final long timestamp;    // 毫秒时间戳，未知时为0
+    public final String level;      // 级别名称（如INFO），未知时为null
+    public final String loggerName; // 记录器名称，未知时为null
+    public final String threadName; // 线程名称，未知时为null
+    public final String message;    // 消息内容；文本来源时为整行
+    public final String throwable;  // 异常堆栈，没有异常时为null
+    
+    public LogEvent(long timestamp, String level, String loggerName, String threadName, String message, String throwable) {
+        this.timestamp = timestamp;
+        this.level = level;
+        this.loggerName = loggerName;
+        this.threadName = threadName;
+        this.message = message;
+        this.throwable = throwable;
+    }
+    
+    /**
+     * 从已格式化的日志行创建事件
+     */
+    public static LogEvent ofLine(String line) {
+        return new LogEvent(0, null, null, null, line, null);
+    }
+    
+    /**
+     * 是否只有已格式化的文本
+     */
+    public boolean isPlainLine() {
+        return level == null;
+    }
+    
+    /**
+     * 格式化为与latest.log相同的文本：[时间] [线程/级别]: 消息
+     * 旧版控制端按该格式识别日志级别并着色
+     */
+    public String toLine() {
+        if (isPlainLine()) {
+            return message;
+        }
+        StringBuilder builder = new StringBuilder(message.length() + 48);
+        appendTo(builder, level, message);
+        return builder.toString();
+    }
+    
+    /**
+     * 按toLine()的格式追加到builder，级别和消息部分使用给定的文本（控制端着色时使用）
+     */
+    public void appendTo(StringBuilder builder, String levelText, String messageText) {
+        if (isPlainLine()) {
+            builder.append(messageText);
+            return;
+        }
+        builder.append('[').append(formatTime(timestamp)).append("] [").append(threadName).append('/').append(levelText).append("]: ");
+        if (loggerName != null && isPluginLoggerName(loggerName)) {
+            builder.append('[').append(loggerName).append("] ");
+        }
+        builder.append(messageText);
+        if (throwable != null) {
+            builder.append('\n').append(throwable);
+        }
+    }
+    
+    private static String formatTime(long timestamp) {
+        long second = Math.floorDiv(timestamp, 1000L);
+        FormattedSecond cached = lastSecond;
+        if (cached.second != second) {
+            cached = new FormattedSecond(second, TIME_FORMAT.format(Instant.ofEpochMilli(timestamp)));
+            lastSecond = cached;
+        }
+        return cached.text;
+    }
+    
+    /**
+     * 某一秒的格式化结果（不可变，可以安全地在线程间共享）
+     */
+    private static final class FormattedSecond {
+        final long second;
+        final String text;
+        
+        FormattedSecond(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+    
+    /**
+     * 插件的记录器以插件名命名；类名形式的记录器和服务器主记录器在latest.log中不显示名称
+     */
+    private static boolean isPluginLoggerName(String name) {
+        return !name.isEmpty() && name.indexOf('.') < 0 && !name.equals("Minecraft");
+    }
+}
@@ -0,0 +1,360 @@
+package org.example1.rCONPro;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 日志事件编解码 - 结构化日志在网络帧和重放缓冲区中的二进制格式
+ * 每条记录：级别(byte)；非纯文本记录接着是时间戳差值(zigzag varint)、记录器和线程的名称引用(varint)；
+ * 然后是消息（varint长度 + UTF-8）；非纯文本记录最后是异常堆栈（varint长度+1 + UTF-8，0表示没有）
+ * 名称引用：0表示没有，1表示名称直接跟在后面（varint长度 + UTF-8），n>=2表示名称表中的第n-2项
+ */
+public class LogEventCodec {
+    // 日志级别编码，0表示没有级别信息的纯文本行
+    public static final byte LEVEL_PLAIN = 0;
+    public static final byte LEVEL_TRACE = 1;
+    public static final byte LEVEL_DEBUG = 2;
+    public static final byte LEVEL_INFO = 3;
+    public static final byte LEVEL_WARN = 4;
+    public static final byte LEVEL_ERROR = 5;
+    public static final byte LEVEL_FATAL = 6;
+    
+    private static final String[] LEVEL_NAMES = {null, "TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL"};
+    
+    public static final int REF_NONE = 0;
+    public static final int REF_INLINE = 1;
+    
+    /**
+     * 名称引用的解析方式（插件端用LogNameTable，控制端用收到的名称定义）
+     */
+    public interface NameResolver {
+        String nameOf(int ref);
+    }
+    
+    /**
+     * 级别名称转换为编码，未知级别按INFO处理
+     */
+    public static byte levelCode(String level) {
+        if (level == null) {
+            return LEVEL_PLAIN;
+        }
+        switch (level) {
+            case "TRACE": return LEVEL_TRACE;
+            case "DEBUG": return LEVEL_DEBUG;
+            case "WARN": return LEVEL_WARN;
+            case "ERROR": return LEVEL_ERROR;
+            case "FATAL": return LEVEL_FATAL;
+            default: return LEVEL_INFO;
+        }
+    }
+    
+    /**
+     * 日志文本行中"]: "之前的级别单词：原版为"[线程/级别]: "，Paper为"[时间 级别]: "；取不到时按INFO处理
+     */
+    public static byte levelOfLine(String line) {
+        int end = line.indexOf("]: ");
+        if (end <= 0) {
+            return LEVEL_INFO;
+        }
+        int start = Math.max(line.lastIndexOf('/', end), line.lastIndexOf(' ', end));
+        return start >= 0 ? levelCode(line.substring(start + 1, end)) : LEVEL_INFO;
+    }
+    
+    /**
+     * 级别编码转换为名称，纯文本返回null
+     */
+    public static String levelName(byte code) {
+        return code > 0 && code < LEVEL_NAMES.length ? LEVEL_NAMES[code] : null;
+    }
+    
+    /**
+     * 记录写入器 - 复用缓冲区，按上面的格式追加记录
+     */
+    public static class RecordWriter {
+        protected byte[] buffer;
+        protected int position;
+        private final int start;
+        
+        public RecordWriter() {
+            this(0);
+        }
+        
+        /**
+         * @param reserved 缓冲区开头预留的字节数（用于帧头）
+         */
+        protected RecordWriter(int reserved) {
+            this.buffer = new byte[Math.max(256, reserved * 2)];
+            this.start = reserved;
+            this.position = reserved;
+        }
+        
+        /**
+         * 追加一条记录
+         * @param previousTimestamp 时间戳差值的基准
+         */
+        public void writeRecord(LogEvent event, LogNameTable names, long previousTimestamp) {
+            byte level = levelCode(event.level);
+            writeByte(level);
+            if (level != LEVEL_PLAIN) {
+                writeVarLong(zigzag(event.timestamp - previousTimestamp));
+                writeName(event.loggerName, names);
+                writeName(event.threadName, names);
+            }
+            writeString(event.message);
+            if (level != LEVEL_PLAIN) {
+                if (event.throwable == null) {
+                    writeVarLong(0);
+                } else {
+                    byte[] bytes = event.throwable.getBytes(StandardCharsets.UTF_8);
+                    writeVarLong(bytes.length + 1L);
+                    writeBytes(bytes, 0, bytes.length);
+                }
+            }
+        }
+        
+        private void writeName(String name, LogNameTable names) {
+            int ref = names.refOf(name);
+            writeVarLong(ref);
+            if (ref == REF_INLINE) {
+                writeString(name);
+            }
+        }
+        
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+        
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+        
+        private void writeBytes(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+        }
+        
+        private void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+        
+        protected void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+        
+        public byte[] buffer() {
+            return buffer;
+        }
+        
+        /**
+         * 已写入的记录字节数（不含预留部分）
+         */
+        public int length() {
+            return position - start;
+        }
+        
+        public void reset() {
+            position = start;
+        }
+    }
+    
+    /**
+     * 事件批次构建器 - 把多条记录打包进一个MSG_LOG_EVENTS帧
+     * 帧内容：首条序号(long) + 基准时间戳(long) + 记录数(int) + 记录；时间戳相对前一条记录编码
+     */
+    public static class EventBatchBuilder extends RecordWriter {
+        private static final int HEADER = 28; // 类型 + 长度 + 序号 + 基准时间戳 + 记录数
+        private long baseTimestamp = -1;
+        private long previousTimestamp;
+        private int count = 0;
+        
+        public EventBatchBuilder() {
+            super(HEADER);
+        }
+        
+        public void add(LogEvent event, LogNameTable names) {
+            if (event.level != null) {
+                if (baseTimestamp < 0) {
+                    baseTimestamp = event.timestamp;
+                    previousTimestamp = event.timestamp;
+                }
+                writeRecord(event, names, previousTimestamp);
+                previousTimestamp = event.timestamp;
+            } else {
+                writeRecord(event, names, 0);
+            }
+            count++;
+        }
+        
+        /**
+         * 生成完整帧（返回新数组，可安全共享给多个会话）
+         */
+        public byte[] toFrame(long firstSequence) {
+            NetworkProtocol.writeInt(buffer, 0, NetworkProtocol.MSG_LOG_EVENTS);
+            NetworkProtocol.writeInt(buffer, 4, position - 8);
+            writeLong(buffer, 8, firstSequence);
+            writeLong(buffer, 16, Math.max(0, baseTimestamp));
+            NetworkProtocol.writeInt(buffer, 24, count);
+            return Arrays.copyOf(buffer, position);
+        }
+        
+        @Override
+        public void reset() {
+            super.reset();
+            baseTimestamp = -1;
+            count = 0;
+        }
+        
+        public boolean isEmpty() {
+            return count == 0;
+        }
+        
+        public int size() {
+            return position;
+        }
+    }
+    
+    /**
+     * 记录读取器
+     */
+    public static class RecordReader {
+        private final byte[] bytes;
+        private int position;
+        private final int end;
+        
+        public RecordReader(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.end = offset + length;
+        }
+        
+        public boolean hasRemaining() {
+            return position < end;
+        }
+        
+        /**
+         * 读取一条记录
+         * @param previousTimestamp 时间戳差值的基准
+         */
+        public LogEvent readRecord(NameResolver names, long previousTimestamp) throws IOException {
+            byte level = readByte();
+            if (level == LEVEL_PLAIN) {
+                return LogEvent.ofLine(readString());
+            }
+            String levelName = levelName(level);
+            if (levelName == null) {
+                throw new IOException("未知的日志级别: " + level);
+            }
+            long timestamp = previousTimestamp + unzigzag(readVarLong());
+            String logger = readName(names);
+            String thread = readName(names);
+            String message = readString();
+            long throwableLength = readVarLong();
+            String throwable = throwableLength == 0 ? null : readString((int) (throwableLength - 1));
+            return new LogEvent(timestamp, levelName, logger, thread, message, throwable);
+        }
+        
+        private String readName(NameResolver names) throws IOException {
+            long ref = readVarLong();
+            if (ref == REF_NONE) {
+                return null;
+            }
+            if (ref == REF_INLINE) {
+                return readString();
+            }
+            String name = names.nameOf((int) ref);
+            if (name == null) {
+                throw new IOException("未定义的名称: " + ref);
+            }
+            return name;
+        }
+        
+        private String readString() throws IOException {
+            return readString((int) readVarLong());
+        }
+        
+        private String readString(int length) throws IOException {
+            if (length < 0 || length > end - position) {
+                throw new IOException("字符串长度异常: " + length);
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+        
+        private byte readByte() throws IOException {
+            if (position >= end) {
+                throw new IOException("记录不完整");
+            }
+            return bytes[position++];
+        }
+        
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("varint过长");
+        }
+    }
+    
+    /**
+     * 解码MSG_LOG_EVENTS帧
+     * @param firstSequence 输出参数，返回首条记录的序号
+     */
+    public static List<LogEvent> decodeEvents(byte[] payload, NameResolver names, long[] firstSequence) throws IOException {
+        if (payload.length < 20) {
+            throw new IOException("事件帧长度异常: " + payload.length);
+        }
+        firstSequence[0] = readLong(payload, 0);
+        long previousTimestamp = readLong(payload, 8);
+        int count = NetworkProtocol.readInt(payload, 16);
+        if (count < 0 || count > payload.length) {
+            throw new IOException("事件数量异常: " + count);
+        }
+        RecordReader reader = new RecordReader(payload, 20, payload.length - 20);
+        List<LogEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LogEvent event = reader.readRecord(names, previousTimestamp);
+            if (!event.isPlainLine()) {
+                previousTimestamp = event.timestamp;
+            }
+            events.add(event);
+        }
+        return events;
+    }
+    
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    private static void writeLong(byte[] buffer, int offset, long value) {
+        NetworkProtocol.writeInt(buffer, offset, (int) (value >>> 32));
+        NetworkProtocol.writeInt(buffer, offset + 4, (int) value);
+    }
+    
+    private static long readLong(byte[] buffer, int offset) {
+        return ((long) NetworkProtocol.readInt(buffer, offset) << 32) | (NetworkProtocol.readInt(buffer, offset + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,294 @@
+package org.example1.rCONPro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * 日志文件追踪器 - 长期持有FileChannel，按固定大小的块读取新增内容
+ * 读缓冲区和行缓冲区都复用，不会因为一次大量写入而按增量大小分配内存
+ * 跨越两次读取的半行和被截断的UTF-8字符保存在续接缓冲区中，等下一次读取补全
+ * 非线程安全，只应由一个监控线程调用
+ */
+public class LogFileTailer {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_LINE_BYTES = 1024 * 1024;
+    
+    private final Path file;
+    private final Consumer<String> lineConsumer;
+    private final int maxLineBytes;
+    private final ByteBuffer readBuffer;
+    private final byte[] chunk;
+    
+    private FileChannel channel;
+    private Object fileKey;
+    private long position = 0;
+    private byte[] carry;
+    private int carryLength = 0;
+    
+    // 统计
+    private long bytesRead = 0;
+    private long linesRead = 0;
+    private long oversizedLines = 0;
+    
+    public LogFileTailer(Path file, Consumer<String> lineConsumer) {
+        this(file, lineConsumer, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_LINE_BYTES);
+    }
+    
+    /**
+     * @param bufferSize 每次从文件读取的最大字节数（直接内存，只分配一次）
+     * @param maxLineBytes 单行最大字节数，超过后先转发已读到的部分
+     */
+    public LogFileTailer(Path file, Consumer<String> lineConsumer, int bufferSize, int maxLineBytes) {
+        this.file = file;
+        this.lineConsumer = lineConsumer;
+        this.maxLineBytes = Math.max(bufferSize, maxLineBytes);
+        this.readBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.chunk = new byte[bufferSize];
+        this.carry = new byte[Math.min(bufferSize, 4096)];
+    }
+    
+    public Path getFile() {
+        return file;
+    }
+    
+    /**
+     * 跳到文件末尾，只追踪之后写入的内容
+     */
+    public void seekToEnd() throws IOException {
+        if (ensureOpen()) {
+            seek(channel.size());
+        }
+    }
+    
+    /**
+     * 设置下次读取的位置，丢弃未完成的半行
+     */
+    public void seek(long newPosition) {
+        position = newPosition;
+        carryLength = 0;
+    }
+    
+    public long getPosition() {
+        return position;
+    }
+    
+    /**
+     * 读取上次位置之后新增的内容，把完整的行交给lineConsumer
+     * @return 本次读取的字节数，文件不存在时返回-1
+     */
+    public long poll() throws IOException {
+        if (!ensureOpen()) {
+            return -1;
+        }
+        
+        long size = channel.size();
+        if (size < position) {
+            // 文件被截断（可能是日志轮转），从头开始
+            seek(0);
+        }
+        
+        long total = 0;
+        while (position < size) {
+            readBuffer.clear();
+            int n = channel.read(readBuffer, position);
+            if (n <= 0) {
+                break;
+            }
+            position += n;
+            total += n;
+            readBuffer.flip();
+            drainLines();
+        }
+        bytesRead += total;
+        return total;
+    }
+    
+    /**
+     * 文件被替换（如服务器启动时重新创建latest.log）后重新打开，从新文件开头读取
+     * 当前打开的已经是新文件时不做任何事，避免重复读取，所以可以在每次轮询时调用
+     * @return 是否重新打开
+     */
+    public boolean reopenIfReplaced() {
+        if (channel == null || !isReplaced()) {
+            return false;
+        }
+        closeChannel();
+        seek(0);
+        return true;
+    }
+    
+    /**
+     * 路径指向的文件是否已经不是当前打开的文件
+     * 平台不提供fileKey时，只能根据文件比已读位置短来判断
+     */
+    private boolean isReplaced() {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // 旧文件已移走而新文件还没创建，继续读旧文件直到新文件出现
+            return false;
+        }
+        if (fileKey != null) {
+            return !fileKey.equals(attributes.fileKey());
+        }
+        return attributes.size() < position;
+    }
+    
+    public void close() {
+        closeChannel();
+    }
+    
+    private boolean ensureOpen() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            return true;
+        }
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            fileKey = readFileKey();
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+    
+    private Object readFileKey() {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+            channel = null;
+        }
+    }
+    
+    /**
+     * 从读缓冲区中切出完整的行，剩余部分放入续接缓冲区
+     * 直接内存中的数据一次性批量复制到复用的数组中再扫描，比逐字节访问直接内存快得多
+     * 按字节查找'\n'，UTF-8的多字节字符中不会出现该字节，所以不会把字符切开
+     */
+    private void drainLines() {
+        int limit = readBuffer.remaining();
+        readBuffer.get(chunk, 0, limit);
+        int start = 0;
+        for (int i = 0; i < limit; i++) {
+            if (chunk[i] != '\n') {
+                continue;
+            }
+            if (carryLength > 0) {
+                appendCarry(start, i);
+                emit(carry, 0, carryLength);
+                carryLength = 0;
+            } else {
+                emit(chunk, start, i);
+            }
+            start = i + 1;
+        }
+        if (start < limit) {
+            appendCarry(start, limit);
+        }
+    }
+    
+    /**
+     * 把chunk中[from, to)的字节追加到续接缓冲区，超过单行上限时先转发已有部分
+     */
+    private void appendCarry(int from, int to) {
+        int length = to - from;
+        while (length > 0) {
+            if (carryLength == carry.length) {
+                if (carry.length < maxLineBytes) {
+                    carry = Arrays.copyOf(carry, Math.min(maxLineBytes, carry.length * 2));
+                } else {
+                    flushOversizedLine();
+                }
+            }
+            int n = Math.min(length, carry.length - carryLength);
+            System.arraycopy(chunk, from, carry, carryLength, n);
+            carryLength += n;
+            from += n;
+            length -= n;
+        }
+    }
+    
+    /**
+     * 超长行：转发已读到的部分，末尾不完整的UTF-8字符留在续接缓冲区
+     */
+    private void flushOversizedLine() {
+        int boundary = completeUtf8Length(carry, carryLength);
+        emit(carry, 0, boundary);
+        System.arraycopy(carry, boundary, carry, 0, carryLength - boundary);
+        carryLength -= boundary;
+        oversizedLines++;
+    }
+    
+    /**
+     * 返回不包含末尾不完整UTF-8字符的长度
+     */
+    static int completeUtf8Length(byte[] bytes, int length) {
+        int lead = length - 1;
+        // 向前跳过最多3个续字节（10xxxxxx）找到首字节
+        while (lead >= 0 && length - lead <= 3 && (bytes[lead] & 0xC0) == 0x80) {
+            lead--;
+        }
+        if (lead < 0) {
+            return length;
+        }
+        int b = bytes[lead] & 0xFF;
+        int needed = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+        return length - lead >= needed ? length : lead;
+    }
+    
+    /**
+     * 解码[from, to)并转发一行，去掉行尾的'\r'，空白行忽略
+     */
+    private void emit(byte[] bytes, int from, int to) {
+        if (to > from && bytes[to - 1] == '\r') {
+            to--;
+        }
+        if (isBlank(bytes, from, to)) {
+            return;
+        }
+        linesRead++;
+        lineConsumer.accept(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+    }
+    
+    private static boolean isBlank(byte[] bytes, int from, int to) {
+        // 与String.trim()一致，只把不大于空格的ASCII字符视为空白
+        for (int i = from; i < to; i++) {
+            if ((bytes[i] & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    
+    public long getLinesRead() {
+        return linesRead;
+    }
+    
+    public long getOversizedLines() {
+        return oversizedLines;
+    }
+}
@@ -0,0 +1,662 @@
+package org.example1.rCONPro;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 服务器日志历史查询 - 在logs/latest.log和轮转后的logs/*.log.gz中查找时间范围内、符合级别和正则的日志
+ * 日志行只有时分秒：轮转文件的日期取自文件名（最后写入的日期），latest.log取自修改时间，
+ * 时间倒退时视为跨过午夜，由此从文件末尾的日期推算每一行的日期；没有时间的行（如异常堆栈）沿用上一行的时间和级别
+ * 每个文件在首次查询时建立稀疏时间索引（约每64KB一项）并缓存，latest.log增长后只索引新增部分；
+ * 文件名的日期已在查询范围之外的轮转文件不解压、不建立索引；其余文件按索引的时间范围跳过，
+ * latest.log按索引定位到起始位置，压缩文件只能从头解压
+ * 索引和扫描都在独立的ForkJoinPool上并行进行，同时在途的文件数和每个文件保留的结果数都有上限，
+ * 结果按时间顺序分批交出，达到查询的行数上限后停止其余文件的扫描
+ */
+public class LogHistory {
+    public static final int DEFAULT_LIMIT = 1000;
+    private static final int INDEX_INTERVAL_BYTES = 64 * 1024;
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+    private static final int CHUNK_CHARS = 32 * 1024;
+    // 轮转文件名：yyyy-MM-dd-序号.log.gz
+    private static final Pattern ARCHIVE_NAME = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})-(\\d+)\\.log\\.gz");
+    private static final String LATEST_LOG = "latest.log";
+    
+    private final Path logDirectory;
+    private final ForkJoinPool pool;
+    private final int maxLimit;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Map<Path, FileIndex> indexes = new ConcurrentHashMap<>();
+    
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder filesScanned = new LongAdder();
+    private final LongAdder filesSkipped = new LongAdder();
+    
+    /**
+     * 查询条件（多行"键=值"）：from/to=毫秒时间戳，level=最低级别，include=正则，limit=最多返回的行数
+     */
+    public static class Query {
+        final long from;
+        final long to;
+        final byte minLevel;
+        final Pattern include;
+        final int limit;
+        
+        Query(long from, long to, byte minLevel, Pattern include, int limit) {
+            this.from = from;
+            this.to = to;
+            this.minLevel = minLevel;
+            this.include = include;
+            this.limit = limit;
+        }
+        
+        /**
+         * @throws IllegalArgumentException 格式无效、未知的键、无效的级别或正则
+         */
+        public static Query parse(String spec, int maxLimit) {
+            long from = 0;
+            long to = Long.MAX_VALUE;
+            byte minLevel = LogEventCodec.LEVEL_PLAIN;
+            Pattern include = null;
+            int limit = DEFAULT_LIMIT;
+            for (String line : spec.split("\n")) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int separator = line.indexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("格式应为 键=值: " + line);
+                }
+                String key = line.substring(0, separator).trim().toLowerCase();
+                String value = line.substring(separator + 1).trim();
+                try {
+                    switch (key) {
+                        case "from": from = Long.parseLong(value); break;
+                        case "to": to = Long.parseLong(value); break;
+                        case "level": minLevel = LogSubscription.parseLevel(value); break;
+                        case "include": include = Pattern.compile(value); break;
+                        case "limit": limit = Integer.parseInt(value); break;
+                        default: throw new IllegalArgumentException("未知的查询条件: " + key);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("无效的数值: " + line);
+                }
+            }
+            return new Query(from, to, minLevel, include, Math.max(1, Math.min(limit, maxLimit)));
+        }
+    }
+    
+    /**
+     * 查询结束时发给控制端的汇总（格式：标识\n匹配行数\n是否截断\n扫描文件数\n跳过文件数\n耗时微秒\n错误）
+     */
+    public static class Summary {
+        public final String id;
+        public final long matched;
+        public final boolean truncated;
+        public final int filesScanned;
+        public final int filesSkipped;
+        public final long micros;
+        public final String error; // 没有错误时为空
+        
+        public Summary(String id, long matched, boolean truncated, int filesScanned, int filesSkipped, long micros, String error) {
+            this.id = id;
+            this.matched = matched;
+            this.truncated = truncated;
+            this.filesScanned = filesScanned;
+            this.filesSkipped = filesSkipped;
+            this.micros = micros;
+            this.error = error;
+        }
+        
+        public byte[] toFrame() {
+            return NetworkProtocol.encode(NetworkProtocol.MSG_HISTORY_END, id + "\n" + matched + "\n" + (truncated ? 1 : 0) + "\n"
+                    + filesScanned + "\n" + filesSkipped + "\n" + micros + "\n" + error);
+        }
+        
+        public static Summary parse(String content) throws IOException {
+            String[] parts = content.split("\n", 7);
+            if (parts.length < 6) {
+                throw new IOException("历史查询结果格式异常");
+            }
+            try {
+                return new Summary(parts[0], Long.parseLong(parts[1]), parts[2].equals("1"), Integer.parseInt(parts[3]),
+                        Integer.parseInt(parts[4]), Long.parseLong(parts[5]), parts.length > 6 ? parts[6] : "");
+            } catch (NumberFormatException e) {
+                throw new IOException("历史查询结果格式异常: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * @param parallelism 同时索引或扫描的文件数
+     * @param maxLimit 单次查询最多返回的行数
+     */
+    public LogHistory(Path logDirectory, int parallelism, int maxLimit) {
+        this.logDirectory = logDirectory;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.maxLimit = maxLimit;
+    }
+    
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+    
+    /**
+     * 执行查询，结果按时间顺序分批（每批若干行）交给sink；阻塞直到结束，不能在服务器主线程或IO线程中调用
+     * @param cancelled 返回true时尽快停止（如控制端已断开）
+     */
+    public Summary query(String id, Query query, Consumer<List<String>> sink, BooleanSupplier cancelled) {
+        long startNanos = System.nanoTime();
+        queries.increment();
+        List<LogFile> files;
+        try {
+            files = listFiles();
+        } catch (IOException e) {
+            return new Summary(id, 0, false, 0, 0, 0, "无法列出日志目录: " + e.getMessage());
+        }
+        
+        // 先按文件名的日期排除，再建立（或更新）其余文件的索引，已缓存且未变化的文件直接返回
+        int skipped = 0;
+        List<LogFile> dated = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            if (outsideDateRange(files, i, query)) {
+                skipped++;
+            } else {
+                dated.add(files.get(i));
+            }
+        }
+        files = dated;
+        List<CompletableFuture<FileIndex>> indexing = new ArrayList<>(files.size());
+        for (LogFile file : files) {
+            indexing.add(CompletableFuture.supplyAsync(() -> indexFor(file), pool));
+        }
+        List<LogFile> candidates = new ArrayList<>();
+        List<FileIndex> candidateIndexes = new ArrayList<>();
+        String error = "";
+        for (int i = 0; i < files.size(); i++) {
+            FileIndex index;
+            try {
+                index = indexing.get(i).join();
+            } catch (CompletionException e) {
+                error = "读取 " + files.get(i).path.getFileName() + " 失败: " + e.getCause().getMessage();
+                skipped++;
+                continue;
+            }
+            if (index.count == 0 || index.lastRelative < index.relativeOf(query.from, zone)
+                    || index.firstRelative > index.relativeOf(query.to, zone)) {
+                skipped++;
+            } else {
+                candidates.add(files.get(i));
+                candidateIndexes.add(index);
+            }
+        }
+        filesSkipped.add(skipped);
+        
+        // 按时间顺序扫描，同时在途的文件数不超过并行度的两倍，每个文件最多保留limit行
+        AtomicBoolean stop = new AtomicBoolean();
+        ArrayDeque<CompletableFuture<FileResult>> inFlight = new ArrayDeque<>();
+        int window = pool.getParallelism() * 2;
+        int next = 0;
+        long matched = 0;
+        boolean truncated = false;
+        int scanned = 0;
+        while (next < candidates.size() || !inFlight.isEmpty()) {
+            while (next < candidates.size() && inFlight.size() < window && !stop.get()) {
+                LogFile file = candidates.get(next);
+                FileIndex index = candidateIndexes.get(next);
+                inFlight.add(CompletableFuture.supplyAsync(() -> scan(file, index, query, stop), pool));
+                next++;
+            }
+            if (inFlight.isEmpty()) {
+                break;
+            }
+            FileResult result;
+            try {
+                result = inFlight.poll().join();
+            } catch (CompletionException e) {
+                error = "读取日志失败: " + e.getCause().getMessage();
+                continue;
+            }
+            scanned++;
+            filesScanned.increment();
+            if (stop.get()) {
+                continue; // 已达到上限，只等待在途的扫描结束
+            }
+            int take = (int) Math.min(result.lines.size(), query.limit - matched);
+            deliver(result.lines.subList(0, take), sink);
+            matched += take;
+            if (cancelled.getAsBoolean()) {
+                stop.set(true);
+                error = "查询已取消";
+            } else if (result.full || take < result.lines.size()) {
+                // 后面的文件只会更晚，不必再扫描
+                stop.set(true);
+                truncated = true;
+            } else if (matched >= query.limit) {
+                stop.set(true);
+                truncated = next < candidates.size() || !inFlight.isEmpty();
+            }
+        }
+        return new Summary(id, matched, truncated, scanned, skipped, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos), error);
+    }
+    
+    /**
+     * 按大约CHUNK_CHARS分批交出
+     */
+    private static void deliver(List<String> lines, Consumer<List<String>> sink) {
+        int start = 0;
+        int chars = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            chars += lines.get(i).length() + 1;
+            if (chars >= CHUNK_CHARS) {
+                sink.accept(lines.subList(start, i + 1));
+                start = i + 1;
+                chars = 0;
+            }
+        }
+        if (start < lines.size()) {
+            sink.accept(lines.subList(start, lines.size()));
+        }
+    }
+    
+    /**
+     * 日志目录中的文件，按时间顺序排列（latest.log最后）
+     */
+    private List<LogFile> listFiles() throws IOException {
+        List<LogFile> files = new ArrayList<>();
+        if (!Files.isDirectory(logDirectory)) {
+            return files;
+        }
+        try (Stream<Path> list = Files.list(logDirectory)) {
+            list.forEach(path -> {
+                Matcher matcher = ARCHIVE_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    files.add(new LogFile(path, true, LocalDate.parse(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+                }
+            });
+        }
+        files.sort(Comparator.comparing((LogFile file) -> file.date).thenComparingInt(file -> file.sequence));
+        Path latest = logDirectory.resolve(LATEST_LOG);
+        if (Files.isRegularFile(latest)) {
+            files.add(new LogFile(latest, false, null, 0));
+        }
+        return files;
+    }
+    
+    /**
+     * 按轮转文件名的日期判断文件是否完全在查询范围之外（files按时间顺序排列）：
+     * 文件名的日期是最后一行的日期，不早于前一个文件名的日期的那天开始；latest.log没有日期，总是需要索引
+     */
+    private boolean outsideDateRange(List<LogFile> files, int i, Query query) {
+        LogFile file = files.get(i);
+        if (file.date == null) {
+            return false;
+        }
+        if (file.date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() <= query.from) {
+            return true;
+        }
+        LogFile previous = i > 0 ? files.get(i - 1) : null;
+        return previous != null && previous.date.atStartOfDay(zone).toInstant().toEpochMilli() > query.to;
+    }
+    
+    /**
+     * 取得文件的索引：缓存有效时直接使用；latest.log只增长时从上次索引的位置继续
+     */
+    private FileIndex indexFor(LogFile file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.path, BasicFileAttributes.class);
+            Object identity = file.compressed
+                    ? attributes.size() + ":" + attributes.lastModifiedTime().toMillis()
+                    : (attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime());
+            FileIndex cached = indexes.get(file.path);
+            if (cached != null && cached.identity.equals(identity)) {
+                if (file.compressed || cached.indexedBytes == attributes.size()) {
+                    return cached;
+                }
+                if (cached.indexedBytes < attributes.size()) {
+                    FileIndex extended = buildIndex(file, identity, attributes, cached);
+                    indexes.put(file.path, extended);
+                    return extended;
+                }
+            }
+            FileIndex index = buildIndex(file, identity, attributes, null);
+            indexes.put(file.path, index);
+            return index;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private FileIndex buildIndex(LogFile file, Object identity, BasicFileAttributes attributes, FileIndex previous) throws IOException {
+        FileIndex index = previous != null ? previous.copy(identity) : new FileIndex(identity);
+        long startOffset = previous != null ? previous.indexedBytes : 0;
+        try (LineReader reader = openReader(file, startOffset)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int second = parseSecondOfDay(line);
+                if (second >= 0) {
+                    index.add(reader.lineStart, index.clock.advance(second));
+                }
+            }
+            index.indexedBytes = reader.position;
+        }
+        if (previous == null) {
+            // 从文件末尾的日期和跨过午夜的次数推算第一行的日期
+            LocalDate endDate = file.compressed ? file.date
+                    : LocalDateTime.ofInstant(attributes.lastModifiedTime().toInstant(), zone).toLocalDate();
+            index.startDate = endDate.minusDays(index.clock.day);
+        }
+        return index;
+    }
+    
+    /**
+     * 扫描一个文件，最多保留limit行；latest.log从索引中不晚于起始时间的位置开始读取
+     */
+    private FileResult scan(LogFile file, FileIndex index, Query query, AtomicBoolean stop) {
+        long from = index.relativeOf(query.from, zone);
+        long to = index.relativeOf(query.to, zone);
+        FileResult result = new FileResult();
+        Clock clock = new Clock();
+        long startOffset = 0;
+        if (!file.compressed) {
+            int entry = index.floorEntry(from);
+            if (entry >= 0) {
+                startOffset = index.offsets[entry];
+                clock.resume(index.relatives[entry]);
+            }
+        }
+        Matcher matcher = query.include != null ? query.include.matcher("") : null;
+        long current = Long.MIN_VALUE;
+        byte level = LogEventCodec.LEVEL_INFO;
+        int lines = 0;
+        try (LineReader reader = openReader(file, startOffset)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if ((++lines & 1023) == 0 && stop.get()) {
+                    break;
+                }
+                int second = parseSecondOfDay(line);
+                if (second >= 0) {
+                    current = clock.advance(second);
+                    level = LogEventCodec.levelOfLine(line);
+                    if (current > to) {
+                        break;
+                    }
+                }
+                if (current >= from && level >= query.minLevel && (matcher == null || matcher.reset(line).find())) {
+                    result.lines.add(line);
+                    if (result.lines.size() >= query.limit) {
+                        result.full = true;
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result;
+    }
+    
+    private static LineReader openReader(LogFile file, long offset) throws IOException {
+        if (file.compressed) {
+            return new LineReader(new GZIPInputStream(Files.newInputStream(file.path), 64 * 1024), 0);
+        }
+        FileChannel channel = FileChannel.open(file.path, StandardOpenOption.READ);
+        channel.position(offset);
+        return new LineReader(Channels.newInputStream(channel), offset);
+    }
+    
+    /**
+     * 行首的"[HH:mm:ss"（原版和Paper的格式相同），没有时返回-1
+     */
+    static int parseSecondOfDay(String line) {
+        if (line.length() < 10 || line.charAt(0) != '[' || line.charAt(3) != ':' || line.charAt(6) != ':') {
+            return -1;
+        }
+        int hours = twoDigits(line, 1);
+        int minutes = twoDigits(line, 4);
+        int seconds = twoDigits(line, 7);
+        if (hours < 0 || minutes < 0 || seconds < 0) {
+            return -1;
+        }
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+    
+    private static int twoDigits(String line, int index) {
+        char high = line.charAt(index);
+        char low = line.charAt(index + 1);
+        if (high < '0' || high > '9' || low < '0' || low > '9') {
+            return -1;
+        }
+        return (high - '0') * 10 + (low - '0');
+    }
+    
+    /**
+     * 查询次数和已缓存索引的文件数
+     */
+    public String getStats() {
+        return "查询 " + queries.sum() + " 次，扫描文件 " + filesScanned.sum() + " 个，按索引跳过 " + filesSkipped.sum()
+                + " 个，已索引 " + indexes.size() + " 个文件";
+    }
+    
+    public void close() {
+        pool.shutdownNow();
+    }
+    
+    private static class LogFile {
+        final Path path;
+        final boolean compressed;
+        final LocalDate date; // 轮转文件名中的日期，latest.log为null
+        final int sequence;
+        
+        LogFile(Path path, boolean compressed, LocalDate date, int sequence) {
+            this.path = path;
+            this.compressed = compressed;
+            this.date = date;
+            this.sequence = sequence;
+        }
+    }
+    
+    /**
+     * 从时分秒推算相对时间（距第一行所在日期零点的秒数），时间倒退超过一分钟视为跨过午夜
+     */
+    private static class Clock {
+        int day = 0;
+        int lastSecond = -1;
+        
+        long advance(int second) {
+            if (lastSecond >= 0 && second < lastSecond - 60) {
+                day++;
+            }
+            lastSecond = second;
+            return day * 86400L + second;
+        }
+        
+        void resume(long relative) {
+            day = (int) (relative / 86400);
+            lastSecond = (int) (relative % 86400);
+        }
+    }
+    
+    /**
+     * 一个文件的稀疏时间索引（建立后不再修改，latest.log增长时复制后扩展）
+     */
+    private static class FileIndex {
+        final Object identity;
+        LocalDate startDate;
+        long indexedBytes = 0;
+        final Clock clock = new Clock();
+        long[] offsets = new long[16];
+        long[] relatives = new long[16];
+        int entries = 0;
+        int count = 0; // 带时间的行数
+        long firstRelative = Long.MAX_VALUE;
+        long lastRelative = Long.MIN_VALUE;
+        private long lastEntryOffset = 0;
+        
+        FileIndex(Object identity) {
+            this.identity = identity;
+        }
+        
+        FileIndex copy(Object identity) {
+            FileIndex copy = new FileIndex(identity);
+            copy.startDate = startDate;
+            copy.indexedBytes = indexedBytes;
+            copy.clock.day = clock.day;
+            copy.clock.lastSecond = clock.lastSecond;
+            copy.offsets = Arrays.copyOf(offsets, offsets.length);
+            copy.relatives = Arrays.copyOf(relatives, relatives.length);
+            copy.entries = entries;
+            copy.count = count;
+            copy.firstRelative = firstRelative;
+            copy.lastRelative = lastRelative;
+            copy.lastEntryOffset = lastEntryOffset;
+            return copy;
+        }
+        
+        void add(long offset, long relative) {
+            count++;
+            firstRelative = Math.min(firstRelative, relative);
+            lastRelative = Math.max(lastRelative, relative);
+            if (entries > 0 && offset - lastEntryOffset < INDEX_INTERVAL_BYTES) {
+                return;
+            }
+            if (entries == offsets.length) {
+                offsets = Arrays.copyOf(offsets, entries * 2);
+                relatives = Arrays.copyOf(relatives, entries * 2);
+            }
+            offsets[entries] = offset;
+            relatives[entries] = relative;
+            entries++;
+            lastEntryOffset = offset;
+        }
+        
+        /**
+         * 最后一个时间不晚于relative的索引项，没有时返回-1
+         */
+        int floorEntry(long relative) {
+            int low = 0;
+            int high = entries - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (relatives[middle] <= relative) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return found;
+        }
+        
+        /**
+         * 毫秒时间戳换算为本文件的相对时间
+         */
+        long relativeOf(long millis, ZoneId zone) {
+            if (millis <= 0) {
+                return Long.MIN_VALUE;
+            }
+            if (millis == Long.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+            return ChronoUnit.DAYS.between(startDate, time.toLocalDate()) * 86400L + time.toLocalTime().toSecondOfDay();
+        }
+    }
+    
+    private static class FileResult {
+        final List<String> lines = new ArrayList<>();
+        boolean full = false; // 达到行数上限，文件中可能还有匹配的行
+    }
+    
+    /**
+     * 按字节读取行并记录每行的起始位置；不返回末尾没有换行符的半行（latest.log正在写入的部分）
+     */
+    private static class LineReader implements Closeable {
+        private final InputStream in;
+        private final byte[] buffer = new byte[MAX_LINE_BYTES];
+        private int start = 0;
+        private int end = 0;
+        private boolean eof = false;
+        long position;  // 已读完的行之后的位置
+        long lineStart; // 最近一次返回的行的起始位置
+        
+        LineReader(InputStream in, long position) {
+            this.in = in;
+            this.position = position;
+        }
+        
+        String readLine() throws IOException {
+            while (true) {
+                for (int i = start; i < end; i++) {
+                    if (buffer[i] == '\n') {
+                        int length = i - start;
+                        if (length > 0 && buffer[i - 1] == '\r') {
+                            length--;
+                        }
+                        String line = new String(buffer, start, length, StandardCharsets.UTF_8);
+                        lineStart = position;
+                        position += i + 1 - start;
+                        start = i + 1;
+                        return line;
+                    }
+                }
+                if (eof) {
+                    return null;
+                }
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+                if (end == buffer.length) {
+                    // 超长的行按缓冲区大小切开，其余部分作为没有时间的续行
+                    int length = LogFileTailer.completeUtf8Length(buffer, end);
+                    String line = new String(buffer, 0, length, StandardCharsets.UTF_8);
+                    lineStart = position;
+                    position += length;
+                    start = length;
+                    return line;
+                }
+                int read = in.read(buffer, end, buffer.length - end);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    end += read;
+                }
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
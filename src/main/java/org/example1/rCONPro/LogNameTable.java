@@ -0,0 +1,124 @@
+package org.example1.rCONPro;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 日志名称表 - 为记录器名和线程名分配编号，事件帧中只传编号
+ * 编号在插件本次运行中不变，所有会话共享同一张表，因此事件帧仍然只需编码一次；
+ * 每个会话记录已经收到定义的数量，发送引用了新名称的事件帧前先补发MSG_NAME_DEFS
+ * 表的大小有上限，满了以后的新名称直接内联在记录中，内存不会随运行时间增长
+ * 非线程安全，只应由分发线程调用
+ */
+public class LogNameTable implements LogEventCodec.NameResolver {
+    // 控制端接受的名称定义上限，防止异常数据占用过多内存
+    private static final int MAX_CLIENT_NAMES = 1 << 16;
+    
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final int maxNames;
+    
+    public LogNameTable(int maxNames) {
+        this.maxNames = maxNames;
+    }
+    
+    /**
+     * 取得名称的引用，新名称会被加入表中
+     */
+    public int refOf(String name) {
+        if (name == null) {
+            return LogEventCodec.REF_NONE;
+        }
+        Integer index = indexes.get(name);
+        if (index == null) {
+            if (names.size() >= maxNames) {
+                return LogEventCodec.REF_INLINE;
+            }
+            index = names.size();
+            names.add(name);
+            indexes.put(name, index);
+        }
+        return index + 2;
+    }
+    
+    @Override
+    public String nameOf(int ref) {
+        int index = ref - 2;
+        return index >= 0 && index < names.size() ? names.get(index) : null;
+    }
+    
+    /**
+     * 已定义的名称数量
+     */
+    public int size() {
+        return names.size();
+    }
+    
+    /**
+     * 编码[fromIndex, size())的名称定义帧
+     * 帧内容：起始下标(int) + 数量(int) + 每个名称的长度(int)和UTF-8内容
+     */
+    public byte[] encodeDefinitions(int fromIndex) {
+        int count = names.size() - fromIndex;
+        byte[][] encoded = new byte[count][];
+        int length = 8;
+        for (int i = 0; i < count; i++) {
+            encoded[i] = names.get(fromIndex + i).getBytes(StandardCharsets.UTF_8);
+            length += 4 + encoded[i].length;
+        }
+        byte[] frame = new byte[8 + length];
+        NetworkProtocol.writeInt(frame, 0, NetworkProtocol.MSG_NAME_DEFS);
+        NetworkProtocol.writeInt(frame, 4, length);
+        NetworkProtocol.writeInt(frame, 8, fromIndex);
+        NetworkProtocol.writeInt(frame, 12, count);
+        int position = 16;
+        for (byte[] name : encoded) {
+            NetworkProtocol.writeInt(frame, position, name.length);
+            System.arraycopy(name, 0, frame, position + 4, name.length);
+            position += 4 + name.length;
+        }
+        return frame;
+    }
+    
+    /**
+     * 控制端：应用收到的名称定义
+     */
+    public static void applyDefinitions(byte[] payload, List<String> table) throws IOException {
+        if (payload.length < 8) {
+            throw new IOException("名称定义长度异常: " + payload.length);
+        }
+        int fromIndex = NetworkProtocol.readInt(payload, 0);
+        int count = NetworkProtocol.readInt(payload, 4);
+        if (fromIndex < 0 || count < 0 || fromIndex + count > MAX_CLIENT_NAMES) {
+            throw new IOException("名称定义下标异常: " + fromIndex + "+" + count);
+        }
+        int position = 8;
+        for (int i = 0; i < count; i++) {
+            int length = position + 4 <= payload.length ? NetworkProtocol.readInt(payload, position) : -1;
+            if (length < 0 || position + 4 + length > payload.length) {
+                throw new IOException("名称定义不完整");
+            }
+            String name = new String(payload, position + 4, length, StandardCharsets.UTF_8);
+            position += 4 + length;
+            int index = fromIndex + i;
+            while (table.size() <= index) {
+                table.add(null);
+            }
+            table.set(index, name);
+        }
+    }
+    
+    /**
+     * 控制端：按收到的名称定义解析引用
+     */
+    public static LogEventCodec.NameResolver resolver(List<String> table) {
+        return ref -> {
+            int index = ref - 2;
+            return index >= 0 && index < table.size() ? table.get(index) : null;
+        };
+    }
+}
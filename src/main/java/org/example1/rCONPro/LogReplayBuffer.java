@@ -0,0 +1,147 @@
+package org.example1.rCONPro;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 日志重放缓冲区 - 在固定大小的堆外内存中保存最近的日志，供重连的控制端补发断线期间的内容
+ * 每行日志分配一个单调递增的序号；空间不足时覆盖最旧的记录，内存占用与运行时长无关
+ * 记录格式：int长度 + 内容（LogEventCodec编码的日志事件），按4字节对齐，内容可以跨越缓冲区末尾回绕
+ * 非线程安全，只应由分发线程调用
+ */
+public class LogReplayBuffer {
+    private final ByteBuffer ring;
+    private final int capacity;
+    private final int maxRecordBytes;
+    
+    // 以下偏移量只增不减，取模后才是缓冲区中的位置
+    private long head = 0;       // 最旧记录的位置
+    private long tail = 0;       // 下一条记录的写入位置
+    private long firstSequence = 1;
+    private long nextSequence = 1;
+    
+    private byte[] scratch = new byte[1024];
+    
+    /**
+     * 重放时逐行回调
+     */
+    public interface LineVisitor {
+        void visit(long sequence, byte[] bytes, int length);
+    }
+    
+    /**
+     * @param capacityBytes 缓冲区大小（向下取整到4的倍数）
+     */
+    public LogReplayBuffer(int capacityBytes) {
+        this.capacity = Math.max(4096, capacityBytes & ~3);
+        this.ring = ByteBuffer.allocateDirect(capacity);
+        // 单条记录最多占四分之一，避免一行超长日志清空整个缓冲区
+        this.maxRecordBytes = capacity / 4 - 4;
+    }
+    
+    /**
+     * 单条记录允许的最大字节数，超过的部分在追加时被截断
+     */
+    public int getMaxRecordBytes() {
+        return maxRecordBytes;
+    }
+    
+    /**
+     * 追加一条记录，必要时覆盖最旧的记录
+     * @return 分配给该行的序号
+     */
+    public long append(byte[] bytes, int length) {
+        if (length > maxRecordBytes) {
+            length = LogFileTailer.completeUtf8Length(bytes, maxRecordBytes);
+        }
+        int recordSize = 4 + align(length);
+        while (tail + recordSize - head > capacity) {
+            evictOldest();
+        }
+        
+        int offset = (int) (tail % capacity);
+        ring.putInt(offset, length);
+        write((offset + 4) % capacity, bytes, length);
+        tail += recordSize;
+        return nextSequence++;
+    }
+    
+    /**
+     * 序号大于afterSequence的日志中，已被覆盖而无法重放的行数
+     */
+    public long countEvictedSince(long afterSequence) {
+        return Math.max(0, firstSequence - (afterSequence + 1));
+    }
+    
+    /**
+     * 按顺序重放序号大于afterSequence且仍在缓冲区中的日志
+     * @return 重放的行数
+     */
+    public long replaySince(long afterSequence, LineVisitor visitor) {
+        long replayed = 0;
+        long sequence = firstSequence;
+        long position = head;
+        while (position < tail) {
+            int offset = (int) (position % capacity);
+            int length = ring.getInt(offset);
+            if (sequence > afterSequence) {
+                if (scratch.length < length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                read((offset + 4) % capacity, scratch, length);
+                visitor.visit(sequence, scratch, length);
+                replayed++;
+            }
+            position += 4 + align(length);
+            sequence++;
+        }
+        return replayed;
+    }
+    
+    private void evictOldest() {
+        int length = ring.getInt((int) (head % capacity));
+        head += 4 + align(length);
+        firstSequence++;
+    }
+    
+    private void write(int offset, byte[] bytes, int length) {
+        int first = Math.min(length, capacity - offset);
+        ring.put(offset, bytes, 0, first);
+        if (first < length) {
+            ring.put(0, bytes, first, length - first);
+        }
+    }
+    
+    private void read(int offset, byte[] bytes, int length) {
+        int first = Math.min(length, capacity - offset);
+        ring.get(offset, bytes, 0, first);
+        if (first < length) {
+            ring.get(0, bytes, first, length - first);
+        }
+    }
+    
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+    
+    /**
+     * 最旧的仍可重放的序号
+     */
+    public long getFirstSequence() {
+        return firstSequence;
+    }
+    
+    /**
+     * 最近一行的序号，还没有日志时为0
+     */
+    public long getLastSequence() {
+        return nextSequence - 1;
+    }
+    
+    public int capacity() {
+        return capacity;
+    }
+    
+    public long usedBytes() {
+        return tail - head;
+    }
+}
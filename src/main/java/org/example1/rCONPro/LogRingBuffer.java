@@ -0,0 +1,207 @@
+package org.example1.rCONPro;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 无锁有界环形缓冲区 - 多个日志产生线程写入，网络分发线程读取
+ * 槽位在构造时一次性分配，发布只做CAS，不加锁也不做网络IO
+ * 每个槽位带序号（Vyukov有界队列算法），因此生产者在DROP_OLDEST策略下也可以安全地弹出最旧元素
+ */
+public class LogRingBuffer<E> {
+    
+    /**
+     * 缓冲区满时的处理策略
+     */
+    public enum OverflowPolicy {
+        DROP_OLDEST,   // 丢弃最旧的一条，写入新的
+        DROP_NEWEST,   // 丢弃正在写入的这条
+        BLOCK          // 等待空位，超时后丢弃正在写入的这条
+    }
+    
+    private final int mask;
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();   // 下一个读取位置
+    private final AtomicLong tail = new AtomicLong();   // 下一个写入位置
+    private final OverflowPolicy policy;
+    private final long blockTimeoutNanos;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile Thread waitingConsumer;
+    
+    /**
+     * @param capacity 容量（向上取整为2的幂）
+     * @param policy 满时的处理策略
+     * @param blockTimeoutMs BLOCK策略下的最长等待时间
+     */
+    public LogRingBuffer(int capacity, OverflowPolicy policy, long blockTimeoutMs) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.policy = policy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+    }
+    
+    /**
+     * 发布一个元素，按溢出策略处理缓冲区满的情况
+     * @return 元素是否已写入
+     */
+    public boolean publish(E element) {
+        if (tryOffer(element)) {
+            onPublished();
+            return true;
+        }
+        
+        switch (policy) {
+            case DROP_OLDEST:
+                // 弹出最旧的一条腾出空位；与其他生产者竞争失败时重试
+                while (true) {
+                    if (poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                    if (tryOffer(element)) {
+                        onPublished();
+                        return true;
+                    }
+                }
+            case BLOCK:
+                long deadline = System.nanoTime() + blockTimeoutNanos;
+                while (System.nanoTime() < deadline) {
+                    LockSupport.parkNanos(50_000);
+                    if (tryOffer(element)) {
+                        onPublished();
+                        return true;
+                    }
+                }
+                dropped.incrementAndGet();
+                return false;
+            case DROP_NEWEST:
+            default:
+                dropped.incrementAndGet();
+                return false;
+        }
+    }
+    
+    /**
+     * 尝试写入一个元素，缓冲区满时立即返回false
+     */
+    private boolean tryOffer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            long diff = sequence - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false; // 已满
+            }
+            // diff > 0：其他生产者已占用该位置，重新读取tail
+        }
+    }
+    
+    private void onPublished() {
+        published.incrementAndGet();
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+    
+    /**
+     * 取出最旧的元素，缓冲区为空时返回null
+     */
+    public E poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            long diff = sequence - (position + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = slots.get(index);
+                    slots.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+            } else if (diff < 0) {
+                return null; // 为空
+            }
+        }
+    }
+    
+    /**
+     * 批量取出元素
+     * @return 取出的数量
+     */
+    public int drainTo(Consumer<E> consumer, int maxElements) {
+        int count = 0;
+        E element;
+        while (count < maxElements && (element = poll()) != null) {
+            consumer.accept(element);
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * 缓冲区为空时挂起消费线程，直到有新元素发布或超时
+     */
+    public void awaitNotEmpty(long timeoutNanos) {
+        waitingConsumer = Thread.currentThread();
+        try {
+            if (isEmpty()) {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+    
+    /**
+     * 唤醒正在等待的消费线程（用于通知缓冲区以外的事件）
+     */
+    public void wakeConsumer() {
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+    
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+    
+    /**
+     * 当前积压的元素数量
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+    
+    public int capacity() {
+        return mask + 1;
+    }
+    
+    public long getPublishedCount() {
+        return published.get();
+    }
+    
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,185 @@
+package org.example1.rCONPro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 日志订阅 - 控制端声明只接收哪些日志，插件在编码前按订阅过滤
+ * 订阅内容为多行"键=值"：level=最低级别，logger=记录器名称前缀，include/exclude=消息正则；
+ * logger、include、exclude可以出现多次，满足任一logger和任一include、且不满足任何exclude的日志才会发送
+ * 收到订阅时编译一次，之后只由分发线程调用test()
+ */
+public class LogSubscription {
+    public static final String KEY_LEVEL = "level";
+    public static final String KEY_LOGGER = "logger";
+    public static final String KEY_INCLUDE = "include";
+    public static final String KEY_EXCLUDE = "exclude";
+    
+    private final String spec;
+    private final byte minLevel;
+    private final String[] loggerPrefixes;
+    private final Matcher[] includes;
+    private final Matcher[] excludes;
+    
+    // 统计：分发线程写入，其他线程读取
+    private final AtomicLong matchedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    
+    private LogSubscription(String spec, byte minLevel, List<String> loggerPrefixes, List<Pattern> includes, List<Pattern> excludes) {
+        this.spec = spec;
+        this.minLevel = minLevel;
+        this.loggerPrefixes = loggerPrefixes.toArray(new String[0]);
+        // Matcher不是线程安全的，但test()只在分发线程中调用，可以复用
+        this.includes = includes.stream().map(pattern -> pattern.matcher("")).toArray(Matcher[]::new);
+        this.excludes = excludes.stream().map(pattern -> pattern.matcher("")).toArray(Matcher[]::new);
+    }
+    
+    /**
+     * 解析并编译订阅
+     * @return 订阅内容为空时返回null，表示接收全部日志
+     * @throws IllegalArgumentException 格式错误、未知的级别或正则表达式无效
+     */
+    public static LogSubscription parse(String spec) {
+        byte minLevel = LogEventCodec.LEVEL_PLAIN;
+        List<String> loggerPrefixes = new ArrayList<>();
+        List<Pattern> includes = new ArrayList<>();
+        List<Pattern> excludes = new ArrayList<>();
+        
+        for (String line : spec.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int separator = line.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("格式应为 键=值: " + line);
+            }
+            String key = line.substring(0, separator).trim();
+            String value = line.substring(separator + 1).trim();
+            switch (key) {
+                case KEY_LEVEL:
+                    minLevel = parseLevel(value);
+                    break;
+                case KEY_LOGGER:
+                    loggerPrefixes.add(value);
+                    break;
+                case KEY_INCLUDE:
+                    includes.add(Pattern.compile(value));
+                    break;
+                case KEY_EXCLUDE:
+                    excludes.add(Pattern.compile(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的订阅项: " + key);
+            }
+        }
+        
+        if (minLevel == LogEventCodec.LEVEL_PLAIN && loggerPrefixes.isEmpty() && includes.isEmpty() && excludes.isEmpty()) {
+            return null;
+        }
+        return new LogSubscription(spec.trim(), minLevel, loggerPrefixes, includes, excludes);
+    }
+    
+    static byte parseLevel(String value) {
+        String level = value.toUpperCase();
+        if (level.equals("WARNING")) {
+            level = "WARN";
+        }
+        byte code = LogEventCodec.levelCode(level);
+        if (code == LogEventCodec.LEVEL_INFO && !level.equals("INFO")) {
+            throw new IllegalArgumentException("未知的日志级别: " + value);
+        }
+        return code;
+    }
+    
+    /**
+     * 判断日志是否符合订阅，并更新统计
+     */
+    public boolean test(LogEvent event) {
+        boolean matched = matches(event);
+        (matched ? matchedCount : droppedCount).incrementAndGet();
+        return matched;
+    }
+    
+    private boolean matches(LogEvent event) {
+        if (minLevel != LogEventCodec.LEVEL_PLAIN && levelOf(event) < minLevel) {
+            return false;
+        }
+        if (loggerPrefixes.length > 0 && !matchesLogger(loggerOf(event))) {
+            return false;
+        }
+        if (includes.length > 0 && !findAny(includes, event.message)) {
+            return false;
+        }
+        return excludes.length == 0 || !findAny(excludes, event.message);
+    }
+    
+    private boolean matchesLogger(String logger) {
+        if (logger == null) {
+            return false;
+        }
+        for (String prefix : loggerPrefixes) {
+            if (logger.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean findAny(Matcher[] matchers, String text) {
+        for (Matcher matcher : matchers) {
+            if (matcher.reset(text).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 日志级别；纯文本行按原版或Paper的日志格式取出级别（与历史日志查询相同），取不到时按INFO处理
+     */
+    static byte levelOf(LogEvent event) {
+        return event.isPlainLine() ? LogEventCodec.levelOfLine(event.message) : LogEventCodec.levelCode(event.level);
+    }
+    
+    /**
+     * 记录器名称；纯文本行只能识别插件日志的"[插件名] "前缀
+     */
+    private static String loggerOf(LogEvent event) {
+        if (!event.isPlainLine()) {
+            return event.loggerName;
+        }
+        String line = event.message;
+        int start = line.indexOf("]: [");
+        if (start < 0) {
+            return null;
+        }
+        int end = line.indexOf(']', start + 4);
+        return end > 0 ? line.substring(start + 4, end) : null;
+    }
+    
+    public long getMatchedCount() {
+        return matchedCount.get();
+    }
+    
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+    
+    /**
+     * 订阅内容和统计摘要
+     */
+    public String getStats() {
+        return describe() + "，匹配 " + getMatchedCount() + " 行，过滤 " + getDroppedCount() + " 行";
+    }
+    
+    /**
+     * 单行形式的订阅内容
+     */
+    public String describe() {
+        return spec.replace('\n', ' ');
+    }
+}
@@ -2,6 +2,11 @@ package org.example1.rCONPro;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * 网络通信协议 - 插件和控制端之间的通信
@@ -11,21 +16,79 @@ public class NetworkProtocol {
     // 消息类型
     public static final int MSG_LOG = 1;           // 日志消息
     public static final int MSG_COMMAND = 2;       // 命令消息
-    public static final int MSG_PING = 3;          // 心跳
-    public static final int MSG_PONG = 4;          // 心跳响应
+    public static final int MSG_PING = 3;          // 心跳（内容为发送方的时间标记，可以为空）
+    public static final int MSG_PONG = 4;          // 心跳响应（原样返回MSG_PING的内容）
     public static final int MSG_RCON_CONFIG = 5;   // RCON配置（格式：host:port:password）
+    public static final int MSG_LOG_BATCH = 6;     // 批量日志（二进制：行数 + 每行长度和内容）
+    public static final int MSG_HELLO = 7;         // 能力协商（逗号分隔的能力列表）
+    public static final int MSG_LOG_SEQ_BATCH = 8; // 带序号的批量日志（二进制：首行序号 + MSG_LOG_BATCH的内容）
+    public static final int MSG_LOG_LOST = 9;      // 断线期间的日志已被覆盖，无法补发（内容为丢失的行数）
+    public static final int MSG_LOG_EVENTS = 10;   // 结构化日志事件（二进制，格式见LogEventCodec）
+    public static final int MSG_NAME_DEFS = 11;    // 记录器/线程名称定义（二进制，格式见LogNameTable）
+    public static final int MSG_SUBSCRIBE = 12;    // 日志订阅（多行"键=值"，格式见LogSubscription；内容为空表示接收全部日志）
+    public static final int MSG_STATS = 13;        // 运行统计（控制端发送空内容请求，插件回复多行文本）
+    public static final int MSG_COMMAND_REQUEST = 14; // 带关联标识的命令（格式：标识\n命令）
+    public static final int MSG_COMMAND_OUTPUT = 15;  // 命令的一段输出（格式：标识\n输出）
+    public static final int MSG_COMMAND_RESULT = 16;  // 命令执行结束（格式见CommandResult）
+    public static final int MSG_COMMAND_BATCH = 17;   // 批量命令（格式：标识\n脚本，脚本格式见CommandBatch）
+    public static final int MSG_COMMAND_BATCH_RESULT = 18; // 批量命令的汇总结果（二进制，格式见CommandBatch）
+    public static final int MSG_HISTORY_QUERY = 19;   // 历史日志查询（格式：标识\n条件，条件格式见LogHistory.Query）
+    public static final int MSG_HISTORY_LINES = 20;   // 一批查询结果（格式：标识\n多行日志）
+    public static final int MSG_HISTORY_END = 21;     // 查询结束（格式见LogHistory.Summary）
+    
+    // 能力标识（控制端在MSG_HELLO中声明，插件只对声明过的控制端使用对应特性）
+    public static final String CAP_BATCH = "batch";
+    public static final String CAP_DEFLATE = "deflate";
+    public static final String CAP_SEQ = "seq";
+    public static final String CAP_EVENTS = "events";
+    public static final String CAP_COMMAND_ID = "cmdid"; // 插件在回复的MSG_HELLO中确认后，控制端改用MSG_COMMAND_REQUEST
+    public static final String CAP_COMMAND_BATCH = "cmdbatch"; // 插件确认后，控制端可以用MSG_COMMAND_BATCH发送整段脚本
+    public static final String CAP_HISTORY = "history"; // 插件确认后，控制端可以用MSG_HISTORY_QUERY查询服务器的历史日志
+    public static final String CAP_KEEPALIVE = "keepalive"; // 控制端会回复插件发出的MSG_PING，插件在链路空闲时主动探测
+    
+    // 带参数的能力（格式：名称=值）
+    public static final String PARAM_EPOCH = "epoch";   // 插件回复：日志序号所属的插件运行实例
+    public static final String PARAM_RESUME = "resume"; // 控制端声明：重连前最后收到的日志（格式：epoch:序号）
     
     /**
      * 发送消息
      */
     public static void sendMessage(DataOutputStream out, int type, String message) throws IOException {
-        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
-        out.writeInt(type);
-        out.writeInt(messageBytes.length);
-        out.write(messageBytes);
+        out.write(encode(type, message));
         out.flush();
     }
     
+    /**
+     * 将消息编码为完整的帧（含类型和长度头）
+     * 广播时只需编码一次，同一份字节可以发给所有控制端
+     */
+    public static byte[] encode(int type, String message) {
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[8 + messageBytes.length];
+        writeInt(frame, 0, type);
+        writeInt(frame, 4, messageBytes.length);
+        System.arraycopy(messageBytes, 0, frame, 8, messageBytes.length);
+        return frame;
+    }
+    
+    /**
+     * 按大端序写入int（与DataOutputStream.writeInt一致）
+     */
+    static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+    
+    /**
+     * 按大端序读取int
+     */
+    static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+    
     /**
      * 接收消息
      */
@@ -38,23 +101,257 @@ public class NetworkProtocol {
             }
             byte[] messageBytes = new byte[length];
             in.readFully(messageBytes);
-            String message = new String(messageBytes, StandardCharsets.UTF_8);
-            return new Message(type, message);
+            return new Message(type, messageBytes);
         } catch (EOFException e) {
             throw new IOException("连接已断开", e);
         }
     }
     
+    /**
+     * 是否为二进制消息（内容不是UTF-8文本）
+     */
+    public static boolean isBinaryType(int type) {
+        return type == MSG_LOG_BATCH || type == MSG_LOG_SEQ_BATCH || type == MSG_LOG_EVENTS || type == MSG_NAME_DEFS
+                || type == MSG_COMMAND_BATCH_RESULT;
+    }
+    
+    /**
+     * 解析能力列表
+     */
+    public static Set<String> parseCapabilities(String content) {
+        Set<String> capabilities = new HashSet<>();
+        if (content != null) {
+            for (String capability : content.split(",")) {
+                if (!capability.trim().isEmpty()) {
+                    capabilities.add(capability.trim());
+                }
+            }
+        }
+        return capabilities;
+    }
+    
+    /**
+     * 读取能力列表中的参数值（格式：名称=值），不存在时返回null
+     */
+    public static String capabilityParam(Set<String> capabilities, String name) {
+        String prefix = name + "=";
+        for (String capability : capabilities) {
+            if (capability.startsWith(prefix)) {
+                return capability.substring(prefix.length());
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 解析MSG_PONG中返回的时间标记（发送方的System.nanoTime()）
+     * @return 内容为空（旧版对端）或格式错误时返回-1
+     */
+    public static long parsePingTime(String content) {
+        if (content == null || content.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(content.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * 编码带关联标识的消息（MSG_COMMAND_REQUEST/MSG_COMMAND_OUTPUT）
+     */
+    public static byte[] encodeCorrelated(int type, String id, String body) {
+        return encode(type, id + "\n" + body);
+    }
+    
+    /**
+     * 拆分带关联标识的消息
+     * @return [标识, 内容]
+     */
+    public static String[] splitCorrelated(String content) throws IOException {
+        int separator = content.indexOf('\n');
+        if (separator <= 0) {
+            throw new IOException("缺少关联标识");
+        }
+        return new String[]{content.substring(0, separator), content.substring(separator + 1)};
+    }
+    
+    /**
+     * 解码批量日志消息
+     */
+    public static List<String> decodeBatch(byte[] payload) throws IOException {
+        return decodeBatch(payload, 0);
+    }
+    
+    /**
+     * 读取带序号批量日志的首行序号，之后的内容用decodeBatch(payload, 8)解码
+     */
+    public static long readFirstSequence(byte[] payload) throws IOException {
+        if (payload.length < 8) {
+            throw new IOException("带序号的批量日志长度异常: " + payload.length);
+        }
+        return new DataInputStream(new ByteArrayInputStream(payload)).readLong();
+    }
+    
+    /**
+     * 从offset处开始解码批量日志
+     */
+    public static List<String> decodeBatch(byte[] payload, int offset) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, offset, payload.length - offset));
+        int count = in.readInt();
+        // 每行至少有4字节的长度，超出说明数据已损坏，不能按它分配列表
+        if (count < 0 || count > (payload.length - offset) / 4) {
+            throw new IOException("批量日志行数异常: " + count);
+        }
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = in.readInt();
+            if (length < 0 || length > payload.length) {
+                throw new IOException("批量日志行长度异常: " + length);
+            }
+            byte[] lineBytes = new byte[length];
+            in.readFully(lineBytes);
+            lines.add(new String(lineBytes, StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+    
+    /**
+     * 批量日志构建器 - 把多行日志打包进一个MSG_LOG_BATCH帧
+     * 内部缓冲区复用，reset后不重新分配
+     */
+    public static class BatchBuilder {
+        private byte[] buffer = new byte[8192];
+        private int position = 12; // 预留帧头（类型+长度）和行数
+        private int lineCount = 0;
+        
+        /**
+         * 追加一行
+         */
+        public void add(String line) {
+            byte[] lineBytes = line.getBytes(StandardCharsets.UTF_8);
+            addUtf8(lineBytes, 0, lineBytes.length);
+        }
+        
+        /**
+         * 追加一行已编码为UTF-8的日志
+         */
+        public void addUtf8(byte[] bytes, int offset, int length) {
+            ensureCapacity(4 + length);
+            writeInt(buffer, position, length);
+            System.arraycopy(bytes, offset, buffer, position + 4, length);
+            position += 4 + length;
+            lineCount++;
+        }
+        
+        private void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+        
+        /**
+         * 生成完整帧（返回新数组，可安全共享给多个会话）
+         */
+        public byte[] toFrame() {
+            writeInt(buffer, 0, MSG_LOG_BATCH);
+            writeInt(buffer, 4, position - 8);
+            writeInt(buffer, 8, lineCount);
+            return Arrays.copyOf(buffer, position);
+        }
+        
+        /**
+         * 生成带序号的完整帧，批次中的行序号从firstSequence开始连续递增
+         */
+        public byte[] toSequencedFrame(long firstSequence) {
+            byte[] frame = new byte[position + 8];
+            writeInt(frame, 0, MSG_LOG_SEQ_BATCH);
+            writeInt(frame, 4, position);
+            writeInt(frame, 8, (int) (firstSequence >>> 32));
+            writeInt(frame, 12, (int) firstSequence);
+            writeInt(frame, 16, lineCount);
+            System.arraycopy(buffer, 12, frame, 20, position - 12);
+            return frame;
+        }
+        
+        public void reset() {
+            position = 12;
+            lineCount = 0;
+        }
+        
+        public boolean isEmpty() {
+            return lineCount == 0;
+        }
+        
+        /**
+         * 当前帧大小（字节）
+         */
+        public int size() {
+            return position;
+        }
+        
+        public int lineCount() {
+            return lineCount;
+        }
+    }
+    
+    /**
+     * 命令执行结果（格式：标识\n状态\n服务器端耗时微秒\n说明）
+     * 耗时从插件收到命令到RCON响应收齐为止，包括等待连接池的时间
+     */
+    public static class CommandResult {
+        public static final String STATUS_OK = "OK";
+        public static final String STATUS_TRUNCATED = "TRUNCATED"; // 输出过多，部分分段被丢弃（说明为丢弃的段数）
+        public static final String STATUS_ERROR = "ERROR";         // 执行失败（说明为原因）
+        
+        public final String id;
+        public final String status;
+        public final long executionMicros;
+        public final String detail;
+        
+        public CommandResult(String id, String status, long executionMicros, String detail) {
+            this.id = id;
+            this.status = status;
+            this.executionMicros = executionMicros;
+            this.detail = detail;
+        }
+        
+        public byte[] toFrame() {
+            return encode(MSG_COMMAND_RESULT, id + "\n" + status + "\n" + executionMicros + "\n" + detail);
+        }
+        
+        public static CommandResult parse(String content) throws IOException {
+            String[] parts = content.split("\n", 4);
+            if (parts.length < 3) {
+                throw new IOException("命令结果格式异常");
+            }
+            try {
+                return new CommandResult(parts[0], parts[1], Long.parseLong(parts[2]), parts.length > 3 ? parts[3] : "");
+            } catch (NumberFormatException e) {
+                throw new IOException("命令结果格式异常: " + parts[2]);
+            }
+        }
+    }
+    
     /**
      * 消息类
      */
     public static class Message {
         public final int type;
-        public final String content;
+        public final String content;  // 文本消息的内容，二进制消息为null
+        public final byte[] payload;  // 原始消息体
         
         public Message(int type, String content) {
             this.type = type;
             this.content = content;
+            this.payload = content.getBytes(StandardCharsets.UTF_8);
+        }
+        
+        public Message(int type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+            this.content = isBinaryType(type) ? null : new String(payload, StandardCharsets.UTF_8);
         }
     }
 }
@@ -0,0 +1,99 @@
+package org.example1.rCONPro;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 插件运行指标 - 由分发线程、IO线程、日志文件监控和RCON连接在各自的热路径上记录
+ * 计数器使用LongAdder（分段计数，多线程同时累加时不争用同一个缓存行），延迟使用LatencyHistogram，
+ * 读取只在查询统计时发生，记录方不需要任何同步
+ */
+public class PluginMetrics {
+    // 日志转发
+    final LongAdder linesForwarded = new LongAdder();
+    final LatencyHistogram logLatency = new LatencyHistogram();   // Log4j事件产生到分发线程处理的延迟
+    
+    // 日志文件监控
+    final LongAdder fileLinesRead = new LongAdder();
+    final LongAdder fileBytesRead = new LongAdder();
+    final LongAdder fileReopens = new LongAdder();
+    
+    // 控制端会话（已关闭会话的流量在关闭时累加，当前会话的流量查询时从会话读取）
+    final LongAdder sessionsAccepted = new LongAdder();
+    final LongAdder sessionsResumed = new LongAdder();
+    final LongAdder closedBytesSent = new LongAdder();
+    final LongAdder closedFramesDropped = new LongAdder();
+    final LongAdder sessionsTimedOut = new LongAdder();            // 超过失效时间未收到数据而断开的会话
+    final LatencyHistogram keepaliveRtt = new LatencyHistogram();  // 插件发出心跳到收到响应的往返延迟
+    
+    // 命令执行（RCON或进程内执行，取决于当前的命令后端）
+    final LatencyHistogram commandLatency = new LatencyHistogram(); // 开始执行到收齐输出的延迟
+    final LongAdder commandFailures = new LongAdder();
+    
+    // RCON连接
+    final LongAdder rconConnects = new LongAdder();
+    final LongAdder rconConnectFailures = new LongAdder();
+    final LongAdder rconDisconnects = new LongAdder();
+    
+    private final RateMeter linesRate = new RateMeter();
+    private final RateMeter bytesRate = new RateMeter();
+    
+    /**
+     * 更新速率（只由分发线程定期调用）
+     * @param bytesSent 当前的累计发送字节数
+     */
+    void tick(long bytesSent, long nowNanos) {
+        linesRate.update(linesForwarded.sum(), nowNanos);
+        bytesRate.update(bytesSent, nowNanos);
+    }
+    
+    /**
+     * 最近一分钟的平均转发行数/秒
+     */
+    public double getLinesPerSecond() {
+        return linesRate.getRate();
+    }
+    
+    /**
+     * 最近一分钟的平均发送字节数/秒
+     */
+    public double getBytesPerSecond() {
+        return bytesRate.getRate();
+    }
+    
+    /**
+     * 一分钟指数加权移动平均速率
+     * 每次更新按距上次更新的时间计算瞬时速率再平滑，更新间隔不要求固定
+     */
+    private static class RateMeter {
+        private static final double WINDOW_SECONDS = 60;
+        
+        private long lastTotal;
+        private long lastNanos;
+        private boolean started = false;
+        private boolean hasRate = false;
+        private volatile double rate;
+        
+        void update(long total, long nowNanos) {
+            if (!started) {
+                lastTotal = total;
+                lastNanos = nowNanos;
+                started = true;
+                return;
+            }
+            double seconds = (nowNanos - lastNanos) / 1e9;
+            if (seconds <= 0) {
+                return;
+            }
+            double instant = (total - lastTotal) / seconds;
+            double alpha = 1 - Math.exp(-seconds / WINDOW_SECONDS);
+            rate = hasRate ? rate + alpha * (instant - rate) : instant;
+            hasRate = true;
+            lastTotal = total;
+            lastNanos = nowNanos;
+        }
+        
+        double getRate() {
+            return rate;
+        }
+    }
+}
@@ -2,250 +2,1543 @@ package org.example1.rCONPro;
 
 import org.bukkit.plugin.Plugin;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * 插件模式 - 在MC服务器内运行
  */
 public class PluginMode {
+    /**
+     * 日志来源
+     */
+    public enum LogSource {
+        LOG4J,  // 在服务器的Log4j2根记录器上挂接Appender（失败时回退到FILE）
+        FILE,   // 监控logs/latest.log
+        STDOUT  // 在进程内捕获System.out/System.err
+    }
+    
+    /**
+     * 命令执行方式
+     */
+    public enum CommandBackendType {
+        BUKKIT, // 在服务器主线程上调用Bukkit.dispatchCommand，没有网络往返
+        RCON    // 通过本机RCON端口执行
+    }
+    
+    public static final String STATS_OBJECT_NAME = "org.example1.rCONPro:type=Stats";
+    // 速率的更新间隔
+    private static final long METRICS_TICK_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // 检查会话心跳和失效的最长间隔
+    private static final long KEEPALIVE_CHECK_MS = 1000;
+    // 新版控制端连接后立即发送MSG_HELLO，超过该时间未收到的按旧版控制端开始推送日志
+    private static final long HELLO_GRACE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
     private final Plugin plugin;
     private final ConfigManager.PluginConfig config;
-    private RCONClient rconClient;
-    private ServerSocket serverSocket;
-    private Socket clientSocket;
-    private DataInputStream clientInput;
-    private DataOutputStream clientOutput;
+    private volatile RCONConnectionPool rconPool;
+    // 当前连接池的预连接（由this保护），完成前收到的不同密码等它有了结果再决定是否替换连接池
+    private CompletableFuture<Void> rconWarmUp;
+    // 当前的命令后端：RCON方式为rconPool，BUKKIT方式在首个控制端的密码验证通过后创建，之后仍只供已验证的控制端使用
+    private volatile CommandBackend commandBackend;
+    // 进程内执行的命令按tick预算排队（RCON方式下只供延迟对比使用，首次对比时启动）
+    private final TickCommandScheduler commandScheduler;
+    // 历史日志查询（读取logs目录，在自己的线程池中进行）
+    private final LogHistory history;
+    // BUKKIT方式下最近一次验证通过的密码，相同的密码不再读取server.properties（由this保护）
+    private String verifiedPassword;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private final Queue<ClientSession> pendingWriters = new ConcurrentLinkedQueue<>();
+    private final List<ClientSession> sessions = new CopyOnWriteArrayList<>();
+    private final LogRingBuffer<LogEvent> logBuffer;
+    // 重放缓冲区只由分发线程访问；加入请求由IO线程放入队列，交给分发线程按日志顺序处理
+    private final LogReplayBuffer replayBuffer;
+    private final Queue<LogJoinRequest> joinRequests = new ConcurrentLinkedQueue<>();
+    // 最近一行日志的序号，由分发线程更新，IO线程在接受连接时记录
+    private volatile long lastSequence = 0;
+    // 按接受顺序排列的、可能还在等待MSG_HELLO的会话（只由IO线程访问）
+    private final ArrayDeque<ClientSession> awaitingHello = new ArrayDeque<>();
+    // 记录器和线程名称表，只由分发线程访问
+    private final LogNameTable nameTable = new LogNameTable(4096);
+    // 本次运行的标识，插件重启后日志序号重新开始，控制端据此判断能否续传
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    // 运行指标，通过MSG_STATS、/rconpro stats和JMX查询
+    private final PluginMetrics metrics = new PluginMetrics();
+    private final Stats stats = new Stats();
+    private ObjectName statsObjectName;
     private ExecutorService executor;
     private LogFileMonitor logFileMonitor;
-    private boolean running = false;
+    private SystemOutCapture systemOutCapture;
+    private Log4jLogCapture log4jCapture;
+    private volatile boolean running = false;
+    
+    public PluginMode(Plugin plugin, ConfigManager.PluginConfig config) {
+        this.plugin = plugin;
+        this.config = config;
+        this.logBuffer = new LogRingBuffer<>(config.logQueueCapacity, config.logQueueOverflow, config.logQueueBlockTimeoutMs);
+        this.replayBuffer = new LogReplayBuffer((int) Math.min(Integer.MAX_VALUE, config.replayBufferMb * 1024L * 1024L));
+        this.commandScheduler = new TickCommandScheduler(plugin, config.commandTickBudgetMs);
+        this.history = new LogHistory(resolveLatestLog().toAbsolutePath().getParent(), config.historyParallelism, config.historyMaxLines);
+    }
+    
+    /**
+     * 服务器的logs/latest.log：先找服务器根目录，找不到时使用当前目录
+     */
+    private static Path resolveLatestLog() {
+        File serverDir = new File(".").getAbsoluteFile();
+        Path logFile = Paths.get(serverDir.getParent(), "logs", "latest.log");
+        if (!Files.exists(logFile)) {
+            logFile = Paths.get("logs", "latest.log");
+        }
+        return logFile;
+    }
+    
+    /**
+     * 启动插件模式
+     */
+    public void start() {
+        executor = Executors.newCachedThreadPool();
+        running = true;
+        
+        // 启动网络服务器（非阻塞，由单个IO线程服务所有控制端）
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(config.listenPort));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            plugin.getLogger().info("监听端口: " + config.listenPort + "，等待远程控制端连接...");
+        } catch (IOException e) {
+            plugin.getLogger().severe("无法启动网络服务器: " + e.getMessage());
+            return;
+        }
+        
+        registerStatsMBean();
+        // 调度器依赖Bukkit的任务调度，只在进程内执行命令时启动（RCON方式可以在没有服务器的环境中运行，如负载测试）
+        if (config.commandBackend == CommandBackendType.BUKKIT) {
+            commandScheduler.start();
+        }
+        
+        // 启动日志分发线程
+        executor.submit(this::dispatchLoop);
+        
+        // 启动日志来源
+        startLogSource();
+        
+        // 启动网络IO线程
+        executor.submit(this::ioLoop);
+        
+        plugin.getLogger().info("RCONPro 插件模式已启动，等待远程控制端连接并提供RCON密码");
+    }
+    
+    /**
+     * 把运行统计注册到平台MBeanServer，已有同名MBean（如插件重载后未注销）时先替换
+     */
+    private void registerStatsMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(STATS_OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(stats, name);
+            statsObjectName = name;
+        } catch (JMException | SecurityException e) {
+            plugin.getLogger().warning("无法注册JMX统计: " + e.getMessage());
+        }
+    }
+    
+    private void unregisterStatsMBean() {
+        if (statsObjectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(statsObjectName);
+        } catch (JMException | SecurityException e) {
+            // 忽略
+        }
+        statsObjectName = null;
+    }
+    
+    /**
+     * 启动配置的日志来源；进程内捕获不可用时回退到监控日志文件
+     */
+    private void startLogSource() {
+        if (config.logSource == LogSource.LOG4J) {
+            try {
+                log4jCapture = new Log4jLogCapture(this::publishEvent);
+                log4jCapture.start();
+                plugin.getLogger().info("已挂接到Log4j2根记录器，直接转发服务器日志");
+                return;
+            } catch (RuntimeException | LinkageError e) {
+                log4jCapture = null;
+                plugin.getLogger().warning("无法挂接Log4j2，改为监控日志文件: " + e);
+            }
+        } else if (config.logSource == LogSource.STDOUT) {
+            systemOutCapture = new SystemOutCapture(this);
+            systemOutCapture.start();
+            plugin.getLogger().info("开始捕获System.out/System.err");
+            return;
+        }
+        logFileMonitor = new LogFileMonitor();
+        logFileMonitor.start();
+    }
+    
+    /**
+     * 网络IO线程主循环 - 单线程处理所有控制端的连接、读取和写入
+     * 启用心跳或有会话在等待MSG_HELLO时select带超时，定期检查各会话的心跳和失效
+     */
+    private void ioLoop() {
+        long checkMs = keepaliveCheckMs();
+        long nextKeepaliveCheck = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(checkMs);
+        while (running) {
+            try {
+                long timeoutMs = selectTimeoutMs(checkMs, System.nanoTime());
+                if (timeoutMs > 0) {
+                    selector.select(timeoutMs);
+                } else {
+                    selector.select();
+                }
+                long now = System.nanoTime();
+                if (checkMs > 0 && now - nextKeepaliveCheck >= 0) {
+                    checkKeepalive(now);
+                    nextKeepaliveCheck = now + TimeUnit.MILLISECONDS.toNanos(checkMs);
+                }
+                joinLegacySessions(now);
+                
+                // 处理其他线程请求的写入
+                ClientSession pending;
+                while ((pending = pendingWriters.poll()) != null) {
+                    flushSession(pending);
+                }
+                
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        acceptConnection();
+                        continue;
+                    }
+                    ClientSession session = (ClientSession) key.attachment();
+                    if (key.isReadable()) {
+                        readSession(session);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flushSession(session);
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    plugin.getLogger().warning("网络IO出错: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * 心跳检查间隔，不超过心跳间隔和失效时间；两者都未启用时返回0
+     */
+    private long keepaliveCheckMs() {
+        long checkMs = KEEPALIVE_CHECK_MS;
+        if (config.keepaliveIntervalMs > 0) {
+            checkMs = Math.min(checkMs, config.keepaliveIntervalMs);
+        }
+        if (config.keepaliveTimeoutMs > 0) {
+            checkMs = Math.min(checkMs, config.keepaliveTimeoutMs);
+        }
+        return config.keepaliveIntervalMs > 0 || config.keepaliveTimeoutMs > 0 ? checkMs : 0;
+    }
+    
+    /**
+     * select的超时：不超过心跳检查间隔，有会话在等待MSG_HELLO时不超过其剩余的等待时间；返回0表示不限
+     */
+    private long selectTimeoutMs(long checkMs, long nowNanos) {
+        ClientSession waiting = awaitingHello.peek();
+        if (waiting == null) {
+            return checkMs;
+        }
+        long remainingMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(HELLO_GRACE_NANOS - waiting.nanosSinceConnected(nowNanos)) + 1);
+        return checkMs > 0 ? Math.min(checkMs, remainingMs) : remainingMs;
+    }
+    
+    /**
+     * 等待期内没有发送任何消息的会话按旧版控制端处理（只能在IO线程中调用），
+     * 从接受连接时的位置开始推送日志，等待期间产生的日志随之补发
+     */
+    private void joinLegacySessions(long nowNanos) {
+        ClientSession session;
+        while ((session = awaitingHello.peek()) != null) {
+            if (!session.isClosed() && session.nanosSinceConnected(nowNanos) < HELLO_GRACE_NANOS) {
+                return;
+            }
+            awaitingHello.poll();
+            if (!session.isClosed() && session.requestLogJoin()) {
+                requestLogJoin(session, session.getConnectedSequence());
+            }
+        }
+    }
+    
+    /**
+     * 检查各会话的心跳（只能在IO线程中调用）
+     * 超过失效时间未收到任何数据的会话判定为半开连接并关闭；
+     * 一个心跳间隔内未收到数据的会话发送带时间标记的MSG_PING，持续收到数据的会话不发送
+     */
+    private void checkKeepalive(long nowNanos) {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.keepaliveIntervalMs);
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.keepaliveTimeoutMs);
+        for (ClientSession session : sessions) {
+            if (timeoutNanos > 0 && session.nanosSinceReceived(nowNanos) > timeoutNanos) {
+                metrics.sessionsTimedOut.increment();
+                closeSession(session, "超过 " + config.keepaliveTimeoutMs + "ms 未收到任何数据，判定连接已失效");
+                continue;
+            }
+            // 旧版控制端不回复MSG_PING，依靠它自己每10秒发送的心跳
+            if (intervalNanos > 0 && session.hasCapability(NetworkProtocol.CAP_KEEPALIVE)) {
+                session.pingIfIdle(nowNanos, intervalNanos);
+            }
+        }
+    }
+    
+    /**
+     * 接受客户端连接
+     * 支持任意数量的控制端同时连接，每个控制端一个会话
+     */
+    private void acceptConnection() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            ClientSession session = new ClientSession(channel, config.sessionQueueCapacity, this::requestWrite);
+            session.setConnectedSequence(lastSequence);
+            session.register(selector);
+            metrics.sessionsAccepted.increment();
+            plugin.getLogger().info("远程控制端已连接: " + session.getRemoteAddress());
+            
+            // 先放入欢迎消息，保证它是该会话收到的第一条消息
+            session.offer(NetworkProtocol.encode(NetworkProtocol.MSG_LOG, "=== 远程控制端已连接，开始接收日志 ==="));
+            sessions.add(session);
+            awaitingHello.add(session);
+        } catch (IOException e) {
+            if (running) {
+                plugin.getLogger().warning("接受连接时出错: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 请求IO线程写出会话的发送队列（可在任意线程调用）
+     */
+    private void requestWrite(ClientSession session) {
+        pendingWriters.add(session);
+        selector.wakeup();
+    }
+    
+    private void readSession(ClientSession session) {
+        try {
+            if (!session.onReadable(msg -> handleMessage(session, msg))) {
+                closeSession(session, null);
+            }
+        } catch (IOException e) {
+            closeSession(session, e.getMessage());
+        }
+    }
+    
+    private void flushSession(ClientSession session) {
+        if (session.isClosed()) {
+            return;
+        }
+        try {
+            session.onWritable();
+        } catch (IOException e) {
+            closeSession(session, e.getMessage());
+        }
+    }
+    
+    /**
+     * 关闭会话并释放资源（只能在IO线程中调用）
+     */
+    private void closeSession(ClientSession session, String reason) {
+        if (reason != null && running) {
+            plugin.getLogger().warning("客户端连接断开: " + reason);
+        }
+        if (sessions.remove(session)) {
+            metrics.closedBytesSent.add(session.getWireBytesOut());
+            metrics.closedFramesDropped.add(session.getDroppedFrames());
+        }
+        session.close();
+        session.releaseCompression();
+        LogSubscription subscription = session.getSubscription();
+        plugin.getLogger().info("会话 " + session.getRemoteAddress() + " 已关闭，发送 "
+                + StreamCompression.formatRatio(session.getRawBytesOut(), session.getWireBytesOut())
+                + "，接收 " + StreamCompression.formatRatio(session.getRawBytesIn(), session.getWireBytesIn())
+                + (subscription != null ? "，日志订阅: " + subscription.getStats() : ""));
+    }
+    
+    /**
+     * 处理来自远程控制端的消息（在IO线程中调用，不能阻塞）
+     */
+    private void handleMessage(ClientSession session, NetworkProtocol.Message msg) {
+        // 新版控制端先发MSG_HELLO（可能带续传位置）；旧版控制端收到首条消息或等待期结束时开始推送日志，
+        // 从接受连接时的位置补发，连接之后产生的日志不会丢失
+        if (msg.type != NetworkProtocol.MSG_HELLO && session.requestLogJoin()) {
+            requestLogJoin(session, session.getConnectedSequence());
+        }
+        
+        if (msg.type == NetworkProtocol.MSG_RCON_CONFIG) {
+            // 收到RCON配置，解析并连接
+            handleRCONConfig(session, msg.content);
+        } else if (msg.type == NetworkProtocol.MSG_COMMAND) {
+            // 密码验证在执行器中进行，紧随密码发来的命令等验证完成后再执行
+            session.afterVerification(() -> handleCommand(session, null, msg.content));
+        } else if (msg.type == NetworkProtocol.MSG_COMMAND_REQUEST) {
+            session.afterVerification(() -> handleCommandRequest(session, msg.content));
+        } else if (msg.type == NetworkProtocol.MSG_COMMAND_BATCH) {
+            session.afterVerification(() -> handleCommandBatch(session, msg.content));
+        } else if (msg.type == NetworkProtocol.MSG_HISTORY_QUERY) {
+            handleHistoryQuery(session, msg.content);
+        } else if (msg.type == NetworkProtocol.MSG_HELLO) {
+            handleHello(session, NetworkProtocol.parseCapabilities(msg.content));
+        } else if (msg.type == NetworkProtocol.MSG_SUBSCRIBE) {
+            handleSubscribe(session, msg.content);
+        } else if (msg.type == NetworkProtocol.MSG_STATS) {
+            session.offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_STATS, getStatsSummary()));
+        } else if (msg.type == NetworkProtocol.MSG_PING) {
+            // 响应心跳，原样返回时间标记供控制端计算往返延迟
+            session.offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_PONG, msg.content));
+        } else if (msg.type == NetworkProtocol.MSG_PONG) {
+            long sentNanos = NetworkProtocol.parsePingTime(msg.content);
+            long rtt = System.nanoTime() - sentNanos;
+            if (sentNanos >= 0 && rtt >= 0) {
+                metrics.keepaliveRtt.recordNanos(rtt);
+            }
+        }
+    }
+    
+    /**
+     * 处理能力协商
+     * 首个MSG_HELLO声明能力；若双方都启用压缩，插件回复确认后切换发送方向，
+     * 控制端收到确认后再发一个MSG_HELLO表示其后的数据已压缩，插件据此切换接收方向
+     */
+    private void handleHello(ClientSession session, Set<String> capabilities) {
+        if (session.isOutputCompressionRequested()) {
+            if (capabilities.contains(NetworkProtocol.CAP_DEFLATE)) {
+                session.enableInputCompression();
+            }
+            return;
+        }
+        
+        session.setCapabilities(capabilities);
+        // 确认双方都支持的能力（旧版控制端不声明这些能力，不会收到回复）
+        List<String> confirmed = new ArrayList<>();
+        if (capabilities.contains(NetworkProtocol.CAP_SEQ)) {
+            confirmed.add(NetworkProtocol.CAP_SEQ);
+            confirmed.add(NetworkProtocol.PARAM_EPOCH + "=" + epoch);
+        }
+        if (capabilities.contains(NetworkProtocol.CAP_COMMAND_ID)) {
+            confirmed.add(NetworkProtocol.CAP_COMMAND_ID);
+        }
+        if (capabilities.contains(NetworkProtocol.CAP_COMMAND_BATCH)) {
+            confirmed.add(NetworkProtocol.CAP_COMMAND_BATCH);
+        }
+        if (capabilities.contains(NetworkProtocol.CAP_HISTORY)) {
+            confirmed.add(NetworkProtocol.CAP_HISTORY);
+        }
+        if (!confirmed.isEmpty()) {
+            session.offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_HELLO, String.join(",", confirmed)));
+        }
+        if (config.compressionEnabled && capabilities.contains(NetworkProtocol.CAP_DEFLATE)) {
+            session.enableOutputCompression(config.compressionLevel, config.compressionMinFrameSize);
+        }
+        if (session.requestLogJoin()) {
+            requestLogJoin(session, parseResumeSequence(capabilities));
+        }
+    }
+    
+    /**
+     * 处理日志订阅：编译后替换会话当前的订阅，分发线程从下一批日志开始按新订阅过滤，不需要重连
+     */
+    private void handleSubscribe(ClientSession session, String spec) {
+        LogSubscription subscription;
+        try {
+            subscription = LogSubscription.parse(spec);
+        } catch (IllegalArgumentException e) {
+            session.offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_LOG, "[ERROR] 日志订阅无效: " + e.getMessage()));
+            return;
+        }
+        LogSubscription previous = session.getSubscription();
+        session.setSubscription(subscription);
+        if (previous != null) {
+            plugin.getLogger().info("会话 " + session.getRemoteAddress() + " 更换日志订阅，原订阅: " + previous.getStats());
+        }
+        session.offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_LOG,
+                "[RCONPro] 日志订阅: " + (subscription != null ? subscription.describe() : "全部日志")));
+    }
+    
+    /**
+     * 解析控制端的续传位置（格式：epoch:序号）
+     * 插件重启过（epoch不同）时序号已经失效，从重放缓冲区的开头补发；没有续传位置时返回-1
+     */
+    private long parseResumeSequence(Set<String> capabilities) {
+        String resume = NetworkProtocol.capabilityParam(capabilities, NetworkProtocol.PARAM_RESUME);
+        if (resume == null) {
+            return -1;
+        }
+        int separator = resume.lastIndexOf(':');
+        if (separator <= 0 || !resume.substring(0, separator).equals(epoch)) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(resume.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    /**
+     * 请求分发线程把会话加入日志推送
+     * @param afterSequence 需要补发该序号之后的日志，-1表示只接收实时日志
+     */
+    private void requestLogJoin(ClientSession session, long afterSequence) {
+        joinRequests.add(new LogJoinRequest(session, afterSequence));
+        logBuffer.wakeConsumer();
+    }
+    
+    /**
+     * 处理带关联标识的命令，输出和结果都带上同一标识，控制端可以同时有多条命令在执行
+     */
+    private void handleCommandRequest(ClientSession session, String content) {
+        String[] parts;
+        try {
+            parts = NetworkProtocol.splitCorrelated(content);
+        } catch (IOException e) {
+            session.offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_LOG, "[ERROR] 命令格式无效: " + e.getMessage()));
+            return;
+        }
+        handleCommand(session, parts[0], parts[1]);
+    }
+    
+    /**
+     * 处理批量命令：整段脚本交给命令后端一次执行，结束后返回一个汇总结果帧
+     * 行数超过上限或后端不可用时只回复一个失败的命令结果（不逐行标记跳过，避免超大脚本的结果帧超过协议上限）
+     */
+    private void handleCommandBatch(ClientSession session, String content) {
+        long startNanos = System.nanoTime();
+        String[] parts;
+        try {
+            parts = NetworkProtocol.splitCorrelated(content);
+        } catch (IOException e) {
+            session.offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_LOG, "[ERROR] 批量命令格式无效: " + e.getMessage()));
+            return;
+        }
+        String id = parts[0];
+        List<String> commands = CommandBatch.parseScript(parts[1]);
+        CommandBackend backend = backendFor(session);
+        String rejection = backend == null
+                ? rejectionReason(session)
+                : commands.size() > config.commandBatchMaxLines ? "脚本超过 " + config.commandBatchMaxLines + " 行" : null;
+        if (rejection != null) {
+            plugin.getLogger().warning(rejection + "，无法执行批量命令");
+            session.offerControl(new NetworkProtocol.CommandResult(id, NetworkProtocol.CommandResult.STATUS_ERROR, 0, rejection).toFrame());
+            return;
+        }
+        
+        plugin.getLogger().info("执行批量命令: " + commands.size() + " 行");
+        backend.executeBatch(commands).whenComplete((results, error) -> {
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+            if (error != null) {
+                // 后端只在内部错误时异常完成
+                results = new ArrayList<>(commands.size());
+                for (int i = 0; i < commands.size(); i++) {
+                    results.add(new CommandBatch.LineResult(CommandBatch.STATUS_SKIPPED, 0, CommandBatch.describe(error)));
+                }
+            }
+            int failed = 0;
+            for (CommandBatch.LineResult result : results) {
+                if (result.status != CommandBatch.STATUS_OK) {
+                    failed++;
+                }
+            }
+            plugin.getLogger().info("批量命令执行完毕: " + results.size() + " 行，未成功 " + failed + " 行，耗时 "
+                    + LatencyHistogram.formatMicros(micros));
+            session.offerControl(CommandBatch.encodeResult(id, micros, results));
+        });
+    }
+    
+    /**
+     * 处理历史日志查询：在后台线程中等待查询结果，按时间顺序分批发给控制端，最后发送汇总
+     * 发送队列积压过多时暂停，等控制端读取，不丢弃结果
+     */
+    private void handleHistoryQuery(ClientSession session, String content) {
+        String[] parts;
+        try {
+            parts = NetworkProtocol.splitCorrelated(content);
+        } catch (IOException e) {
+            session.offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_LOG, "[ERROR] 历史查询格式无效: " + e.getMessage()));
+            return;
+        }
+        String id = parts[0];
+        LogHistory.Query query;
+        try {
+            query = LogHistory.Query.parse(parts[1], history.getMaxLimit());
+        } catch (IllegalArgumentException e) {
+            session.offerControl(new LogHistory.Summary(id, 0, false, 0, 0, 0, e.getMessage()).toFrame());
+            return;
+        }
+        executor.submit(() -> {
+            LogHistory.Summary summary = history.query(id, query, lines -> {
+                while (session.getQueueDepth() > config.sessionQueueCapacity / 2 && !session.isClosed()) {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                session.offerControl(NetworkProtocol.encodeCorrelated(NetworkProtocol.MSG_HISTORY_LINES, id, String.join("\n", lines)));
+            }, session::isClosed);
+            session.offerControl(summary.toFrame());
+            plugin.getLogger().info("历史日志查询: 返回 " + summary.matched + " 行，扫描 " + summary.filesScanned + " 个文件，耗时 "
+                    + LatencyHistogram.formatMicros(summary.micros));
+        });
+    }
+    
+    /**
+     * 通过RCON异步执行命令，并把响应只回复给发出命令的控制端
+     * 不阻塞IO线程；多个命令可以同时在途。大输出按RCON分片逐段转发，不在插件端缓存完整响应，
+     * 分片走有界发送队列，控制端读取过慢时丢弃的部分会在最后提示
+     * @param id 控制端指定的关联标识；为null时按旧协议以MSG_LOG返回输出和错误
+     */
+    private void handleCommand(ClientSession session, String id, String command) {
+        long startNanos = System.nanoTime();
+        CommandBackend backend = backendFor(session);
+        if (backend != null) {
+            plugin.getLogger().info("执行命令: " + command);
+            AtomicBoolean hasOutput = new AtomicBoolean();
+            AtomicLong droppedChunks = new AtomicLong();
+            // 同时在途的命令不多时视为操作员输入；大量流水线发送的是自动化命令，排在交互命令之后
+            TickCommandScheduler.Lane lane = session.commandStarted() > config.commandInteractiveMaxInFlight
+                    ? TickCommandScheduler.Lane.BULK : TickCommandScheduler.Lane.INTERACTIVE;
+            backend.executeCommand(command, lane, chunk -> {
+                if (!chunk.trim().isEmpty()) {
+                    hasOutput.set(true);
+                    // 将RCON响应转发到远程控制端（直接放入会话队列，避免被SystemOutCapture捕获）
+                    byte[] frame = id != null
+                            ? NetworkProtocol.encodeCorrelated(NetworkProtocol.MSG_COMMAND_OUTPUT, id, chunk)
+                            : NetworkProtocol.encode(NetworkProtocol.MSG_LOG, chunk);
+                    if (!session.offer(frame)) {
+                        droppedChunks.incrementAndGet();
+                    }
+                }
+            }).whenComplete((v, error) -> {
+                session.commandFinished();
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (id != null) {
+                    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+                    String status = cause != null ? NetworkProtocol.CommandResult.STATUS_ERROR
+                            : droppedChunks.get() > 0 ? NetworkProtocol.CommandResult.STATUS_TRUNCATED
+                            : NetworkProtocol.CommandResult.STATUS_OK;
+                    String detail = cause != null ? String.valueOf(cause.getMessage())
+                            : droppedChunks.get() > 0 ? Long.toString(droppedChunks.get()) : "";
+                    session.offerControl(new NetworkProtocol.CommandResult(id, status, micros, detail).toFrame());
+                } else if (cause != null) {
+                    session.offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_LOG,
+                            "[ERROR] 执行命令失败: " + command + " (" + cause.getMessage() + ")"));
+                } else if (droppedChunks.get() > 0) {
+                    session.offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_LOG,
+                            "[WARN] 命令输出过多，丢弃了 " + droppedChunks.get() + " 段: " + command));
+                } else if (!hasOutput.get()) {
+                    // 即使响应为空，也发送一个空响应标记
+                    session.offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_LOG, "[RCON Response] (empty)"));
+                }
+            });
+        } else {
+            String reason = rejectionReason(session);
+            plugin.getLogger().warning(reason + "，无法执行命令: " + command);
+            // 发送错误消息到控制端
+            if (id != null) {
+                session.offerControl(new NetworkProtocol.CommandResult(id, NetworkProtocol.CommandResult.STATUS_ERROR,
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos), reason).toFrame());
+            } else {
+                session.offerControl(NetworkProtocol.encode(NetworkProtocol.MSG_LOG, "[ERROR] " + reason + "，无法执行命令: " + command));
+            }
+        }
+    }
+    
+    /**
+     * 会话可用的命令后端：只有自己提供了正确密码的控制端可以执行命令
+     * BUKKIT方式要求通过了密码验证，RCON方式要求发送的密码与当前连接池的密码一致（由RCON服务器认证）
+     * @return 不可用时返回null
+     */
+    private CommandBackend backendFor(ClientSession session) {
+        if (config.commandBackend == CommandBackendType.BUKKIT) {
+            return session.isPasswordVerified() ? commandBackend : null;
+        }
+        RCONConnectionPool pool = rconPool;
+        String password = session.getRconPassword();
+        return pool != null && password != null && pool.usesPassword(password) ? pool : null;
+    }
+    
+    /**
+     * backendFor返回null时告知控制端的原因
+     */
+    private String rejectionReason(ClientSession session) {
+        if (config.commandBackend == CommandBackendType.BUKKIT) {
+            return "控制端未通过密码验证";
+        }
+        return rconPool == null ? "RCON未连接" : "控制端未提供与RCON连接一致的密码";
+    }
+    
+    /**
+     * 处理RCON配置
+     * 控制端发送的是RCON密码，插件使用配置中的host和port
+     */
+    private void handleRCONConfig(ClientSession session, String rconPassword) {
+        if (rconPassword == null || rconPassword.isEmpty()) {
+            plugin.getLogger().warning("收到空的RCON密码");
+            return;
+        }
+        
+        if (config.commandBackend == CommandBackendType.BUKKIT) {
+            // 验证可能需要读取server.properties，不在IO线程中进行
+            session.verifyPassword(() -> verifyPassword(session, rconPassword), executor);
+            return;
+        }
+        
+        // 多个控制端会发送同一个密码，密码不变时继续使用现有连接池；之后的命令按会话的密码判断能否使用
+        session.setRconPassword(rconPassword);
+        CompletableFuture<Void> warmUp;
+        synchronized (this) {
+            if (rconPool != null && rconPool.usesPassword(rconPassword)) {
+                return;
+            }
+            if (rconPool != null && !rconWarmUp.isDone()) {
+                rconWarmUp.whenComplete((v, error) -> {
+                    if (rconPassword.equals(session.getRconPassword()) && !session.isClosed()) {
+                        handleRCONConfig(session, rconPassword);
+                    }
+                });
+                return;
+            }
+            if (rconPool != null && rconPool.isAuthenticated()) {
+                // 一个控制端的密码不同（如输错）不影响已认证成功的连接池和其他控制端
+                plugin.getLogger().warning("控制端 " + session.getRemoteAddress() + " 提供的RCON密码与当前连接不一致，该控制端不能执行命令");
+                return;
+            }
+            if (rconPool != null) {
+                // 现有密码未被服务器证实（如认证失败），改用新密码
+                rconPool.close();
+            }
+            plugin.getLogger().info("收到RCON密码，准备连接RCON服务器 " + config.rconHost + ":" + config.rconPort);
+            rconPool = new RCONConnectionPool(config.rconHost, config.rconPort, rconPassword, plugin.getLogger(), config, metrics);
+            commandBackend = rconPool;
+            // 预先建立一个连接，尽早发现密码错误
+            rconWarmUp = rconPool.warmUp();
+            warmUp = rconWarmUp;
+        }
+        
+        warmUp.whenComplete((v, error) -> {
+            if (error == null) {
+                plugin.getLogger().info("已连接到RCON服务器");
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                plugin.getLogger().warning("预连接RCON服务器失败，将在执行命令时重试: " + cause.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * BUKKIT方式下验证控制端的密码（在执行器中调用）：与server.properties中的rcon.password一致时该控制端可以执行命令
+     * 与RCON方式的信任模型相同，知道RCON密码的控制端才能执行命令；验证结果只对发送密码的会话有效
+     */
+    private synchronized void verifyPassword(ClientSession session, String password) {
+        if (password.equals(verifiedPassword)) {
+            session.setPasswordVerified(true);
+            return;
+        }
+        String expected = readServerRconPassword();
+        if (expected == null || expected.isEmpty()) {
+            plugin.getLogger().warning("server.properties中没有设置rcon.password，无法验证控制端，命令不可用");
+            session.setPasswordVerified(false);
+            return;
+        }
+        if (!expected.equals(password)) {
+            plugin.getLogger().warning("控制端 " + session.getRemoteAddress() + " 提供的RCON密码不正确");
+            session.setPasswordVerified(false);
+            return;
+        }
+        verifiedPassword = password;
+        session.setPasswordVerified(true);
+        if (commandBackend == null) {
+            commandBackend = new BukkitCommandBackend(plugin, commandScheduler, config.rconRequestTimeoutMs, metrics);
+            plugin.getLogger().info("控制端已通过验证，命令将在服务器主线程直接执行");
+        }
+    }
+    
+    /**
+     * 读取服务器的RCON密码，读取失败时返回null
+     */
+    private String readServerRconPassword() {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(Paths.get("server.properties"))) {
+            properties.load(in);
+        } catch (IOException e) {
+            plugin.getLogger().warning("无法读取server.properties: " + e.getMessage());
+            return null;
+        }
+        return properties.getProperty("rcon.password");
+    }
+    
+    /**
+     * 对比两种命令后端的延迟：依次用进程内执行和RCON各执行count次命令（先各预热3次），报告延迟分布
+     * 在后台线程中进行，不阻塞调用方（通常是服务器主线程）；RCON需要控制端提供过密码
+     */
+    public void benchmarkCommands(String command, int count, Consumer<String> report) {
+        executor.submit(() -> {
+            report.accept("命令延迟对比: " + command + "，每种方式 " + count + " 次");
+            // RCON方式下调度器没有随插件启动，首次对比时才启动
+            if (commandScheduler.start()) {
+                CommandBackend bukkit = commandBackend instanceof BukkitCommandBackend
+                        ? commandBackend
+                        : new BukkitCommandBackend(plugin, commandScheduler, config.rconRequestTimeoutMs, new PluginMetrics());
+                report.accept("进程内执行: " + benchmark(bukkit, command, count));
+            } else {
+                report.accept("进程内执行: 未启用（没有运行中的服务器）");
+            }
+            
+            String password;
+            synchronized (this) {
+                password = rconPool != null ? null : verifiedPassword;
+            }
+            RCONConnectionPool pool = rconPool;
+            if (pool == null && password == null) {
+                report.accept("RCON: 没有可用的RCON密码，跳过");
+                return;
+            }
+            RCONConnectionPool temporary = null;
+            if (pool == null) {
+                temporary = new RCONConnectionPool(config.rconHost, config.rconPort, password, plugin.getLogger(), config, new PluginMetrics());
+                pool = temporary;
+            }
+            try {
+                report.accept("RCON: " + benchmark(pool, command, count));
+            } finally {
+                if (temporary != null) {
+                    temporary.close();
+                }
+            }
+        });
+    }
+    
+    /**
+     * 前3次作为预热不计入直方图；连续失败超过3次时停止，已有的结果照常报告
+     */
+    private static String benchmark(CommandBackend backend, String command, int count) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int failures = 0;
+        int consecutiveFailures = 0;
+        for (int i = -3; i < count; i++) {
+            long start = System.nanoTime();
+            try {
+                backend.executeCommand(command, output -> { }).join();
+            } catch (CompletionException e) {
+                failures++;
+                if (++consecutiveFailures > 3) {
+                    return histogram.summary() + "，失败 " + failures + " 次，连续失败已停止: "
+                            + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                }
+                continue;
+            }
+            consecutiveFailures = 0;
+            if (i >= 0) {
+                histogram.recordNanos(System.nanoTime() - start);
+            }
+        }
+        return histogram.summary() + (failures > 0 ? "，失败 " + failures + " 次" : "");
+    }
+    
+    /**
+     * RCON连接池统计摘要
+     */
+    public String getRconPoolStats() {
+        RCONConnectionPool pool = rconPool;
+        return pool != null ? pool.getStats() : "未连接";
+    }
+    
+    /**
+     * 各会话的日志订阅统计，没有订阅的会话不列出
+     */
+    public String getSubscriptionStats() {
+        StringBuilder stats = new StringBuilder();
+        for (ClientSession session : sessions) {
+            LogSubscription subscription = session.getSubscription();
+            if (subscription != null) {
+                if (stats.length() > 0) {
+                    stats.append('\n');
+                }
+                stats.append(session.getRemoteAddress()).append(": ").append(subscription.getStats());
+            }
+        }
+        return stats.length() > 0 ? stats.toString() : "无";
+    }
+    
+    /**
+     * 发送日志到所有远程控制端
+     * 只把日志放入无锁环形缓冲区后立即返回，由分发线程负责编码和发送，调用线程永远不做网络IO
+     */
+    void sendLog(String logMessage) {
+        if (logMessage == null || logMessage.trim().isEmpty()) {
+            return;
+        }
+        
+        // 没有控制端连接时也要记录，重连的控制端可以补发断线期间的日志
+        logBuffer.publish(LogEvent.ofLine(logMessage));
+    }
+    
+    /**
+     * 发送结构化日志事件到所有远程控制端（Log4j等进程内来源）
+     * 与sendLog相同，只放入环形缓冲区后立即返回
+     */
+    void publishEvent(LogEvent event) {
+        if (event.message == null || (event.throwable == null && event.message.trim().isEmpty())) {
+            return;
+        }
+        logBuffer.publish(event);
+    }
+    
+    /**
+     * 分发线程主循环 - 从环形缓冲区取出日志事件，编码后分配序号存入重放缓冲区，合并成批后编码一次，放入每个会话的发送队列
+     * 批次达到字节阈值或等待时间达到linger期限时发送，以先到者为准
+     */
+    private void dispatchLoop() {
+        LogEventCodec.RecordWriter record = new LogEventCodec.RecordWriter();
+        List<LogEvent> batchEvents = new ArrayList<>();
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(config.batchLingerMs);
+        long batchDeadline = 0;
+        long batchFirstSequence = 0;
+        int batchBytes = 0;
+        long lastDropped = 0;
+        long lastDropReport = System.currentTimeMillis();
+        long nextMetricsTick = System.nanoTime();
+        
+        while (running) {
+            if (!joinRequests.isEmpty()) {
+                // 先把当前批次发给已有会话，保证补发的内容和之后的实时日志衔接且不重复
+                if (!batchEvents.isEmpty()) {
+                    flushBatch(batchEvents, batchFirstSequence);
+                    batchBytes = 0;
+                }
+                LogJoinRequest request;
+                while ((request = joinRequests.poll()) != null) {
+                    joinSession(request);
+                }
+            }
+            
+            LogEvent event = logBuffer.poll();
+            if (event != null) {
+                recordForwarded(event);
+                event = encodeRecord(record, event);
+                long sequence = replayBuffer.append(record.buffer(), record.length());
+                lastSequence = sequence;
+                if (batchEvents.isEmpty()) {
+                    batchDeadline = System.nanoTime() + lingerNanos;
+                    batchFirstSequence = sequence;
+                }
+                batchEvents.add(event);
+                // 以编码后的记录长度估算批次大小，文本帧的大小与之相近
+                batchBytes += record.length();
+                if (batchBytes >= config.batchMaxBytes) {
+                    flushBatch(batchEvents, batchFirstSequence);
+                    batchBytes = 0;
+                }
+            } else if (!batchEvents.isEmpty()) {
+                long remaining = batchDeadline - System.nanoTime();
+                if (remaining <= 0) {
+                    flushBatch(batchEvents, batchFirstSequence);
+                    batchBytes = 0;
+                } else {
+                    logBuffer.awaitNotEmpty(remaining);
+                }
+            } else {
+                logBuffer.awaitNotEmpty(TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            
+            long nowNanos = System.nanoTime();
+            if (nowNanos - nextMetricsTick >= 0) {
+                metrics.tick(getBytesSent(), nowNanos);
+                nextMetricsTick = nowNanos + METRICS_TICK_NANOS;
+            }
+            
+            // 每10秒最多报告一次丢弃情况，避免警告本身造成日志风暴
+            long now = System.currentTimeMillis();
+            if (now - lastDropReport >= 10000) {
+                long dropped = logBuffer.getDroppedCount();
+                if (dropped > lastDropped) {
+                    plugin.getLogger().warning("日志缓冲区已满，丢弃了 " + (dropped - lastDropped) + " 条日志");
+                    lastDropped = dropped;
+                }
+                lastDropReport = now;
+            }
+        }
+    }
     
-    public PluginMode(Plugin plugin, ConfigManager.PluginConfig config) {
-        this.plugin = plugin;
-        this.config = config;
+    /**
+     * 记录转发的行数；带时间戳的Log4j事件同时记录从产生到被分发的延迟（纯文本行的时间戳只精确到秒，不计入）
+     */
+    private void recordForwarded(LogEvent event) {
+        metrics.linesForwarded.increment();
+        if (!event.isPlainLine()) {
+            metrics.logLatency.recordMicros((System.currentTimeMillis() - event.timestamp) * 1000);
+        }
     }
     
     /**
-     * 启动插件模式
+     * 把事件编码为重放缓冲区的记录（时间戳为绝对值）
+     * 超过单条记录上限时改为截断后的纯文本，保证重放时每条记录都能完整解码
+     * @return 实际编码的事件
      */
-    public void start() {
-        executor = Executors.newCachedThreadPool();
-        running = true;
-        
-        // 启动网络服务器
-        try {
-            serverSocket = new ServerSocket(config.listenPort);
-            plugin.getLogger().info("监听端口: " + config.listenPort + "，等待远程控制端连接...");
-        } catch (IOException e) {
-            plugin.getLogger().severe("无法启动网络服务器: " + e.getMessage());
-            return;
+    private LogEvent encodeRecord(LogEventCodec.RecordWriter record, LogEvent event) {
+        record.reset();
+        record.writeRecord(event, nameTable, 0);
+        int maxBytes = replayBuffer.getMaxRecordBytes();
+        if (record.length() <= maxBytes) {
+            return event;
         }
-        
-        // 启动日志文件监控
-        logFileMonitor = new LogFileMonitor();
-        logFileMonitor.start();
-        
-        // 接受客户端连接
-        executor.submit(this::acceptConnections);
-        
-        // 启动命令接收线程
-        executor.submit(this::receiveCommands);
-        
-        plugin.getLogger().info("RCONPro 插件模式已启动，等待远程控制端连接并提供RCON密码");
+        // 预留级别和长度前缀的空间
+        byte[] bytes = event.toLine().getBytes(StandardCharsets.UTF_8);
+        int length = LogFileTailer.completeUtf8Length(bytes, Math.min(bytes.length, maxBytes - 16));
+        LogEvent truncated = LogEvent.ofLine(new String(bytes, 0, length, StandardCharsets.UTF_8));
+        record.reset();
+        record.writeRecord(truncated, nameTable, 0);
+        return truncated;
     }
     
     /**
-     * 接受客户端连接
+     * 发送当前批次
+     * 没有订阅的会话共享同一组帧；有订阅的会话先按订阅过滤，只编码匹配的日志，
+     * 过滤后按序号连续的段分别成帧，保证每帧内的序号仍然连续
      */
-    private void acceptConnections() {
-        while (running) {
-            try {
-                Socket socket = serverSocket.accept();
-                plugin.getLogger().info("远程控制端已连接: " + socket.getRemoteSocketAddress());
-                
-                synchronized (this) {
-                    if (clientSocket != null && !clientSocket.isClosed()) {
-                        socket.close();
-                        continue;
-                    }
-                    clientSocket = socket;
-                    // 设置Socket选项以保持连接
-                    socket.setKeepAlive(true);
-                    socket.setTcpNoDelay(true);
-                    socket.setSoTimeout(0); // 无读取超时
-                    clientInput = new DataInputStream(socket.getInputStream());
-                    clientOutput = new DataOutputStream(socket.getOutputStream());
-                    
-                    // 发送连接成功测试消息（使用原始流，避免被SystemOutCapture捕获）
-                    try {
-                        NetworkProtocol.sendMessage(clientOutput, NetworkProtocol.MSG_LOG, "=== 远程控制端已连接，开始接收日志 ===");
-                    } catch (IOException e) {
-                        plugin.getLogger().warning("发送连接消息失败: " + e.getMessage());
-                    }
-                }
-            } catch (IOException e) {
-                if (running) {
-                    plugin.getLogger().warning("接受连接时出错: " + e.getMessage());
+    private void flushBatch(List<LogEvent> batchEvents, long firstSequence) {
+        BatchFrames shared = new BatchFrames(batchEvents, firstSequence);
+        NameDefinitions definitions = new NameDefinitions();
+        
+        for (ClientSession session : sessions) {
+            if (!session.isReceivingLogs()) {
+                continue;
+            }
+            LogSubscription subscription = session.getSubscription();
+            if (subscription == null) {
+                shared.sendTo(session, definitions);
+                continue;
+            }
+            int runStart = -1;
+            for (int i = 0; i <= batchEvents.size(); i++) {
+                boolean matched = i < batchEvents.size() && subscription.test(batchEvents.get(i));
+                if (matched && runStart < 0) {
+                    runStart = i;
+                } else if (!matched && runStart >= 0) {
+                    new BatchFrames(batchEvents.subList(runStart, i), firstSequence + runStart).sendTo(session, definitions);
+                    runStart = -1;
                 }
             }
         }
+        
+        batchEvents.clear();
     }
     
     /**
-     * 接收来自远程控制端的命令
+     * 一段序号连续的日志在各种格式下的帧，按会话的能力选用，每种帧只在有会话需要时编码一次
+     * 支持结构化事件的控制端使用MSG_LOG_EVENTS帧（必要时先补发名称定义）；
+     * 支持序号的使用MSG_LOG_SEQ_BATCH帧，只支持批量的使用MSG_LOG_BATCH帧；旧版控制端逐行发送MSG_LOG
      */
-    private void receiveCommands() {
-        while (running) {
-            try {
-                synchronized (this) {
-                    if (clientSocket == null || clientSocket.isClosed() || clientInput == null) {
-                        Thread.sleep(1000);
-                        continue;
+    private class BatchFrames {
+        private final List<LogEvent> events;
+        private final long firstSequence;
+        private byte[] eventFrame;
+        private NetworkProtocol.BatchBuilder textBatch;
+        private byte[] sequencedFrame;
+        private byte[] batchFrame;
+        private byte[][] lineFrames;
+        
+        BatchFrames(List<LogEvent> events, long firstSequence) {
+            this.events = events;
+            this.firstSequence = firstSequence;
+        }
+        
+        void sendTo(ClientSession session, NameDefinitions definitions) {
+            if (session.hasCapability(NetworkProtocol.CAP_EVENTS)) {
+                if (eventFrame == null) {
+                    LogEventCodec.EventBatchBuilder builder = new LogEventCodec.EventBatchBuilder();
+                    for (LogEvent event : events) {
+                        builder.add(event, nameTable);
                     }
+                    eventFrame = builder.toFrame(firstSequence);
                 }
-                
-                NetworkProtocol.Message msg = NetworkProtocol.receiveMessage(clientInput);
-                
-                if (msg.type == NetworkProtocol.MSG_RCON_CONFIG) {
-                    // 收到RCON配置，解析并连接
-                    handleRCONConfig(msg.content);
-                } else if (msg.type == NetworkProtocol.MSG_COMMAND) {
-                    // 通过RCON发送命令
-                    if (rconClient != null && rconClient.isConnected()) {
-                        String response = rconClient.sendCommand(msg.content);
-                        plugin.getLogger().info("执行命令: " + msg.content);
-                        
-                        // 将RCON响应转发到远程控制端
-                        if (response != null && !response.trim().isEmpty()) {
-                            // 直接发送，不使用sendLog（避免被SystemOutCapture捕获）
-                            synchronized (this) {
-                                if (clientOutput != null && clientSocket != null && !clientSocket.isClosed()) {
-                                    try {
-                                        NetworkProtocol.sendMessage(clientOutput, NetworkProtocol.MSG_LOG, response);
-                                    } catch (IOException e) {
-                                        plugin.getLogger().warning("发送RCON响应失败: " + e.getMessage());
-                                    }
-                                }
-                            }
-                        } else {
-                            // 即使响应为空，也发送一个空响应标记
-                            synchronized (this) {
-                                if (clientOutput != null && clientSocket != null && !clientSocket.isClosed()) {
-                                    try {
-                                        NetworkProtocol.sendMessage(clientOutput, NetworkProtocol.MSG_LOG, "[RCON Response] (empty)");
-                                    } catch (IOException e) {
-                                        // 忽略
-                                    }
-                                }
-                            }
-                        }
-                    } else {
-                        plugin.getLogger().warning("RCON未连接，无法执行命令: " + msg.content);
-                        // 发送错误消息到控制端
-                        sendLog("[ERROR] RCON未连接，无法执行命令: " + msg.content);
-                    }
-                } else if (msg.type == NetworkProtocol.MSG_PING) {
-                    // 响应心跳
-                    synchronized (this) {
-                        if (clientOutput != null) {
-                            NetworkProtocol.sendMessage(clientOutput, NetworkProtocol.MSG_PONG, "");
-                        }
-                    }
+                definitions.sendTo(session);
+                session.offer(eventFrame);
+                return;
+            }
+            if (textBatch == null) {
+                textBatch = new NetworkProtocol.BatchBuilder();
+                for (LogEvent event : events) {
+                    textBatch.add(event.toLine());
                 }
-            } catch (IOException e) {
-                synchronized (this) {
-                    if (clientSocket != null) {
-                        plugin.getLogger().warning("客户端连接断开: " + e.getMessage());
-                        try {
-                            if (!clientSocket.isClosed()) {
-                                clientSocket.close();
-                            }
-                        } catch (IOException ex) {
-                            // 忽略
-                        }
-                        clientSocket = null;
-                        clientInput = null;
-                        clientOutput = null;
+            }
+            if (session.hasCapability(NetworkProtocol.CAP_SEQ)) {
+                if (sequencedFrame == null) {
+                    sequencedFrame = textBatch.toSequencedFrame(firstSequence);
+                }
+                session.offer(sequencedFrame);
+            } else if (session.hasCapability(NetworkProtocol.CAP_BATCH)) {
+                if (batchFrame == null) {
+                    batchFrame = textBatch.toFrame();
+                }
+                session.offer(batchFrame);
+            } else {
+                if (lineFrames == null) {
+                    lineFrames = new byte[events.size()][];
+                    for (int i = 0; i < lineFrames.length; i++) {
+                        lineFrames[i] = NetworkProtocol.encode(NetworkProtocol.MSG_LOG, events.get(i).toLine());
                     }
                 }
-                // 等待新连接，不退出循环
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException ie) {
-                    break;
+                for (byte[] frame : lineFrames) {
+                    session.offer(frame);
                 }
-            } catch (InterruptedException e) {
-                break;
             }
         }
     }
     
     /**
-     * 处理RCON配置
-     * 控制端发送的是RCON密码，插件使用配置中的host和port
+     * 补发会话断线期间（或旧版控制端连接后到加入前）的日志，然后开始推送实时日志（只能在分发线程中调用）
+     * 续传时需要的日志已被覆盖则先发送MSG_LOG_LOST，告知控制端丢失的行数
      */
-    private void handleRCONConfig(String rconPassword) {
-        if (rconPassword == null || rconPassword.isEmpty()) {
-            plugin.getLogger().warning("收到空的RCON密码");
+    private void joinSession(LogJoinRequest request) {
+        ClientSession session = request.session;
+        if (session.isClosed()) {
             return;
         }
-        
-        plugin.getLogger().info("收到RCON密码，准备连接RCON服务器 " + config.rconHost + ":" + config.rconPort);
-        
-        // 如果已有RCON连接，先断开
-        if (rconClient != null) {
-            rconClient.disconnect();
+        if (request.afterSequence >= 0) {
+            boolean resume = session.hasCapability(NetworkProtocol.CAP_SEQ);
+            long lost = resume ? replayBuffer.countEvictedSince(request.afterSequence) : 0;
+            if (lost > 0) {
+                // 和补发的日志放入同一个队列，保证丢失提示出现在补发内容之前
+                session.offer(NetworkProtocol.encode(NetworkProtocol.MSG_LOG_LOST, Long.toString(lost)));
+            }
+            
+            ReplayWriter replay = new ReplayWriter(session);
+            long replayed = replayBuffer.replaySince(request.afterSequence, replay::add);
+            replay.flush();
+            if (resume) {
+                metrics.sessionsResumed.increment();
+            }
+            if (replayed > 0 || lost > 0) {
+                plugin.getLogger().info("会话 " + session.getRemoteAddress() + (resume ? " 续传" : " 加入") + ": 补发 " + replayed
+                        + " 行日志" + (lost > 0 ? "，" + lost + " 行已被覆盖" : ""));
+            }
         }
-        
-        // 在后台线程中连接RCON（带重试）
-        final String finalHost = config.rconHost;
-        final int finalPort = config.rconPort;
-        final String finalPassword = rconPassword;
-        
-        executor.submit(() -> {
-            rconClient = new RCONClient(finalHost, finalPort, finalPassword, plugin.getLogger());
-            plugin.getLogger().info("正在连接RCON服务器 " + finalHost + ":" + finalPort + "...");
-            rconClient.connectWithRetry(5000); // 5秒重试间隔
-            plugin.getLogger().info("已连接到RCON服务器");
-        });
+        if (session.hasCapability(NetworkProtocol.CAP_EVENTS)) {
+            new NameDefinitions().sendTo(session);
+        }
+        session.setReceivingLogs(true);
     }
     
     /**
-     * 发送日志到远程控制端
+     * 一次发送中共享的名称定义帧，已收到相同数量定义的会话共用同一个帧
      */
-    void sendLog(String logMessage) {
-        if (logMessage == null || logMessage.trim().isEmpty()) {
-            return;
-        }
+    private class NameDefinitions {
+        private int fromIndex = -1;
+        private byte[] frame;
         
-        synchronized (this) {
-            // 检查客户端是否已连接
-            if (clientOutput == null || clientSocket == null || clientSocket.isClosed()) {
-                // 客户端未连接，不发送（这是正常的，因为SystemOutCapture在客户端连接前就启动了）
+        void sendTo(ClientSession session) {
+            int defined = session.getDefinedNames();
+            if (defined >= nameTable.size()) {
                 return;
             }
-            
+            if (frame == null || fromIndex != defined) {
+                fromIndex = defined;
+                frame = nameTable.encodeDefinitions(defined);
+            }
+            // 定义不能丢弃，否则之后引用这些名称的事件帧都无法解码；走不受队列上限限制的控制通道
+            session.offerControl(frame);
+            session.setDefinedNames(nameTable.size());
+        }
+    }
+    
+    /**
+     * 把重放缓冲区中的记录按会话支持的格式重新打包为带序号的批次；不支持序号的会话使用不带序号的批次或逐行发送
+     * 有订阅时跳过不匹配的记录，并在跳过处结束当前批次，保证每帧内的序号连续
+     */
+    private class ReplayWriter {
+        private final ClientSession session;
+        private final LogSubscription subscription;
+        private final boolean events;
+        private final boolean sequenced;
+        private final boolean batched;
+        private final LogEventCodec.EventBatchBuilder eventBatch = new LogEventCodec.EventBatchBuilder();
+        private final NetworkProtocol.BatchBuilder textBatch = new NetworkProtocol.BatchBuilder();
+        private final NameDefinitions definitions = new NameDefinitions();
+        private long firstSequence;
+        
+        ReplayWriter(ClientSession session) {
+            this.session = session;
+            this.subscription = session.getSubscription();
+            this.events = session.hasCapability(NetworkProtocol.CAP_EVENTS);
+            this.sequenced = session.hasCapability(NetworkProtocol.CAP_SEQ);
+            this.batched = session.hasCapability(NetworkProtocol.CAP_BATCH);
+        }
+        
+        void add(long sequence, byte[] bytes, int length) {
+            LogEvent event;
             try {
-                NetworkProtocol.sendMessage(clientOutput, NetworkProtocol.MSG_LOG, logMessage);
+                event = new LogEventCodec.RecordReader(bytes, 0, length).readRecord(nameTable, 0);
             } catch (IOException e) {
-                // 连接可能已断开，清理连接状态
-                plugin.getLogger().warning("发送日志失败: " + e.getMessage());
-                try {
-                    if (clientSocket != null && !clientSocket.isClosed()) {
-                        clientSocket.close();
-                    }
-                } catch (IOException ex) {
-                    // 忽略
+                // 记录都由分发线程写入，不应出现；跳过无法解码的记录
+                return;
+            }
+            if (subscription != null && !subscription.test(event)) {
+                flush();
+                return;
+            }
+            if (isEmpty()) {
+                firstSequence = sequence;
+            }
+            if (events) {
+                eventBatch.add(event, nameTable);
+                if (eventBatch.size() >= config.batchMaxBytes) {
+                    flush();
                 }
-                clientSocket = null;
-                clientInput = null;
-                clientOutput = null;
+            } else if (!sequenced && !batched) {
+                session.offer(NetworkProtocol.encode(NetworkProtocol.MSG_LOG, event.toLine()));
+            } else {
+                textBatch.add(event.toLine());
+                if (textBatch.size() >= config.batchMaxBytes) {
+                    flush();
+                }
+            }
+        }
+        
+        private boolean isEmpty() {
+            return events ? eventBatch.isEmpty() : textBatch.isEmpty();
+        }
+        
+        void flush() {
+            if (isEmpty()) {
+                return;
             }
+            if (events) {
+                definitions.sendTo(session);
+                session.offer(eventBatch.toFrame(firstSequence));
+                eventBatch.reset();
+            } else {
+                session.offer(sequenced ? textBatch.toSequencedFrame(firstSequence) : textBatch.toFrame());
+                textBatch.reset();
+            }
+        }
+    }
+    
+    /**
+     * 发给控制端的累计字节数（压缩后），包括已关闭的会话
+     */
+    public long getBytesSent() {
+        long total = metrics.closedBytesSent.sum();
+        for (ClientSession session : sessions) {
+            total += session.getWireBytesOut();
+        }
+        return total;
+    }
+    
+    /**
+     * 因控制端跟不上而丢弃的日志帧总数，包括已关闭的会话
+     */
+    public long getFramesDropped() {
+        long total = metrics.closedFramesDropped.sum();
+        for (ClientSession session : sessions) {
+            total += session.getDroppedFrames();
+        }
+        return total;
+    }
+    
+    public PluginMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * 多行文本形式的运行统计（MSG_STATS、/rconpro stats和JMX共用）
+     */
+    public String getStatsSummary() {
+        StringBuilder text = new StringBuilder("=== RCONPro 运行统计 ===");
+        text.append("\n日志: 转发 ").append(metrics.linesForwarded.sum()).append(" 行（")
+                .append(String.format("%.1f", metrics.getLinesPerSecond())).append(" 行/秒）")
+                .append("，积压 ").append(getLogQueueDepth()).append("，丢弃 ").append(getLogDroppedCount());
+        if (metrics.logLatency.getCount() > 0) {
+            text.append("\n日志延迟: ").append(metrics.logLatency.summary());
+        }
+        if (logFileMonitor != null) {
+            text.append("\n日志文件: 读取 ").append(metrics.fileLinesRead.sum()).append(" 行/")
+                    .append(metrics.fileBytesRead.sum()).append(" 字节，重新打开 ").append(metrics.fileReopens.sum()).append(" 次");
+        }
+        text.append("\n会话: 当前 ").append(sessions.size()).append("，累计接入 ").append(metrics.sessionsAccepted.sum())
+                .append("，续传 ").append(metrics.sessionsResumed.sum())
+                .append("，发送 ").append(getBytesSent()).append(" 字节（")
+                .append(String.format("%.0f", metrics.getBytesPerSecond())).append(" 字节/秒）")
+                .append("，丢弃帧 ").append(getFramesDropped())
+                .append("，心跳超时断开 ").append(metrics.sessionsTimedOut.sum());
+        if (metrics.keepaliveRtt.getCount() > 0) {
+            text.append("\n心跳往返: ").append(metrics.keepaliveRtt.summary());
+        }
+        CommandBackend backend = commandBackend;
+        text.append("\n命令(").append(config.commandBackend).append("): ").append(metrics.commandLatency.summary())
+                .append("，失败 ").append(metrics.commandFailures.sum());
+        if (backend instanceof BukkitCommandBackend) {
+            text.append("，").append(backend.getStats());
+            text.append("\n").append(commandScheduler.getStats());
+        }
+        text.append("\nRCON连接: 新建 ").append(metrics.rconConnects.sum()).append("，连接失败 ").append(metrics.rconConnectFailures.sum())
+                .append("，断开 ").append(metrics.rconDisconnects.sum());
+        text.append("\nRCON连接池: ").append(getRconPoolStats());
+        text.append("\n历史查询: ").append(history.getStats());
+        return text.toString();
+    }
+    
+    /**
+     * 日志缓冲区当前积压数量
+     */
+    public int getLogQueueDepth() {
+        return logBuffer.size();
+    }
+    
+    /**
+     * 因缓冲区满而丢弃的日志总数
+     */
+    public long getLogDroppedCount() {
+        return logBuffer.getDroppedCount();
+    }
+    
+    /**
+     * JMX统计，只读取指标和当前状态
+     */
+    private class Stats implements RCONProStatsMXBean {
+        @Override
+        public long getLinesForwarded() {
+            return metrics.linesForwarded.sum();
+        }
+        
+        @Override
+        public double getLinesPerSecond() {
+            return metrics.getLinesPerSecond();
+        }
+        
+        @Override
+        public int getLogQueueDepth() {
+            return PluginMode.this.getLogQueueDepth();
+        }
+        
+        @Override
+        public long getLogDropped() {
+            return getLogDroppedCount();
+        }
+        
+        @Override
+        public long getLogLatencyP50Micros() {
+            return metrics.logLatency.getPercentileMicros(50);
+        }
+        
+        @Override
+        public long getLogLatencyP99Micros() {
+            return metrics.logLatency.getPercentileMicros(99);
+        }
+        
+        @Override
+        public long getLogLatencyMaxMicros() {
+            return metrics.logLatency.getMaxMicros();
+        }
+        
+        @Override
+        public long getLogFileLinesRead() {
+            return metrics.fileLinesRead.sum();
+        }
+        
+        @Override
+        public long getLogFileBytesRead() {
+            return metrics.fileBytesRead.sum();
+        }
+        
+        @Override
+        public long getLogFileReopens() {
+            return metrics.fileReopens.sum();
+        }
+        
+        @Override
+        public int getActiveSessions() {
+            return sessions.size();
+        }
+        
+        @Override
+        public long getSessionsAccepted() {
+            return metrics.sessionsAccepted.sum();
+        }
+        
+        @Override
+        public long getSessionsResumed() {
+            return metrics.sessionsResumed.sum();
+        }
+        
+        @Override
+        public long getBytesSent() {
+            return PluginMode.this.getBytesSent();
+        }
+        
+        @Override
+        public double getBytesSentPerSecond() {
+            return metrics.getBytesPerSecond();
+        }
+        
+        @Override
+        public long getFramesDropped() {
+            return PluginMode.this.getFramesDropped();
+        }
+        
+        @Override
+        public long getSessionsTimedOut() {
+            return metrics.sessionsTimedOut.sum();
+        }
+        
+        @Override
+        public long getKeepaliveRttP50Micros() {
+            return metrics.keepaliveRtt.getPercentileMicros(50);
+        }
+        
+        @Override
+        public long getKeepaliveRttP99Micros() {
+            return metrics.keepaliveRtt.getPercentileMicros(99);
+        }
+        
+        @Override
+        public String getCommandBackend() {
+            return config.commandBackend.name();
+        }
+        
+        @Override
+        public long getCommands() {
+            return metrics.commandLatency.getCount();
+        }
+        
+        @Override
+        public long getCommandFailures() {
+            return metrics.commandFailures.sum();
+        }
+        
+        @Override
+        public long getCommandLatencyP50Micros() {
+            return metrics.commandLatency.getPercentileMicros(50);
+        }
+        
+        @Override
+        public long getCommandLatencyP99Micros() {
+            return metrics.commandLatency.getPercentileMicros(99);
+        }
+        
+        @Override
+        public long getCommandLatencyP999Micros() {
+            return metrics.commandLatency.getPercentileMicros(99.9);
+        }
+        
+        @Override
+        public long getCommandLatencyMaxMicros() {
+            return metrics.commandLatency.getMaxMicros();
+        }
+        
+        @Override
+        public int getInteractiveQueueDepth() {
+            return commandScheduler.getQueueDepth(TickCommandScheduler.Lane.INTERACTIVE);
+        }
+        
+        @Override
+        public long getInteractiveWaitP99Micros() {
+            return commandScheduler.getWaitHistogram(TickCommandScheduler.Lane.INTERACTIVE).getPercentileMicros(99);
+        }
+        
+        @Override
+        public int getBulkQueueDepth() {
+            return commandScheduler.getQueueDepth(TickCommandScheduler.Lane.BULK);
+        }
+        
+        @Override
+        public long getBulkWaitP99Micros() {
+            return commandScheduler.getWaitHistogram(TickCommandScheduler.Lane.BULK).getPercentileMicros(99);
+        }
+        
+        @Override
+        public long getRconConnects() {
+            return metrics.rconConnects.sum();
+        }
+        
+        @Override
+        public long getRconConnectFailures() {
+            return metrics.rconConnectFailures.sum();
+        }
+        
+        @Override
+        public long getRconDisconnects() {
+            return metrics.rconDisconnects.sum();
+        }
+        
+        @Override
+        public String getRconPoolStats() {
+            return PluginMode.this.getRconPoolStats();
+        }
+        
+        @Override
+        public String getSummary() {
+            return getStatsSummary();
+        }
+    }
+    
+    /**
+     * 日志推送加入请求
+     */
+    private static class LogJoinRequest {
+        final ClientSession session;
+        final long afterSequence;
+        
+        LogJoinRequest(ClientSession session, long afterSequence) {
+            this.session = session;
+            this.afterSequence = afterSequence;
         }
     }
     
@@ -254,19 +1547,19 @@ public class PluginMode {
      */
     private class LogFileMonitor {
         private Path logFile;
-        private long lastPosition = 0;
+        private LogFileTailer tailer;
         private WatchService watchService;
-        private boolean monitoring = false;
+        private volatile boolean monitoring = false;
         
         public LogFileMonitor() {
-            // 获取服务器根目录下的logs/latest.log
-            File serverDir = new File(".").getAbsoluteFile();
-            logFile = Paths.get(serverDir.getParent(), "logs", "latest.log");
-            
-            // 如果找不到，尝试当前目录
-            if (!Files.exists(logFile)) {
-                logFile = Paths.get("logs", "latest.log");
-            }
+            logFile = resolveLatestLog();
+            tailer = new LogFileTailer(logFile, this::onLine,
+                    config.logTailBufferSize, LogFileTailer.DEFAULT_MAX_LINE_BYTES);
+        }
+        
+        private void onLine(String line) {
+            metrics.fileLinesRead.increment();
+            sendLog(line);
         }
         
         public void start() {
@@ -276,26 +1569,50 @@ public class PluginMode {
                 plugin.getLogger().info("开始监控日志文件: " + logFile);
                 // 初始化位置到文件末尾
                 try {
-                    lastPosition = Files.size(logFile);
+                    tailer.seekToEnd();
                 } catch (IOException e) {
                     plugin.getLogger().warning("无法获取日志文件大小: " + e.getMessage());
                 }
             }
             
+            // 优先使用文件变更通知，注册失败时只靠轮询
+            try {
+                Path dir = logFile.toAbsolutePath().getParent();
+                watchService = dir.getFileSystem().newWatchService();
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException | UnsupportedOperationException e) {
+                plugin.getLogger().warning("无法监听日志目录变更，改为轮询: " + e.getMessage());
+                watchService = null;
+            }
+            
             monitoring = true;
             executor.submit(this::monitorLoop);
         }
         
+        /**
+         * 等待文件变更通知或轮询超时后读取新内容
+         * 有新内容时按最短间隔轮询，空闲时间隔逐步翻倍到上限，兼顾延迟和空闲开销
+         * （部分平台的WatchService本身就是低频轮询，超时轮询保证延迟不超过上限）
+         */
         private void monitorLoop() {
+            long minInterval = 100;
+            long maxInterval = Math.max(minInterval, config.logTailMaxPollMs);
+            long interval = minInterval;
             while (running && monitoring) {
                 try {
-                    if (Files.exists(logFile)) {
-                        // 读取新增内容
-                        readNewLines();
+                    boolean maybeReplaced = awaitChange(interval);
+                    // 先读完旧文件剩余的内容再切换到新文件
+                    long read = Math.max(0, tailer.poll());
+                    if (maybeReplaced && tailer.reopenIfReplaced()) {
+                        metrics.fileReopens.increment();
+                        plugin.getLogger().info("日志文件已重新创建，从头开始读取: " + logFile);
+                        read += Math.max(0, tailer.poll());
                     }
-                    // 每100ms检查一次
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
+                    if (read > 0) {
+                        metrics.fileBytesRead.add(read);
+                    }
+                    interval = read > 0 ? minInterval : Math.min(maxInterval, interval * 2);
+                } catch (InterruptedException | ClosedWatchServiceException e) {
                     break;
                 } catch (Exception e) {
                     plugin.getLogger().warning("监控日志文件时出错: " + e.getMessage());
@@ -306,49 +1623,34 @@ public class PluginMode {
                     }
                 }
             }
+            tailer.close();
         }
         
-        private void readNewLines() {
-            try {
-                long currentSize = Files.size(logFile);
-                
-                if (currentSize < lastPosition) {
-                    // 文件被截断（可能是日志轮转），从头开始
-                    lastPosition = 0;
-                }
-                
-                if (currentSize > lastPosition) {
-                    // 有新内容，读取并转发
-                    try (RandomAccessFile raf = new RandomAccessFile(logFile.toFile(), "r")) {
-                        raf.seek(lastPosition);
-                        
-                        // 读取新增的字节
-                        byte[] buffer = new byte[(int)(currentSize - lastPosition)];
-                        int bytesRead = raf.read(buffer);
-                        
-                        if (bytesRead > 0) {
-                            // 转换为UTF-8字符串
-                            String newContent = new String(buffer, 0, bytesRead, StandardCharsets.UTF_8);
-                            
-                            // 按行分割并转发
-                            String[] lines = newContent.split("\n", -1);
-                            for (int i = 0; i < lines.length; i++) {
-                                String line = lines[i];
-                                // 如果不是最后一行，或者最后一行不为空，则转发
-                                if (i < lines.length - 1 || !line.isEmpty()) {
-                                    if (!line.trim().isEmpty()) {
-                                        sendLog(line);
-                                    }
-                                }
-                            }
-                            
-                            lastPosition = raf.getFilePointer();
-                        }
+        /**
+         * 等待变更通知，最多等待timeoutMs
+         * 轮询方式下和通知溢出（事件丢失）时无法得知是否重新创建，交给tailer比较文件标识
+         * @return 日志文件是否可能被重新创建
+         */
+        private boolean awaitChange(long timeoutMs) throws InterruptedException {
+            if (watchService == null) {
+                Thread.sleep(timeoutMs);
+                return true;
+            }
+            WatchKey key = watchService.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            boolean recreated = false;
+            Path name = logFile.getFileName();
+            while (key != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || event.kind() == StandardWatchEventKinds.ENTRY_CREATE && name.equals(event.context())) {
+                        recreated = true;
                     }
                 }
-            } catch (IOException e) {
-                // 文件可能正在被写入，忽略错误
+                key.reset();
+                // 合并已经到达的其余通知
+                key = watchService.poll();
             }
+            return recreated;
         }
         
         public void stop() {
@@ -369,37 +1671,49 @@ public class PluginMode {
     public void stop() {
         running = false;
         
-        // 停止日志文件监控
+        // 停止日志来源
         if (logFileMonitor != null) {
             logFileMonitor.stop();
         }
+        if (systemOutCapture != null) {
+            systemOutCapture.stop();
+        }
+        if (log4jCapture != null) {
+            log4jCapture.stop();
+        }
         
-        if (rconClient != null) {
-            rconClient.disconnect();
+        if (rconPool != null) {
+            plugin.getLogger().info("RCON连接池: " + rconPool.getStats());
+            rconPool.close();
+        }
+        if (commandBackend instanceof BukkitCommandBackend) {
+            plugin.getLogger().info("命令: " + commandBackend.getStats());
+            commandBackend.close();
         }
+        commandScheduler.stop();
+        history.close();
         
-        synchronized (this) {
-            try {
-                if (clientSocket != null) {
-                    clientSocket.close();
-                }
-            } catch (IOException e) {
-                // 忽略
+        for (ClientSession session : sessions) {
+            session.close();
+        }
+        sessions.clear();
+        
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
             }
-            
-            try {
-                if (serverSocket != null) {
-                    serverSocket.close();
-                }
-            } catch (IOException e) {
-                // 忽略
+            if (selector != null) {
+                selector.close();
             }
+        } catch (IOException e) {
+            // 忽略
         }
         
         if (executor != null) {
             executor.shutdown();
         }
         
+        unregisterStatsMBean();
         plugin.getLogger().info("RCONPro 插件模式已停止");
     }
 }
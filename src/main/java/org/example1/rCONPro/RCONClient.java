@@ -4,34 +4,70 @@ import java.io.*;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
  * RCON客户端 - 用于连接MC服务器的RCON
+ * 原版/Paper的RCON每次read最多读取1460字节，并要求读到的恰好是一个完整的数据包，否则直接关闭连接；
+ * 因此每次只写出一个数据包，并且在它收到响应之前不写出下一个：一个连接上同一时刻只有一个请求在途，
+ * 需要并发时使用多个连接（见RCONConnectionPool）
  */
 public class RCONClient {
-    private Socket socket;
+    public static final long DEFAULT_REQUEST_TIMEOUT_MS = 10000;
+    // 原版RCON单次读取的上限，请求包（含长度字段）不能超过它
+    static final int MAX_REQUEST_PACKET_SIZE = 1460;
+    // 原版按4096个字符拆分命令输出，不足4096字节的分片一定是最后一个
+    private static final int RESPONSE_CHUNK_CHARS = 4096;
+    
+    private volatile Socket socket;
     private DataInputStream input;
-    private DataOutputStream output;
+    private volatile DataOutputStream output;
     private String host;
     private int port;
     private String password;
-    private int requestId = 0;
+    private final AtomicInteger requestId = new AtomicInteger();
     private Logger logger;
-    private boolean connected = false;
+    private volatile boolean connected = false;
+    private volatile boolean authFailed = false;
+    // 等待发出的请求，按提交顺序逐个发出
+    private final Queue<PendingRequest> backlog = new ConcurrentLinkedQueue<>();
+    // 当前在途的请求（由requestLock保护），完成后才发出下一个
+    private final Object requestLock = new Object();
+    private PendingRequest current;
+    private final long requestTimeoutMs;
+    // 命令延迟和连接统计，为null时不记录
+    private final PluginMetrics metrics;
+    private Thread readerThread;
     
     public RCONClient(String host, int port, String password) {
-        this.host = host;
-        this.port = port;
-        this.password = password;
-        this.logger = null;
+        this(host, port, password, null);
     }
     
     public RCONClient(String host, int port, String password, Logger logger) {
+        this(host, port, password, logger, DEFAULT_REQUEST_TIMEOUT_MS, null);
+    }
+    
+    /**
+     * @param requestTimeoutMs 单个请求的超时时间
+     * @param metrics 记录命令延迟、失败和断线次数
+     */
+    public RCONClient(String host, int port, String password, Logger logger, long requestTimeoutMs, PluginMetrics metrics) {
         this.host = host;
         this.port = port;
         this.password = password;
         this.logger = logger;
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.metrics = metrics;
     }
     
     /**
@@ -58,19 +94,29 @@ public class RCONClient {
     
     /**
      * 连接到RCON服务器
+     * 认证成功后启动后台读取线程，之后的请求都是异步的
      */
-    public boolean connect() {
+    public synchronized boolean connect() {
         disconnect(); // 先断开旧连接
         
         try {
             socket = new Socket(host, port);
-            socket.setSoTimeout(10000); // 10秒超时
-            input = new DataInputStream(socket.getInputStream());
-            output = new DataOutputStream(socket.getOutputStream());
+            // 每个请求只有一个小数据包，不能等待合并（否则与服务器的延迟确认叠加，每个请求多出几十毫秒）
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(10000); // 认证阶段10秒超时
+            input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
             
             // 发送认证
             boolean authSuccess = authenticate();
-            connected = authSuccess;
+            if (authSuccess) {
+                // 之后的超时由每个请求自己控制，读取线程可以无限等待
+                socket.setSoTimeout(0);
+                connected = true;
+                startReader();
+            } else {
+                disconnect();
+            }
             return authSuccess;
         } catch (IOException e) {
             String errorMsg = "连接RCON服务器失败: " + e.getMessage();
@@ -84,6 +130,73 @@ public class RCONClient {
         }
     }
     
+    /**
+     * 启动后台读取线程，把响应分片交给当前在途的请求
+     * 不足4096字节的分片是命令的最后一个分片，请求随即完成；
+     * 满4096字符的分片之后可能还有分片，此时服务器已执行完命令、正在写出其余分片，写出哨兵包，
+     * 服务器写完所有分片后才会读到哨兵包，收到哨兵的响应即表示该命令的所有分片都已到达
+     */
+    private void startReader() {
+        final DataInputStream readerInput = input;
+        readerThread = new Thread(() -> {
+            try {
+                while (connected) {
+                    RCONPacket packet = receivePacket(readerInput);
+                    PendingRequest request;
+                    synchronized (requestLock) {
+                        request = current;
+                    }
+                    if (request == null) {
+                        continue;
+                    }
+                    if (request.sentinelId != 0 && packet.requestId == request.sentinelId) {
+                        request.finish();
+                    } else if (request.command != null && packet.requestId == request.requestId) {
+                        request.accept(packet.body);
+                        if (request.sentinelId == 0) {
+                            if (packet.body.length < RESPONSE_CHUNK_CHARS) {
+                                request.finish();
+                            } else {
+                                sendSentinel(request);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (connected) {
+                    connected = false;
+                    if (metrics != null) {
+                        metrics.rconDisconnects.increment();
+                    }
+                    String errorMsg = "RCON连接已断开: " + e.getMessage();
+                    if (logger != null) {
+                        logger.warning(errorMsg);
+                    } else {
+                        System.err.println(errorMsg);
+                    }
+                }
+            } finally {
+                failPending(new IOException("RCON连接已断开"));
+            }
+        }, "RCON-Reader-" + host + ":" + port);
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+    
+    private void failPending(Throwable cause) {
+        PendingRequest queued;
+        while ((queued = backlog.poll()) != null) {
+            queued.future.completeExceptionally(cause);
+        }
+        PendingRequest request;
+        synchronized (requestLock) {
+            request = current;
+        }
+        if (request != null) {
+            request.future.completeExceptionally(cause);
+        }
+    }
+    
     /**
      * 检查连接状态
      */
@@ -92,13 +205,25 @@ public class RCONClient {
     }
     
     /**
-     * 认证
+     * 最近一次连接是否因密码错误而失败
+     */
+    public boolean isAuthFailed() {
+        return authFailed;
+    }
+    
+    /**
+     * 认证（在读取线程启动前同步进行）
      */
     private boolean authenticate() {
         try {
-            sendPacket(3, password); // 3 = SERVERDATA_AUTH
-            RCONPacket response = receivePacket();
-            boolean success = response != null && response.requestId != -1;
+            sendPacket(requestId.incrementAndGet(), 3, password); // 3 = SERVERDATA_AUTH
+            RCONPacket response = receivePacket(input);
+            // 部分服务器会先发送一个空的RESPONSE_VALUE，再发送AUTH_RESPONSE
+            if (response.type == 0) {
+                response = receivePacket(input);
+            }
+            boolean success = response.requestId != -1;
+            authFailed = !success;
             if (!success && logger != null) {
                 logger.warning("RCON认证失败: 密码可能不正确");
             }
@@ -115,81 +240,271 @@ public class RCONClient {
     }
     
     /**
-     * 发送命令（带自动重连）
+     * 发送命令（带自动重连），阻塞直到收到响应
      */
     public String sendCommand(String command) {
-        if (!isConnected()) {
-            if (logger != null) {
-                logger.warning("RCON连接已断开，尝试重连...");
+        synchronized (this) {
+            if (!isConnected()) {
+                if (logger != null) {
+                    logger.warning("RCON连接已断开，尝试重连...");
+                }
+                connectWithRetry(5000); // 5秒重试间隔
             }
-            connectWithRetry(5000); // 5秒重试间隔
         }
         
         try {
-            sendPacket(2, command); // 2 = SERVERDATA_EXECCOMMAND
-            RCONPacket response = receivePacket();
-            if (response != null) {
-                return response.body;
+            return sendCommandAsync(command).get();
+        } catch (ExecutionException e) {
+            String errorMsg = "发送RCON命令失败: " + e.getCause().getMessage();
+            if (logger != null) {
+                logger.warning(errorMsg);
+            } else {
+                System.err.println(errorMsg);
             }
             return "";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+    
+    /**
+     * 异步发送命令，不阻塞调用线程
+     * 前一个命令尚未完成时按顺序排队
+     * @return 完整的响应内容（多个分片已拼接）；连接断开或超时时以异常完成
+     */
+    public CompletableFuture<String> sendCommandAsync(String command) {
+        StringBuilder response = new StringBuilder();
+        return sendCommandStreaming(command, response::append).thenApply(v -> response.toString());
+    }
+    
+    /**
+     * 异步发送命令，响应按分片逐个交给chunkConsumer（在读取线程中调用）
+     * 服务器会把超过4096个字符的输出拆成多个包；收到不足4096字节的分片即表示输出结束，
+     * 否则再发送一个空的RESPONSE_VALUE哨兵包，收到哨兵的响应即表示命令的所有分片都已到达，内存占用与输出大小无关
+     * 同一连接上的命令逐个执行，前一个完成后才发出下一个
+     * @return 所有分片交付完成时完成；连接断开或超时（从提交时开始计算）时以异常完成，
+     *         在途的请求超时后连接状态未知，连接随之关闭
+     */
+    public CompletableFuture<Void> sendCommandStreaming(String command, Consumer<String> chunkConsumer) {
+        PendingRequest request = new PendingRequest(command, chunkConsumer);
+        if (!isConnected()) {
+            request.future.completeExceptionally(new IOException("RCON未连接"));
+            return request.future;
+        }
+        CompletableFuture.delayedExecutor(requestTimeoutMs, TimeUnit.MILLISECONDS).execute(() -> request.future.completeExceptionally(
+                new TimeoutException("RCON命令 " + requestTimeoutMs + "ms 内未完成")));
+        request.future.whenComplete((v, error) -> onComplete(request, error));
+        backlog.add(request);
+        drainBacklog();
+        return request.future;
+    }
+    
+    /**
+     * 健康检查：发送一个空的哨兵包并等待服务器回应，不执行任何命令
+     */
+    public CompletableFuture<Void> checkHealth() {
+        return sendCommandStreaming(null, chunk -> { });
+    }
+    
+    /**
+     * 没有在途请求时发出下一个排队的请求
+     */
+    private void drainBacklog() {
+        // 取出和发送在同一把锁内完成，保证命令按提交顺序到达服务器
+        synchronized (requestLock) {
+            while (current == null) {
+                PendingRequest request = backlog.poll();
+                if (request == null) {
+                    return;
+                }
+                if (request.future.isDone()) {
+                    continue; // 排队期间已超时
+                }
+                if (!connected) {
+                    request.future.completeExceptionally(new IOException("RCON连接已断开"));
+                    continue;
+                }
+                current = request;
+                dispatch(request);
+            }
+        }
+    }
+    
+    /**
+     * 写出请求的第一个数据包（调用方持有requestLock）
+     * 命令只写出命令包，哨兵包在第一个分片到达后由读取线程写出；健康检查只写出哨兵包，不在服务器上执行任何命令
+     */
+    private void dispatch(PendingRequest request) {
+        request.dispatchedNanos = System.nanoTime();
+        try {
+            if (request.command == null) {
+                request.sentinelId = requestId.incrementAndGet();
+                writePacket(encodePacket(request.sentinelId, 0, "")); // 0 = SERVERDATA_RESPONSE_VALUE
+                return;
+            }
+            byte[] commandPacket = encodePacket(0, 2, request.command); // 2 = SERVERDATA_EXECCOMMAND
+            if (commandPacket.length > MAX_REQUEST_PACKET_SIZE) {
+                // 服务器会因读不到完整的数据包而断开连接，直接拒绝
+                request.future.completeExceptionally(new IOException("命令过长: RCON请求最多 "
+                        + MAX_REQUEST_PACKET_SIZE + " 字节，当前 " + commandPacket.length + " 字节"));
+                return;
+            }
+            request.requestId = requestId.incrementAndGet();
+            writePacket(encodePacket(request.requestId, 2, request.command));
+        } catch (IOException e) {
+            connected = false;
+            request.future.completeExceptionally(e);
+        }
+    }
+    
+    /**
+     * 命令的第一个满长度分片已到达，写出哨兵包（在读取线程中调用）
+     */
+    private void sendSentinel(PendingRequest request) {
+        request.sentinelId = requestId.incrementAndGet();
+        try {
+            writePacket(encodePacket(request.sentinelId, 0, "")); // 0 = SERVERDATA_RESPONSE_VALUE
         } catch (IOException e) {
             connected = false;
-            String errorMsg = "发送RCON命令失败: " + e.getMessage();
+            request.future.completeExceptionally(e);
+        }
+    }
+    
+    /**
+     * 请求完成（成功、失败或超时）后发出下一个请求
+     * 在途的请求超时时服务器可能稍后才响应，之后的请求无法可靠地与响应对应，关闭连接
+     */
+    private void onComplete(PendingRequest request, Throwable error) {
+        boolean wasCurrent;
+        synchronized (requestLock) {
+            wasCurrent = current == request;
+            if (wasCurrent) {
+                current = null;
+            }
+        }
+        recordCompletion(request, error);
+        if (!wasCurrent) {
+            return;
+        }
+        if (error instanceof TimeoutException && connected) {
+            String errorMsg = "RCON命令超时，关闭连接: " + error.getMessage();
             if (logger != null) {
                 logger.warning(errorMsg);
             } else {
                 System.err.println(errorMsg);
             }
-            return "";
+            disconnect();
+            return;
         }
+        drainBacklog();
     }
     
     /**
-     * 发送数据包
+     * 记录命令从写出到收齐响应的延迟（健康检查和未发出的请求不计入）
+     */
+    private void recordCompletion(PendingRequest request, Throwable error) {
+        if (metrics == null || request.command == null || request.dispatchedNanos == 0) {
+            return;
+        }
+        if (error == null) {
+            metrics.commandLatency.recordNanos(System.nanoTime() - request.dispatchedNanos);
+        } else {
+            metrics.commandFailures.increment();
+        }
+    }
+    
+    /**
+     * 编码数据包
      */
-    private void sendPacket(int type, String body) throws IOException {
-        byte[] bodyBytes = body.getBytes("UTF-8");
+    static byte[] encodePacket(int id, int type, String body) {
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
         int packetLength = 4 + 4 + bodyBytes.length + 2; // requestId + type + body + null terminator
         
         ByteBuffer buffer = ByteBuffer.allocate(4 + packetLength);
         buffer.order(ByteOrder.LITTLE_ENDIAN);
         buffer.putInt(packetLength);
-        buffer.putInt(++requestId);
+        buffer.putInt(id);
         buffer.putInt(type);
         buffer.put(bodyBytes);
         buffer.put((byte) 0); // null terminator
         buffer.put((byte) 0); // null terminator
-        
-        output.write(buffer.array());
-        output.flush();
+        return buffer.array();
+    }
+    
+    /**
+     * 发送数据包
+     */
+    private void sendPacket(int id, int type, String body) throws IOException {
+        writePacket(encodePacket(id, type, body));
+    }
+    
+    /**
+     * 写出一个数据包并立即flush，每个数据包单独写出（请求线程和读取线程都可能写入，需要互斥）
+     */
+    private void writePacket(byte[] packet) throws IOException {
+        DataOutputStream out = output;
+        if (out == null) {
+            throw new IOException("RCON未连接");
+        }
+        synchronized (out) {
+            out.write(packet);
+            out.flush();
+        }
     }
     
     /**
      * 接收数据包
      */
-    private RCONPacket receivePacket() throws IOException {
+    private RCONPacket receivePacket(DataInputStream in) throws IOException {
         try {
-            int length = Integer.reverseBytes(input.readInt());
-            int requestId = Integer.reverseBytes(input.readInt());
-            int type = Integer.reverseBytes(input.readInt());
-            
-            byte[] bodyBytes = new byte[length - 4 - 4 - 2];
-            input.readFully(bodyBytes);
-            input.readByte(); // null terminator
-            input.readByte(); // null terminator
-            
-            String body = new String(bodyBytes, "UTF-8");
-            return new RCONPacket(requestId, type, body);
+            return decodePacket(in);
         } catch (EOFException e) {
             connected = false;
             throw new IOException("连接已断开", e);
         }
     }
     
+    /**
+     * 解码数据包
+     * @throws EOFException 连接在数据包完整之前关闭
+     */
+    static RCONPacket decodePacket(DataInputStream in) throws IOException {
+        int length = Integer.reverseBytes(in.readInt());
+        if (length < 10 || length > 1024 * 1024) {
+            throw new IOException("RCON数据包长度异常: " + length);
+        }
+        int requestId = Integer.reverseBytes(in.readInt());
+        int type = Integer.reverseBytes(in.readInt());
+        
+        byte[] bodyBytes = new byte[length - 4 - 4 - 2];
+        in.readFully(bodyBytes);
+        in.readByte(); // null terminator
+        in.readByte(); // null terminator
+        
+        return new RCONPacket(requestId, type, bodyBytes);
+    }
+    
+    /**
+     * 当前等待响应的请求数（0或1）
+     */
+    public int getInFlightCount() {
+        synchronized (requestLock) {
+            return current != null ? 1 : 0;
+        }
+    }
+    
+    /**
+     * 等待前一个请求完成而排队的命令数
+     */
+    public int getQueuedCount() {
+        return backlog.size();
+    }
+    
     /**
      * 关闭连接
      */
-    public void disconnect() {
+    public synchronized void disconnect() {
         connected = false;
         try {
             if (input != null) {
@@ -207,22 +522,87 @@ public class RCONClient {
         } catch (IOException e) {
             // 忽略关闭错误
         }
+        readerThread = null;
+        failPending(new IOException("RCON连接已关闭"));
     }
     
     /**
      * RCON数据包
      */
-    private static class RCONPacket {
+    static class RCONPacket {
         int requestId;
-        @SuppressWarnings("unused")
         int type;
-        String body;
+        byte[] body;
         
-        RCONPacket(int requestId, int type, String body) {
+        RCONPacket(int requestId, int type, byte[] body) {
             this.requestId = requestId;
             this.type = type;
             this.body = body;
         }
     }
+    
+    /**
+     * 排队或在途的请求
+     * 分片按到达顺序解码后交给消费者；分片边界可能切断多字节UTF-8字符，不完整的尾部留到下一个分片
+     */
+    private static class PendingRequest {
+        final String command;
+        final Consumer<String> chunkConsumer;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        // 以下字段在发出后只由持有requestLock的线程和读取线程按顺序访问
+        volatile int requestId;
+        volatile int sentinelId;
+        volatile long dispatchedNanos;
+        private byte[] carry = new byte[0];
+        
+        PendingRequest(String command, Consumer<String> chunkConsumer) {
+            this.command = command;
+            this.chunkConsumer = chunkConsumer;
+        }
+        
+        void accept(byte[] body) {
+            byte[] data = body;
+            if (carry.length > 0) {
+                data = new byte[carry.length + body.length];
+                System.arraycopy(carry, 0, data, 0, carry.length);
+                System.arraycopy(body, 0, data, carry.length, body.length);
+            }
+            int end = completeUtf8Length(data);
+            carry = Arrays.copyOfRange(data, end, data.length);
+            if (end > 0) {
+                deliver(new String(data, 0, end, StandardCharsets.UTF_8));
+            }
+        }
+        
+        void finish() {
+            if (carry.length > 0) {
+                deliver(new String(carry, StandardCharsets.UTF_8));
+                carry = new byte[0];
+            }
+            future.complete(null);
+        }
+        
+        private void deliver(String chunk) {
+            try {
+                chunkConsumer.accept(chunk);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+        
+        /**
+         * 返回末尾完整UTF-8字符的结束位置（不完整的多字节序列不计入）
+         */
+        private static int completeUtf8Length(byte[] data) {
+            for (int i = data.length - 1; i >= Math.max(0, data.length - 3); i--) {
+                int b = data[i] & 0xFF;
+                if ((b & 0xC0) == 0x80) {
+                    continue; // 后续字节，继续向前找首字节
+                }
+                int needed = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+                return data.length - i >= needed ? data.length : i;
+            }
+            return data.length;
+        }
+    }
 }
-
@@ -0,0 +1,418 @@
+package org.example1.rCONPro;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * RCON连接池 - 多个控制端会话共享的已认证RCON连接
+ * 每个连接同一时刻只执行一条命令（原版RCON不能在一个连接上流水线发送，见RCONClient），
+ * 命令执行期间独占借出的连接，同时执行的命令数即连接数上限，超出的命令排队等待空闲连接
+ * 按需创建连接直到上限，空闲超时的连接会被关闭，空闲连接定期做健康检查
+ * 所有操作都是异步的，不会阻塞调用线程（包括插件的网络IO线程）
+ */
+public class RCONConnectionPool implements CommandBackend {
+    private final String host;
+    private final int port;
+    private final String password;
+    private final Logger logger;
+    private final ConfigManager.PluginConfig config;
+    private final PluginMetrics metrics;
+    
+    // 以下字段由this保护
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Deque<CompletableFuture<PooledConnection>> waiters = new ArrayDeque<>();
+    private int total = 0;
+    private boolean closed = false;
+    // 最近一次新建的连接是否认证成功（连不上服务器时不改变），密码被证实可用前其他密码可以替换连接池
+    private volatile boolean authenticated = false;
+    
+    private final ExecutorService connector;
+    private final ScheduledExecutorService maintenance;
+    
+    // 统计
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong authFailures = new AtomicLong();
+    private final AtomicLong connectFailures = new AtomicLong();
+    
+    public RCONConnectionPool(String host, int port, String password, Logger logger, ConfigManager.PluginConfig config,
+                              PluginMetrics metrics) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.logger = logger;
+        this.config = config;
+        this.metrics = metrics;
+        this.connector = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "RCON-Pool-Connector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RCON-Pool-Maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, Math.min(config.rconPoolIdleTimeoutMs, config.rconPoolHealthCheckMs) / 2);
+        maintenance.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 预先建立一个连接，尽早发现密码错误
+     */
+    public CompletableFuture<Void> warmUp() {
+        return execute(client -> CompletableFuture.completedFuture(null));
+    }
+    
+    /**
+     * 借出一个连接执行命令，输出按RCON分片逐段交出
+     */
+    @Override
+    public CompletableFuture<Void> executeCommand(String command, Consumer<String> outputConsumer) {
+        return execute(client -> client.sendCommandStreaming(command, outputConsumer));
+    }
+    
+    /**
+     * 批量命令逐行执行，同时在途的行数不超过连接数上限，不会让大量行在池外排队直到获取连接超时
+     */
+    @Override
+    public CompletableFuture<List<CommandBatch.LineResult>> executeBatch(List<String> commands) {
+        return CommandBatch.pipeline(this, commands, Math.max(1, config.rconPoolMaxSize));
+    }
+    
+    /**
+     * 借出一个连接执行操作，操作返回的future完成后连接自动归还
+     */
+    public <T> CompletableFuture<T> execute(Function<RCONClient, CompletableFuture<T>> action) {
+        return acquire().thenCompose(connection -> {
+            CompletableFuture<T> result;
+            try {
+                result = action.apply(connection.client);
+            } catch (RuntimeException e) {
+                release(connection);
+                throw e;
+            }
+            return result.whenComplete((value, error) -> {
+                connection.lastUsed = System.nanoTime();
+                release(connection);
+            });
+        });
+    }
+    
+    /**
+     * 获取连接：优先复用空闲连接，未达上限时新建，否则排队等待
+     */
+    private CompletableFuture<PooledConnection> acquire() {
+        long start = System.nanoTime();
+        CompletableFuture<PooledConnection> future = new CompletableFuture<>();
+        future.whenComplete((connection, error) -> {
+            if (error == null) {
+                recordWait(System.nanoTime() - start);
+            }
+        });
+        
+        PooledConnection reusable = null;
+        List<PooledConnection> broken = new ArrayList<>();
+        boolean create = false;
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new IOException("RCON连接池已关闭"));
+                return future;
+            }
+            PooledConnection candidate;
+            while ((candidate = idle.pollFirst()) != null) {
+                if (candidate.client.isConnected()) {
+                    reusable = candidate;
+                    break;
+                }
+                total--;
+                broken.add(candidate);
+            }
+            if (reusable == null) {
+                if (total < config.rconPoolMaxSize) {
+                    total++;
+                    create = true;
+                } else {
+                    waiters.addLast(future);
+                }
+            }
+        }
+        
+        for (PooledConnection connection : broken) {
+            connection.client.disconnect();
+            evicted.incrementAndGet();
+        }
+        if (reusable != null) {
+            future.complete(reusable);
+        } else if (create) {
+            connector.submit(() -> createConnection(future));
+        } else {
+            CompletableFuture.delayedExecutor(config.rconPoolAcquireTimeoutMs, TimeUnit.MILLISECONDS).execute(() ->
+                    future.completeExceptionally(new TimeoutException("等待RCON连接超过 " + config.rconPoolAcquireTimeoutMs
+                            + "ms（" + config.rconPoolMaxSize + " 个连接都在执行命令）")));
+        }
+        return future;
+    }
+    
+    /**
+     * 建立并认证新连接（在connector线程中执行）
+     */
+    private void createConnection(CompletableFuture<PooledConnection> future) {
+        RCONClient client = new RCONClient(host, port, password, logger, config.rconRequestTimeoutMs, metrics);
+        if (client.connect()) {
+            authenticated = true;
+            created.incrementAndGet();
+            metrics.rconConnects.increment();
+            future.complete(new PooledConnection(client));
+            return;
+        }
+        
+        if (client.isAuthFailed()) {
+            authenticated = false;
+            authFailures.incrementAndGet();
+        } else {
+            connectFailures.incrementAndGet();
+        }
+        metrics.rconConnectFailures.increment();
+        IOException failure = new IOException(client.isAuthFailed()
+                ? "RCON认证失败: 密码可能不正确"
+                : "无法连接RCON服务器 " + host + ":" + port);
+        // 新建失败时排队者大概率也会失败，一并通知，避免反复重连冲击服务器
+        List<CompletableFuture<PooledConnection>> toFail;
+        synchronized (this) {
+            total--;
+            toFail = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        future.completeExceptionally(failure);
+        for (CompletableFuture<PooledConnection> waiter : toFail) {
+            waiter.completeExceptionally(failure);
+        }
+    }
+    
+    /**
+     * 归还连接：交给下一个等待者，或放回空闲列表
+     */
+    private void release(PooledConnection connection) {
+        if (!connection.client.isConnected()) {
+            discard(connection);
+            retryWaiter();
+            return;
+        }
+        
+        CompletableFuture<PooledConnection> waiter;
+        synchronized (this) {
+            if (closed) {
+                waiter = null;
+            } else {
+                waiter = nextWaiter();
+                if (waiter == null) {
+                    // 后进先出，常用连接保持活跃，多余的连接自然空闲超时
+                    idle.addFirst(connection);
+                    return;
+                }
+            }
+        }
+        if (waiter == null) {
+            connection.client.disconnect();
+            return;
+        }
+        if (!waiter.complete(connection)) {
+            // 等待者刚好超时，重新归还
+            release(connection);
+        }
+    }
+    
+    /**
+     * 有名额空出时，为排队者新建连接
+     */
+    private void retryWaiter() {
+        CompletableFuture<PooledConnection> waiter;
+        synchronized (this) {
+            if (closed || total >= config.rconPoolMaxSize) {
+                return;
+            }
+            waiter = nextWaiter();
+            if (waiter == null) {
+                return;
+            }
+            total++;
+        }
+        connector.submit(() -> createConnection(waiter));
+    }
+    
+    private CompletableFuture<PooledConnection> nextWaiter() {
+        CompletableFuture<PooledConnection> waiter;
+        while ((waiter = waiters.pollFirst()) != null) {
+            if (!waiter.isDone()) {
+                return waiter;
+            }
+        }
+        return null;
+    }
+    
+    private void discard(PooledConnection connection) {
+        synchronized (this) {
+            total--;
+        }
+        connection.client.disconnect();
+        evicted.incrementAndGet();
+    }
+    
+    /**
+     * 定期维护：关闭空闲超时的连接，对空闲较久的连接做健康检查
+     */
+    private void maintain() {
+        long now = System.nanoTime();
+        long idleTimeout = TimeUnit.MILLISECONDS.toNanos(config.rconPoolIdleTimeoutMs);
+        long healthInterval = TimeUnit.MILLISECONDS.toNanos(config.rconPoolHealthCheckMs);
+        List<PooledConnection> expired = new ArrayList<>();
+        List<PooledConnection> toCheck = new ArrayList<>();
+        
+        synchronized (this) {
+            Iterator<PooledConnection> iterator = idle.iterator();
+            while (iterator.hasNext()) {
+                PooledConnection connection = iterator.next();
+                long idleFor = now - connection.lastUsed;
+                if (idleFor >= idleTimeout || !connection.client.isConnected()) {
+                    iterator.remove();
+                    total--;
+                    expired.add(connection);
+                } else if (now - connection.lastChecked >= healthInterval) {
+                    // 检查期间从空闲列表取出，避免被借走
+                    iterator.remove();
+                    toCheck.add(connection);
+                }
+            }
+        }
+        
+        for (PooledConnection connection : expired) {
+            connection.client.disconnect();
+            evicted.incrementAndGet();
+        }
+        for (PooledConnection connection : toCheck) {
+            // 健康检查不算使用，不更新空闲起点
+            connection.client.checkHealth().whenComplete((v, error) -> {
+                connection.lastChecked = System.nanoTime();
+                if (error != null) {
+                    if (logger != null) {
+                        logger.warning("RCON连接健康检查失败，已关闭: " + error.getMessage());
+                    }
+                    connection.client.disconnect();
+                }
+                release(connection);
+            });
+        }
+    }
+    
+    private void recordWait(long nanos) {
+        acquireCount.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+    
+    /**
+     * 关闭连接池和所有连接
+     */
+    @Override
+    public void close() {
+        List<PooledConnection> toClose;
+        List<CompletableFuture<PooledConnection>> toFail;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            toFail = new ArrayList<>(waiters);
+            idle.clear();
+            waiters.clear();
+        }
+        for (PooledConnection connection : toClose) {
+            connection.client.disconnect();
+        }
+        for (CompletableFuture<PooledConnection> waiter : toFail) {
+            waiter.completeExceptionally(new IOException("RCON连接池已关闭"));
+        }
+        maintenance.shutdownNow();
+        connector.shutdown();
+    }
+    
+    public boolean usesPassword(String password) {
+        return this.password.equals(password);
+    }
+    
+    /**
+     * 密码是否已被服务器证实：最近一次新建的连接认证成功
+     */
+    public boolean isAuthenticated() {
+        return authenticated;
+    }
+    
+    public synchronized int getTotalConnections() {
+        return total;
+    }
+    
+    public synchronized int getIdleConnections() {
+        return idle.size();
+    }
+    
+    public synchronized int getWaitingCount() {
+        return waiters.size();
+    }
+    
+    public long getAuthFailures() {
+        return authFailures.get();
+    }
+    
+    /**
+     * 连接池统计摘要
+     */
+    @Override
+    public String getStats() {
+        int totalNow;
+        int idleNow;
+        int waiting;
+        synchronized (this) {
+            totalNow = total;
+            idleNow = idle.size();
+            waiting = waiters.size();
+        }
+        long acquires = acquireCount.get();
+        long avgWaitMicros = acquires == 0 ? 0 : totalWaitNanos.get() / acquires / 1000;
+        int active = totalNow - idleNow;
+        return "连接 " + totalNow + "/" + config.rconPoolMaxSize
+                + "，使用中 " + active + "（利用率 " + (active * 100 / Math.max(1, config.rconPoolMaxSize)) + "%）"
+                + "，排队 " + waiting
+                + "，借出 " + acquires + " 次，平均等待 " + avgWaitMicros + "us，最长等待 " + (maxWaitNanos.get() / 1000) + "us"
+                + "，新建 " + created.get() + "，淘汰 " + evicted.get()
+                + "，认证失败 " + authFailures.get() + "，连接失败 " + connectFailures.get();
+    }
+    
+    /**
+     * 池中的连接
+     */
+    private static class PooledConnection {
+        final RCONClient client;
+        volatile long lastUsed = System.nanoTime();
+        volatile long lastChecked = System.nanoTime();
+        
+        PooledConnection(RCONClient client) {
+            this.client = client;
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package org.example1.rCONPro;
 
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.Arrays;
+
 public final class RCONPro extends JavaPlugin {
     
     private PluginMode pluginMode;
-
+    
     @Override
     public void onEnable() {
         // 加载配置
@@ -16,7 +20,7 @@ public final class RCONPro extends JavaPlugin {
         pluginMode = new PluginMode(this, config);
         pluginMode.start();
     }
-
+    
     @Override
     public void onDisable() {
         // 停止插件模式
@@ -24,4 +28,40 @@ public final class RCONPro extends JavaPlugin {
             pluginMode.stop();
         }
     }
+    
+    /**
+     * /rconpro stats - 显示运行统计
+     * /rconpro bench [次数] [命令] - 对比进程内执行和RCON的命令延迟
+     */
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 0) {
+            return false;
+        }
+        if (pluginMode == null) {
+            sender.sendMessage("RCONPro 未启动");
+            return true;
+        }
+        if (args[0].equalsIgnoreCase("stats")) {
+            for (String line : pluginMode.getStatsSummary().split("\n")) {
+                sender.sendMessage(line);
+            }
+            return true;
+        }
+        if (args[0].equalsIgnoreCase("bench")) {
+            int count = 50;
+            if (args.length > 1) {
+                try {
+                    count = Math.max(1, Integer.parseInt(args[1]));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage("次数必须是整数: " + args[1]);
+                    return true;
+                }
+            }
+            String benchCommand = args.length > 2 ? String.join(" ", Arrays.copyOfRange(args, 2, args.length)) : "list";
+            pluginMode.benchmarkCommands(benchCommand, count, sender::sendMessage);
+            return true;
+        }
+        return false;
+    }
 }
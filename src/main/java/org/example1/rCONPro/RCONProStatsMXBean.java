@@ -0,0 +1,86 @@
+package org.example1.rCONPro;
+
+/**
+ * 通过JMX导出的运行统计（ObjectName: org.example1.rCONPro:type=Stats）
+ * 延迟单位为微秒，速率为最近一分钟的平均值
+ */
+public interface RCONProStatsMXBean {
+    // 日志转发
+    long getLinesForwarded();
+    
+    double getLinesPerSecond();
+    
+    int getLogQueueDepth();
+    
+    long getLogDropped();
+    
+    long getLogLatencyP50Micros();
+    
+    long getLogLatencyP99Micros();
+    
+    long getLogLatencyMaxMicros();
+    
+    // 日志文件监控
+    long getLogFileLinesRead();
+    
+    long getLogFileBytesRead();
+    
+    long getLogFileReopens();
+    
+    // 控制端会话
+    int getActiveSessions();
+    
+    long getSessionsAccepted();
+    
+    long getSessionsResumed();
+    
+    long getBytesSent();
+    
+    double getBytesSentPerSecond();
+    
+    long getFramesDropped();
+    
+    long getSessionsTimedOut();
+    
+    long getKeepaliveRttP50Micros();
+    
+    long getKeepaliveRttP99Micros();
+    
+    // 命令执行
+    String getCommandBackend();
+    
+    long getCommands();
+    
+    long getCommandFailures();
+    
+    long getCommandLatencyP50Micros();
+    
+    long getCommandLatencyP99Micros();
+    
+    long getCommandLatencyP999Micros();
+    
+    long getCommandLatencyMaxMicros();
+    
+    // 命令排队（BUKKIT方式）
+    int getInteractiveQueueDepth();
+    
+    long getInteractiveWaitP99Micros();
+    
+    int getBulkQueueDepth();
+    
+    long getBulkWaitP99Micros();
+    
+    // RCON连接
+    long getRconConnects();
+    
+    long getRconConnectFailures();
+    
+    long getRconDisconnects();
+    
+    String getRconPoolStats();
+    
+    /**
+     * 与/rconpro stats相同的多行文本
+     */
+    String getSummary();
+}
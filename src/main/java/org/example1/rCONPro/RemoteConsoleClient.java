@@ -2,18 +2,79 @@ package org.example1.rCONPro;
 
 import java.io.*;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 远程控制端 - 独立应用模式
  */
 public class RemoteConsoleClient {
-    private Socket socket;
+    // 本地命令：设置日志订阅，不发送给服务器执行
+    private static final String SUBSCRIBE_COMMAND = ":subscribe";
+    // 本地命令：查询插件的运行统计
+    private static final String STATS_COMMAND = ":stats";
+    // 本地命令：把文件中的脚本作为批量命令发送
+    private static final String SCRIPT_COMMAND = ":script";
+    // 本地命令：之后输入的行收集为脚本，直到":end"时一起发送
+    private static final String BATCH_COMMAND = ":batch";
+    private static final String BATCH_END_COMMAND = ":end";
+    // 本地命令：检索本地日志归档，例如 ":grep Exception"、":since 10m [正则]"、":level ERROR [正则]"
+    private static final String GREP_COMMAND = ":grep";
+    private static final String SINCE_COMMAND = ":since";
+    private static final String LEVEL_COMMAND = ":level";
+    // 检索结果最多显示的行数（最近的）
+    private static final int ARCHIVE_SEARCH_LIMIT = 200;
+    // 本地命令：查询服务器上的历史日志（latest.log和轮转的压缩日志），例如 ":history since=2h level=WARN include=Exception"
+    private static final String HISTORY_COMMAND = ":history";
+    
+    // 心跳线程在失效时不加锁关闭，写入方可能正阻塞在已失效的连接上
+    private volatile Socket socket;
     private DataInputStream input;
     private DataOutputStream output;
+    private BufferedInputStream bufferedInput;
+    private BufferedOutputStream bufferedOutput;
+    // 流量统计：raw为压缩前的帧字节，wire为实际网络字节
+    private final AtomicLong rawBytesIn = new AtomicLong();
+    private final AtomicLong wireBytesIn = new AtomicLong();
+    private final AtomicLong rawBytesOut = new AtomicLong();
+    private final AtomicLong wireBytesOut = new AtomicLong();
+    // 最后一次收到插件数据的时间，以及心跳的往返延迟
+    private volatile long lastReceivedNanos;
+    private final LatencyHistogram keepaliveRtt = new LatencyHistogram();
+    // 日志续传：插件运行实例标识和最后收到的日志序号，重连时告知插件以补发断线期间的日志
+    private volatile String logEpoch;
+    private volatile long lastSequence = -1;
+    // 插件发来的记录器和线程名称定义（只由接收线程访问）
+    private final List<String> logNames = new ArrayList<>();
+    private final LogEventCodec.NameResolver logNameResolver = LogNameTable.resolver(logNames);
+    // 当前的日志订阅（多行"键=值"），null表示接收全部日志
+    private volatile String subscription;
+    // 带关联标识的命令：插件确认支持后，命令不必等待上一条的结果，按标识匹配输出和结果
+    private volatile boolean correlatedCommands = false;
+    private volatile boolean batchCommands = false;
+    private volatile boolean historyQueries = false;
+    private final AtomicLong nextCommandId = new AtomicLong();
+    private final Map<String, PendingCommand> pendingCommands = new ConcurrentHashMap<>();
+    // 本地日志归档，未启用或写入失败后为null
+    private volatile LogArchive archive;
     private ExecutorService executor;
+    private ConsoleRenderer renderer;
     private boolean running = false;
     private Scanner scanner;
     
@@ -40,11 +101,26 @@ public class RemoteConsoleClient {
         executor = Executors.newCachedThreadPool();
         scanner = new Scanner(System.in);
         
+        // 启动终端渲染线程，日志按固定帧率批量输出
+        renderer = new ConsoleRenderer(config.renderFps, config.renderMaxPendingKb * 1024);
+        renderer.start();
+        
+        // 打开本地日志归档
+        if (config.archiveEnabled) {
+            try {
+                archive = new LogArchive(Paths.get(config.archiveDirectory), config.archiveSegmentMb * 1024 * 1024,
+                        config.archiveMaxMb * 1024 * 1024);
+                System.out.println("本地日志归档: " + config.archiveDirectory + "（" + archive.getStats() + "）");
+            } catch (IOException e) {
+                System.err.println("无法打开本地日志归档，日志将不会保存: " + e.getMessage());
+            }
+        }
+        
         // 启动消息接收线程
         executor.submit(this::receiveMessages);
         
         // 启动心跳线程
-        executor.submit(this::sendHeartbeat);
+        executor.submit(() -> sendHeartbeat(config));
         
         // 启动命令输入线程
         System.out.println("已连接！输入命令发送到服务器（输入 'quit' 退出）:");
@@ -63,16 +139,42 @@ public class RemoteConsoleClient {
                 // 设置Socket选项以保持连接
                 newSocket.setKeepAlive(true);
                 newSocket.setTcpNoDelay(true);
-                newSocket.setSoTimeout(0); // 无读取超时，由心跳保持连接
+                newSocket.setSoTimeout(0); // 无读取超时，失效由心跳线程检测
                 
                 synchronized (this) {
                     socket = newSocket;
-                    input = new DataInputStream(socket.getInputStream());
-                    output = new DataOutputStream(socket.getOutputStream());
+                    bufferedInput = new BufferedInputStream(
+                            new StreamCompression.CountingInputStream(socket.getInputStream(), wireBytesIn));
+                    bufferedOutput = new BufferedOutputStream(
+                            new StreamCompression.CountingOutputStream(socket.getOutputStream(), wireBytesOut));
+                    input = new DataInputStream(new StreamCompression.CountingInputStream(bufferedInput, rawBytesIn));
+                    output = new DataOutputStream(new StreamCompression.CountingOutputStream(bufferedOutput, rawBytesOut));
+                    lastReceivedNanos = System.nanoTime();
                 }
                 
                 System.out.println("已连接到插件: " + config.pluginHost + ":" + config.pluginPort);
                 
+                // 声明本控制端支持的能力（旧版插件会忽略该消息）
+                try {
+                    String capabilities = NetworkProtocol.CAP_BATCH + "," + NetworkProtocol.CAP_SEQ + "," + NetworkProtocol.CAP_EVENTS
+                            + "," + NetworkProtocol.CAP_COMMAND_ID + "," + NetworkProtocol.CAP_COMMAND_BATCH + "," + NetworkProtocol.CAP_HISTORY
+                            + "," + NetworkProtocol.CAP_KEEPALIVE;
+                    if (config.compressionEnabled) {
+                        capabilities += "," + NetworkProtocol.CAP_DEFLATE;
+                    }
+                    if (logEpoch != null && lastSequence >= 0) {
+                        capabilities += "," + NetworkProtocol.PARAM_RESUME + "=" + logEpoch + ":" + lastSequence;
+                    }
+                    NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_HELLO, capabilities);
+                    // 新连接在插件端没有订阅，重连后重新发送
+                    if (subscription != null) {
+                        NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_SUBSCRIBE, subscription);
+                    }
+                } catch (IOException e) {
+                    System.err.println("发送能力声明失败: " + e.getMessage());
+                    return false;
+                }
+                
                 // 立即发送RCON密码
                 if (config.rconPassword != null && !config.rconPassword.isEmpty()) {
                     try {
@@ -116,9 +218,18 @@ public class RemoteConsoleClient {
             socket = null;
             input = null;
             output = null;
+            correlatedCommands = false;
+            batchCommands = false;
+            historyQueries = false;
         }
         
+        renderer.flush();
         System.out.println("\n连接已断开，正在重连...");
+        if (!pendingCommands.isEmpty()) {
+            System.out.println("有 " + pendingCommands.size() + " 条命令未收到结果，无法确认是否已执行: "
+                    + String.join(", ", pendingCommands.values().stream().map(pending -> pending.command).toList()));
+            pendingCommands.clear();
+        }
         if (connectWithRetry(config)) {
             // 重连成功后，重新发送RCON密码
             synchronized (this) {
@@ -167,13 +278,84 @@ public class RemoteConsoleClient {
                 }
                 
                 NetworkProtocol.Message msg = NetworkProtocol.receiveMessage(currentInput);
+                lastReceivedNanos = System.nanoTime();
                 
                 if (msg.type == NetworkProtocol.MSG_LOG) {
                     // 打印日志（带颜色）
-                    String coloredLine = ColorOutput.formatLogLine(msg.content);
-                    System.out.println(coloredLine);
+                    renderer.println(ColorOutput.formatLogLine(msg.content));
+                    archive(LogEvent.ofLine(msg.content));
+                } else if (msg.type == NetworkProtocol.MSG_LOG_BATCH) {
+                    // 批量日志，逐行打印
+                    for (String line : NetworkProtocol.decodeBatch(msg.payload)) {
+                        renderer.println(ColorOutput.formatLogLine(line));
+                        archive(LogEvent.ofLine(line));
+                    }
+                } else if (msg.type == NetworkProtocol.MSG_LOG_SEQ_BATCH) {
+                    printSequencedBatch(msg.payload);
+                } else if (msg.type == NetworkProtocol.MSG_LOG_EVENTS) {
+                    printEvents(msg.payload);
+                } else if (msg.type == NetworkProtocol.MSG_NAME_DEFS) {
+                    LogNameTable.applyDefinitions(msg.payload, logNames);
+                } else if (msg.type == NetworkProtocol.MSG_LOG_LOST) {
+                    long lost = Long.parseLong(msg.content.trim());
+                    renderer.println(ColorOutput.formatLogLine("[WARN] 断线期间的 " + lost + " 行日志已被覆盖，无法补发"));
+                    lastSequence += lost;
+                } else if (msg.type == NetworkProtocol.MSG_HELLO) {
+                    Set<String> capabilities = NetworkProtocol.parseCapabilities(msg.content);
+                    String epoch = NetworkProtocol.capabilityParam(capabilities, NetworkProtocol.PARAM_EPOCH);
+                    if (epoch != null && !epoch.equals(logEpoch)) {
+                        // 插件已重启，序号重新开始
+                        logEpoch = epoch;
+                        lastSequence = -1;
+                        logNames.clear();
+                    }
+                    if (capabilities.contains(NetworkProtocol.CAP_COMMAND_ID)) {
+                        correlatedCommands = true;
+                    }
+                    if (capabilities.contains(NetworkProtocol.CAP_COMMAND_BATCH)) {
+                        batchCommands = true;
+                    }
+                    if (capabilities.contains(NetworkProtocol.CAP_HISTORY)) {
+                        historyQueries = true;
+                    }
+                    if (capabilities.contains(NetworkProtocol.CAP_DEFLATE)) {
+                        enableCompression(config);
+                    }
+                } else if (msg.type == NetworkProtocol.MSG_COMMAND_OUTPUT) {
+                    printCommandOutput(msg.content);
+                } else if (msg.type == NetworkProtocol.MSG_COMMAND_RESULT) {
+                    printCommandResult(NetworkProtocol.CommandResult.parse(msg.content));
+                } else if (msg.type == NetworkProtocol.MSG_COMMAND_BATCH_RESULT) {
+                    printBatchResult(CommandBatch.decodeResult(msg.payload));
+                } else if (msg.type == NetworkProtocol.MSG_HISTORY_LINES) {
+                    // 查询结果可能很多，直接输出，不经过会跳过行的渲染器
+                    renderer.flush();
+                    String lines = NetworkProtocol.splitCorrelated(msg.content)[1];
+                    StringBuilder text = new StringBuilder(lines.length() + 64);
+                    for (String line : lines.split("\n")) {
+                        text.append(ColorOutput.formatLogLine(line)).append('\n');
+                    }
+                    System.out.print(text);
+                } else if (msg.type == NetworkProtocol.MSG_HISTORY_END) {
+                    printHistorySummary(LogHistory.Summary.parse(msg.content));
+                } else if (msg.type == NetworkProtocol.MSG_STATS) {
+                    for (String line : msg.content.split("\n")) {
+                        renderer.println(ColorOutput.formatLogLine(line));
+                    }
+                } else if (msg.type == NetworkProtocol.MSG_PING) {
+                    // 插件在链路空闲时探测本端，原样返回时间标记
+                    synchronized (this) {
+                        if (output != null) {
+                            NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_PONG, msg.content);
+                        }
+                    }
                 } else if (msg.type == NetworkProtocol.MSG_PONG) {
-                    // 心跳响应，不打印
+                    // 心跳响应，不打印；旧版插件返回空内容，无法计算往返延迟
+                    long sentNanos = NetworkProtocol.parsePingTime(msg.content);
+                    long rtt = System.nanoTime() - sentNanos;
+                    if (sentNanos >= 0 && rtt >= 0) {
+                        keepaliveRtt.recordNanos(rtt);
+                    }
                 }
             } catch (IOException e) {
                 if (running) {
@@ -189,16 +371,247 @@ public class RemoteConsoleClient {
     }
     
     /**
-     * 发送心跳
+     * 打印带序号的批量日志（只能在接收线程中调用）
+     * 跳过已经收到过的行；序号不连续说明插件因本端接收过慢丢弃了日志
+     */
+    private void printSequencedBatch(byte[] payload) throws IOException {
+        long sequence = NetworkProtocol.readFirstSequence(payload);
+        List<String> lines = NetworkProtocol.decodeBatch(payload, 8);
+        // 有订阅时被过滤的日志同样表现为序号不连续，不作为丢失提示
+        if (subscription == null && lastSequence >= 0 && sequence > lastSequence + 1) {
+            renderer.println(ColorOutput.formatLogLine("[WARN] 丢失了 " + (sequence - lastSequence - 1) + " 行日志"));
+        }
+        for (String line : lines) {
+            if (sequence > lastSequence) {
+                renderer.println(ColorOutput.formatLogLine(line));
+                archive(LogEvent.ofLine(line));
+                lastSequence = sequence;
+            }
+            sequence++;
+        }
+    }
+    
+    /**
+     * 打印结构化日志事件（只能在接收线程中调用），序号的处理与printSequencedBatch相同
+     */
+    private void printEvents(byte[] payload) throws IOException {
+        long[] firstSequence = new long[1];
+        List<LogEvent> events = LogEventCodec.decodeEvents(payload, logNameResolver, firstSequence);
+        long sequence = firstSequence[0];
+        // 有订阅时被过滤的日志同样表现为序号不连续，不作为丢失提示
+        if (subscription == null && lastSequence >= 0 && sequence > lastSequence + 1) {
+            renderer.println(ColorOutput.formatLogLine("[WARN] 丢失了 " + (sequence - lastSequence - 1) + " 行日志"));
+        }
+        for (LogEvent event : events) {
+            if (sequence > lastSequence) {
+                renderer.println(ColorOutput.formatEvent(event));
+                archive(event);
+                lastSequence = sequence;
+            }
+            sequence++;
+        }
+    }
+    
+    /**
+     * 把收到的日志写入本地归档（只能在接收线程中调用），写入失败时停止归档
+     */
+    private void archive(LogEvent event) {
+        LogArchive current = archive;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.append(event);
+        } catch (IOException | RuntimeException e) {
+            archive = null;
+            renderer.println(ColorOutput.formatLogLine("[WARN] 写入本地日志归档失败，停止归档: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 发送命令（调用方持有this锁）；插件支持时带上关联标识并记录发送时间
+     */
+    private void sendCommand(String command) throws IOException {
+        if (!correlatedCommands) {
+            NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_COMMAND, command);
+            return;
+        }
+        String id = Long.toString(nextCommandId.incrementAndGet());
+        pendingCommands.put(id, new PendingCommand(command, System.nanoTime()));
+        try {
+            NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_COMMAND_REQUEST, id + "\n" + command);
+        } catch (IOException e) {
+            pendingCommands.remove(id);
+            throw e;
+        }
+    }
+    
+    /**
+     * 读取脚本文件并作为批量命令发送
+     */
+    private void handleScriptCommand(String path) {
+        if (path.isEmpty()) {
+            System.err.println("用法: " + SCRIPT_COMMAND + " <脚本文件>");
+            return;
+        }
+        try {
+            sendScript(CommandBatch.parseScript(new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            System.err.println("无法读取脚本: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 发送脚本：插件支持批量命令时整段发送，只等待一个汇总结果；否则逐条流水线发送
+     */
+    private void sendScript(List<String> commands) {
+        if (commands.isEmpty()) {
+            System.out.println("脚本中没有命令");
+            return;
+        }
+        synchronized (this) {
+            if (output == null || socket == null || socket.isClosed()) {
+                System.err.println("未连接到插件，无法发送脚本");
+                return;
+            }
+            try {
+                if (!batchCommands) {
+                    for (String command : commands) {
+                        sendCommand(command);
+                    }
+                    return;
+                }
+                String script = String.join("\n", commands);
+                // 消息上限1MB，留出标识的空间
+                if (script.getBytes(StandardCharsets.UTF_8).length > 1000 * 1000) {
+                    System.err.println("脚本超过1MB，请拆分后发送");
+                    return;
+                }
+                String id = Long.toString(nextCommandId.incrementAndGet());
+                pendingCommands.put(id, new PendingCommand(SCRIPT_COMMAND + " (" + commands.size() + " 行)", commands, System.nanoTime()));
+                NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_COMMAND_BATCH, id + "\n" + script);
+                System.out.println("已发送脚本 #" + id + "，共 " + commands.size() + " 行");
+            } catch (IOException e) {
+                System.err.println("发送脚本失败: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 打印批量命令的结果（只能在接收线程中调用）：有输出或未成功的行逐行列出，最后是汇总
+     */
+    private void printBatchResult(CommandBatch.Result result) {
+        PendingCommand pending = pendingCommands.remove(result.id);
+        if (pending == null || pending.script == null) {
+            return; // 重连前发出的脚本
+        }
+        for (int i = 0; i < result.lines.size() && i < pending.script.size(); i++) {
+            CommandBatch.LineResult line = result.lines.get(i);
+            String command = pending.script.get(i);
+            if (line.status == CommandBatch.STATUS_ERROR) {
+                renderer.println(ColorOutput.formatLogLine("[ERROR] [" + (i + 1) + "] " + command + ": " + line.output));
+            } else if (line.status == CommandBatch.STATUS_SKIPPED) {
+                renderer.println(ColorOutput.formatLogLine("[WARN] [" + (i + 1) + "] " + command + " 未执行: " + line.output));
+            } else if (!line.output.isEmpty()) {
+                renderer.println(ColorOutput.formatLogLine("[" + (i + 1) + "] " + command + ": " + line.output));
+            }
+        }
+        long roundTripMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - pending.sentNanos);
+        renderer.println(ColorOutput.formatLogLine("[#" + result.id + "] 脚本执行完毕: " + result.lines.size() + " 行，成功 "
+                + result.count(CommandBatch.STATUS_OK) + "，失败 " + result.count(CommandBatch.STATUS_ERROR)
+                + "，跳过 " + result.count(CommandBatch.STATUS_SKIPPED) + "，耗时 " + LatencyHistogram.formatMicros(roundTripMicros)
+                + "（服务器 " + LatencyHistogram.formatMicros(result.totalMicros) + "）"));
+    }
+    
+    /**
+     * 打印命令输出（只能在接收线程中调用）
+     * 同时有多条命令在执行时，各行前加上命令标识以区分交错的输出
+     */
+    private void printCommandOutput(String content) throws IOException {
+        String[] parts = NetworkProtocol.splitCorrelated(content);
+        PendingCommand pending = pendingCommands.get(parts[0]);
+        if (pending != null) {
+            pending.hasOutput = true;
+        }
+        String prefix = pendingCommands.size() > 1 ? "[#" + parts[0] + "] " : "";
+        renderer.println(ColorOutput.formatLogLine(prefix + parts[1]));
+    }
+    
+    /**
+     * 打印命令结果和耗时（只能在接收线程中调用）
+     */
+    private void printCommandResult(NetworkProtocol.CommandResult result) {
+        PendingCommand pending = pendingCommands.remove(result.id);
+        if (pending == null) {
+            return; // 重连前发出的命令
+        }
+        if (NetworkProtocol.CommandResult.STATUS_ERROR.equals(result.status)) {
+            renderer.println(ColorOutput.formatLogLine("[ERROR] 执行命令失败: " + pending.command + " (" + result.detail + ")"));
+        } else if (NetworkProtocol.CommandResult.STATUS_TRUNCATED.equals(result.status)) {
+            renderer.println(ColorOutput.formatLogLine("[WARN] 命令输出过多，丢弃了 " + result.detail + " 段: " + pending.command));
+        } else if (!pending.hasOutput) {
+            renderer.println(ColorOutput.formatLogLine("[RCON Response] (empty)"));
+        }
+        long roundTripMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - pending.sentNanos);
+        renderer.println(ColorOutput.formatLogLine("[#" + result.id + "] " + pending.command + " 耗时 "
+                + LatencyHistogram.formatMicros(roundTripMicros) + "（服务器 " + LatencyHistogram.formatMicros(result.executionMicros) + "）"));
+    }
+    
+    /**
+     * 插件确认压缩后切换两个方向的流（只能在接收线程中调用）
+     * 确认消息之后插件发来的数据都是压缩的；本端先发一个未压缩的MSG_HELLO告知插件，再切换发送方向
+     */
+    private void enableCompression(ConfigManager.ClientConfig config) throws IOException {
+        synchronized (this) {
+            input = new DataInputStream(new StreamCompression.CountingInputStream(
+                    StreamCompression.inflating(bufferedInput), rawBytesIn));
+            NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_HELLO, NetworkProtocol.CAP_DEFLATE);
+            output = new DataOutputStream(new StreamCompression.CountingOutputStream(
+                    StreamCompression.deflating(bufferedOutput, config.compressionLevel, config.compressionMinFrameSize),
+                    rawBytesOut));
+        }
+        renderer.println("已启用流压缩");
+    }
+    
+    /**
+     * 心跳线程
+     * 一个间隔内未收到插件的数据时发送带时间标记的MSG_PING，插件原样返回，据此测量往返延迟；持续收到数据时不发送
+     * 超过失效时间未收到任何数据时关闭连接，接收线程随即读取失败并重连
+     * （读取不设超时：在一帧的中间超时会破坏流的状态）
      */
-    private void sendHeartbeat() {
+    private void sendHeartbeat(ConfigManager.ClientConfig config) {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.keepaliveIntervalMs);
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.keepaliveTimeoutMs);
+        long checkMs = 1000;
+        if (config.keepaliveIntervalMs > 0) {
+            checkMs = Math.min(checkMs, config.keepaliveIntervalMs);
+        }
+        if (config.keepaliveTimeoutMs > 0) {
+            checkMs = Math.min(checkMs, config.keepaliveTimeoutMs);
+        }
+        long lastPingNanos = System.nanoTime();
         while (running) {
             try {
-                Thread.sleep(10000); // 10秒发送一次心跳（更频繁以保持连接）
-                synchronized (this) {
-                    if (running && output != null && socket != null && !socket.isClosed()) {
-                        NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_PING, "");
+                Thread.sleep(checkMs);
+                Socket current = socket;
+                if (!running || current == null || current.isClosed()) {
+                    continue;
+                }
+                long now = System.nanoTime();
+                long silent = now - lastReceivedNanos;
+                if (timeoutNanos > 0 && silent > timeoutNanos) {
+                    renderer.println(ColorOutput.formatLogLine("[WARN] 超过 " + config.keepaliveTimeoutMs
+                            + "ms 未收到插件的任何数据，判定连接已失效"));
+                    current.close();
+                    continue;
+                }
+                if (intervalNanos > 0 && silent >= intervalNanos && now - lastPingNanos >= intervalNanos) {
+                    synchronized (this) {
+                        if (output != null && socket == current) {
+                            NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_PING, Long.toString(now));
+                        }
                     }
+                    lastPingNanos = now;
                 }
             } catch (InterruptedException e) {
                 break;
@@ -212,21 +625,64 @@ public class RemoteConsoleClient {
      * 处理命令输入
      */
     private void handleCommandInput() {
+        // :batch之后收集的脚本行，不在收集时为null
+        List<String> batchLines = null;
         while (running) {
             try {
                 if (scanner.hasNextLine()) {
                     String command = scanner.nextLine().trim();
                     
+                    if (batchLines != null) {
+                        if (command.equalsIgnoreCase(BATCH_END_COMMAND)) {
+                            sendScript(CommandBatch.parseScript(String.join("\n", batchLines)));
+                            batchLines = null;
+                        } else {
+                            batchLines.add(command);
+                        }
+                        continue;
+                    }
+                    
+                    if (command.equalsIgnoreCase(BATCH_COMMAND)) {
+                        batchLines = new ArrayList<>();
+                        System.out.println("开始输入脚本，输入 " + BATCH_END_COMMAND + " 后一起发送");
+                        continue;
+                    }
+                    
+                    if (command.startsWith(SCRIPT_COMMAND)) {
+                        handleScriptCommand(command.substring(SCRIPT_COMMAND.length()).trim());
+                        continue;
+                    }
+                    
                     if (command.equalsIgnoreCase("quit") || command.equalsIgnoreCase("exit")) {
                         stop();
                         break;
                     }
                     
+                    if (command.startsWith(SUBSCRIBE_COMMAND)) {
+                        handleSubscribeCommand(command.substring(SUBSCRIBE_COMMAND.length()).trim());
+                        continue;
+                    }
+                    
+                    if (command.equalsIgnoreCase(STATS_COMMAND)) {
+                        requestStats();
+                        continue;
+                    }
+                    
+                    if (command.startsWith(HISTORY_COMMAND)) {
+                        handleHistoryCommand(command.substring(HISTORY_COMMAND.length()).trim());
+                        continue;
+                    }
+                    
+                    if (command.startsWith(GREP_COMMAND) || command.startsWith(SINCE_COMMAND) || command.startsWith(LEVEL_COMMAND)) {
+                        handleArchiveCommand(command);
+                        continue;
+                    }
+                    
                     if (!command.isEmpty()) {
                         synchronized (this) {
                             if (output != null && socket != null && !socket.isClosed()) {
                                 try {
-                                    NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_COMMAND, command);
+                                    sendCommand(command);
                                 } catch (IOException e) {
                                     System.err.println("发送命令失败: " + e.getMessage());
                                 }
@@ -245,6 +701,185 @@ public class RemoteConsoleClient {
         }
     }
     
+    /**
+     * 处理本地的订阅命令，例如 ":subscribe level=WARN logger=Essentials exclude=Can't\skeep\sup"
+     * 各项以空白分隔（正则中的空白用\s表示）；不带参数时取消订阅，接收全部日志
+     */
+    private void handleSubscribeCommand(String arguments) {
+        String spec = arguments.isEmpty() ? "" : String.join("\n", arguments.split("\\s+"));
+        synchronized (this) {
+            subscription = spec.isEmpty() ? null : spec;
+            if (output != null && socket != null && !socket.isClosed()) {
+                try {
+                    NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_SUBSCRIBE, spec);
+                } catch (IOException e) {
+                    System.err.println("发送订阅失败: " + e.getMessage());
+                }
+            } else {
+                System.out.println("未连接到插件，订阅将在连接后生效");
+            }
+        }
+    }
+    
+    /**
+     * 检索本地日志归档并输出最近的匹配行
+     * ":grep <正则>"；":since <时长> [正则]"，时长如30s、10m、2h、1d；":level <级别> [正则]"，包括更高的级别
+     */
+    private void handleArchiveCommand(String command) {
+        LogArchive current = archive;
+        if (current == null) {
+            System.err.println("本地日志归档未启用");
+            return;
+        }
+        String[] parts = command.split("\\s+", 3);
+        String name = parts[0];
+        LogArchive.Query query;
+        try {
+            if (name.equalsIgnoreCase(GREP_COMMAND) && parts.length > 1) {
+                query = new LogArchive.Query(0, LogEventCodec.LEVEL_PLAIN, command.substring(GREP_COMMAND.length()).trim());
+            } else if (name.equalsIgnoreCase(SINCE_COMMAND) && parts.length > 1) {
+                query = new LogArchive.Query(System.currentTimeMillis() - parseDuration(parts[1]), LogEventCodec.LEVEL_PLAIN,
+                        parts.length > 2 ? parts[2] : null);
+            } else if (name.equalsIgnoreCase(LEVEL_COMMAND) && parts.length > 1) {
+                query = new LogArchive.Query(0, LogSubscription.parseLevel(parts[1]), parts.length > 2 ? parts[2] : null);
+            } else {
+                System.err.println("用法: " + GREP_COMMAND + " <正则> | " + SINCE_COMMAND + " <时长> [正则] | " + LEVEL_COMMAND + " <级别> [正则]");
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            // 包括正则语法错误
+            System.err.println("检索条件无效: " + e.getMessage());
+            return;
+        }
+        
+        LogArchive.SearchResult result = current.search(query, ARCHIVE_SEARCH_LIMIT);
+        StringBuilder text = new StringBuilder();
+        for (LogArchive.Match match : result.matches) {
+            text.append(ColorOutput.formatLogLine(match.line)).append('\n');
+        }
+        text.append("匹配 ").append(result.totalMatches).append(" 行");
+        if (result.totalMatches > result.matches.size()) {
+            text.append("，显示最近的 ").append(result.matches.size()).append(" 行");
+        }
+        text.append("（扫描 ").append(result.scannedBytes / 1024).append(" KB/").append(result.scannedBlocks).append(" 块，按索引跳过 ")
+                .append(result.skippedBlocks).append(" 块，耗时 ").append(TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos)).append("ms）");
+        // 先写出已排队的日志，检索结果整体输出，不与实时日志交错
+        renderer.flush();
+        System.out.println(text);
+    }
+    
+    /**
+     * 查询服务器上的历史日志，各项以空白分隔（正则中的空白用\s表示）：
+     * since=时长 或 from=时间 [to=时间]（时间为2024-05-01T10:00[:00]或当天的10:00[:00]），
+     * level=最低级别，include=正则，limit=最多返回的行数
+     */
+    private void handleHistoryCommand(String arguments) {
+        if (!historyQueries) {
+            System.err.println("插件不支持历史日志查询");
+            return;
+        }
+        StringBuilder spec = new StringBuilder();
+        try {
+            for (String item : arguments.isEmpty() ? new String[0] : arguments.split("\\s+")) {
+                int separator = item.indexOf('=');
+                String key = separator > 0 ? item.substring(0, separator).toLowerCase() : item;
+                String value = separator > 0 ? item.substring(separator + 1) : "";
+                if (key.equals("since")) {
+                    spec.append("from=").append(System.currentTimeMillis() - parseDuration(value)).append('\n');
+                } else if (key.equals("from") || key.equals("to")) {
+                    spec.append(key).append('=').append(parseTime(value)).append('\n');
+                } else {
+                    spec.append(item).append('\n');
+                }
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            System.err.println("查询条件无效: " + e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            if (output != null && socket != null && !socket.isClosed()) {
+                try {
+                    NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_HISTORY_QUERY,
+                            "h" + nextCommandId.incrementAndGet() + "\n" + spec);
+                } catch (IOException e) {
+                    System.err.println("发送查询失败: " + e.getMessage());
+                }
+            } else {
+                System.err.println("未连接到插件，无法查询历史日志");
+            }
+        }
+    }
+    
+    /**
+     * 解析本地时间：2024-05-01T10:00[:00]，或只有时间时为当天
+     */
+    private static long parseTime(String text) {
+        LocalDateTime time = text.contains("T") ? LocalDateTime.parse(text) : LocalDate.now().atTime(LocalTime.parse(text));
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
+    /**
+     * 打印历史日志查询的汇总（只能在接收线程中调用）
+     */
+    private void printHistorySummary(LogHistory.Summary summary) {
+        renderer.flush();
+        StringBuilder text = new StringBuilder("历史日志: ").append(summary.matched).append(" 行");
+        if (summary.truncated) {
+            text.append("（已达到行数上限，缩小时间范围或增加条件可查看其余部分）");
+        }
+        text.append("，扫描 ").append(summary.filesScanned).append(" 个文件，按索引跳过 ").append(summary.filesSkipped)
+                .append(" 个，耗时 ").append(LatencyHistogram.formatMicros(summary.micros));
+        System.out.println(text);
+        if (!summary.error.isEmpty()) {
+            System.err.println("历史日志查询: " + summary.error);
+        }
+    }
+    
+    /**
+     * 解析时长，如30s、10m、2h、1d（不带单位时按分钟）
+     */
+    private static long parseDuration(String text) {
+        char unit = Character.toLowerCase(text.charAt(text.length() - 1));
+        String number = Character.isDigit(unit) ? text : text.substring(0, text.length() - 1);
+        long value;
+        try {
+            value = Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的时长: " + text);
+        }
+        switch (unit) {
+            case 's': return TimeUnit.SECONDS.toMillis(value);
+            case 'h': return TimeUnit.HOURS.toMillis(value);
+            case 'd': return TimeUnit.DAYS.toMillis(value);
+            case 'm': return TimeUnit.MINUTES.toMillis(value);
+            default:
+                if (Character.isDigit(unit)) {
+                    return TimeUnit.MINUTES.toMillis(value);
+                }
+                throw new IllegalArgumentException("无效的时长单位: " + text);
+        }
+    }
+    
+    /**
+     * 请求插件的运行统计，结果随日志一起输出
+     */
+    private void requestStats() {
+        if (keepaliveRtt.getCount() > 0) {
+            renderer.println("本端心跳往返: " + keepaliveRtt.summary());
+        }
+        synchronized (this) {
+            if (output != null && socket != null && !socket.isClosed()) {
+                try {
+                    NetworkProtocol.sendMessage(output, NetworkProtocol.MSG_STATS, "");
+                } catch (IOException e) {
+                    System.err.println("请求统计失败: " + e.getMessage());
+                }
+            } else {
+                System.err.println("未连接到插件，无法查询统计");
+            }
+        }
+    }
+    
     /**
      * 停止远程控制端
      */
@@ -267,7 +902,42 @@ public class RemoteConsoleClient {
             executor.shutdown();
         }
         
+        if (archive != null) {
+            archive.close();
+        }
+        
+        if (renderer != null) {
+            renderer.stop();
+            if (renderer.getTotalSkippedLines() > 0) {
+                System.out.println("终端输出跟不上，共跳过 " + renderer.getTotalSkippedLines() + " 行日志");
+            }
+        }
+        System.out.println("流量统计: 接收 " + StreamCompression.formatRatio(rawBytesIn.get(), wireBytesIn.get())
+                + "，发送 " + StreamCompression.formatRatio(rawBytesOut.get(), wireBytesOut.get()));
+        if (keepaliveRtt.getCount() > 0) {
+            System.out.println("心跳往返: " + keepaliveRtt.summary());
+        }
         System.out.println("远程控制端已关闭");
     }
+    
+    /**
+     * 已发出、等待结果的命令
+     */
+    private static class PendingCommand {
+        final String command;
+        final List<String> script; // 批量命令的各行，单条命令为null
+        final long sentNanos;
+        // 只由接收线程读写
+        boolean hasOutput = false;
+        
+        PendingCommand(String command, long sentNanos) {
+            this(command, null, sentNanos);
+        }
+        
+        PendingCommand(String command, List<String> script, long sentNanos) {
+            this.command = command;
+            this.script = script;
+            this.sentNanos = sentNanos;
+        }
+    }
 }
-
@@ -0,0 +1,131 @@
+package org.example1.rCONPro;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 连接流压缩 - 协商成功后插件和控制端之间的流切换为持续字典的DEFLATE流
+ * 整个连接共用一个Deflater/Inflater，重复的日志文本可以引用之前发送过的内容
+ */
+public class StreamCompression {
+    
+    /**
+     * 创建压缩输出流，每次flush时做SYNC_FLUSH，保证对端能立即解出已发送的帧
+     * @param level 压缩级别（0-9）
+     * @param minFrameSize 小于该大小的写入不压缩（仍进入字典）
+     */
+    public static OutputStream deflating(OutputStream out, int level, int minFrameSize) {
+        return new FrameDeflaterOutputStream(out, level, minFrameSize);
+    }
+    
+    /**
+     * 创建解压输入流
+     */
+    public static InputStream inflating(InputStream in) {
+        return new InflaterInputStream(in, new Inflater(), 8192);
+    }
+    
+    /**
+     * 按帧选择压缩级别的DEFLATE输出流
+     * 小帧（如心跳）使用NO_COMPRESSION，避免为几个字节付出压缩开销，但数据仍进入滑动窗口
+     */
+    private static class FrameDeflaterOutputStream extends DeflaterOutputStream {
+        private final int level;
+        private final int minFrameSize;
+        private int currentLevel;
+        
+        FrameDeflaterOutputStream(OutputStream out, int level, int minFrameSize) {
+            super(out, new Deflater(level), 8192, true);
+            this.level = level;
+            this.minFrameSize = minFrameSize;
+            this.currentLevel = level;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int wanted = len < minFrameSize ? Deflater.NO_COMPRESSION : level;
+            if (wanted != currentLevel) {
+                def.setLevel(wanted);
+                currentLevel = wanted;
+            }
+            super.write(b, off, len);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+    }
+    
+    /**
+     * 统计写入字节数的输出流
+     */
+    public static class CountingOutputStream extends FilterOutputStream {
+        private final AtomicLong counter;
+        
+        public CountingOutputStream(OutputStream out, AtomicLong counter) {
+            super(out);
+            this.counter = counter;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            counter.incrementAndGet();
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            counter.addAndGet(len);
+        }
+    }
+    
+    /**
+     * 统计读取字节数的输入流
+     */
+    public static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+        
+        public CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                counter.incrementAndGet();
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                counter.addAndGet(n);
+            }
+            return n;
+        }
+    }
+    
+    /**
+     * 格式化压缩统计
+     */
+    public static String formatRatio(long rawBytes, long wireBytes) {
+        if (rawBytes == 0) {
+            return "0 字节";
+        }
+        return rawBytes + " -> " + wireBytes + " 字节 (" + (wireBytes * 100 / rawBytes) + "%)";
+    }
+}
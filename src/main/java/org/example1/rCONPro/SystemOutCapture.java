@@ -3,20 +3,34 @@ package org.example1.rCONPro;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
 /**
- * System.out/System.err 捕获器 - 简洁实现
+ * System.out/System.err 捕获器 - 按字节转发原始输出，同时切分成行交给日志分发
+ * 批量写入整体处理，行缓冲区和解码器都复用，多字节字符（如中文玩家名）按控制台编码正确解码
  */
 public class SystemOutCapture {
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+    
     private PrintStream originalOut;
     private PrintStream originalErr;
     private TeeOutputStream teeOut;
     private TeeOutputStream teeErr;
-    private final PluginMode pluginMode;
-    private final ThreadLocal<Boolean> isForwarding = ThreadLocal.withInitial(() -> false);
+    private final Consumer<String> lineConsumer;
     
     public SystemOutCapture(PluginMode pluginMode) {
-        this.pluginMode = pluginMode;
+        // sendLog只把日志放入无锁环形缓冲区，不会阻塞写控制台的线程
+        this(pluginMode::sendLog);
+    }
+    
+    public SystemOutCapture(Consumer<String> lineConsumer) {
+        this.lineConsumer = lineConsumer;
     }
     
     /**
@@ -26,11 +40,12 @@ public class SystemOutCapture {
         originalOut = System.out;
         originalErr = System.err;
         
-        teeOut = new TeeOutputStream(originalOut);
-        teeErr = new TeeOutputStream(originalErr);
+        Charset charset = consoleCharset();
+        teeOut = new TeeOutputStream(originalOut, charset, lineConsumer);
+        teeErr = new TeeOutputStream(originalErr, charset, lineConsumer);
         
-        System.setOut(new PrintStream(teeOut, true));
-        System.setErr(new PrintStream(teeErr, true));
+        System.setOut(new PrintStream(teeOut, true, charset));
+        System.setErr(new PrintStream(teeErr, true, charset));
     }
     
     /**
@@ -45,16 +60,44 @@ public class SystemOutCapture {
         }
     }
     
+    /**
+     * 控制台输出使用的编码（JDK 18+ 由stdout.encoding决定，否则为默认编码）
+     */
+    static Charset consoleCharset() {
+        String encoding = System.getProperty("stdout.encoding");
+        if (encoding != null) {
+            try {
+                return Charset.forName(encoding);
+            } catch (IllegalArgumentException e) {
+                // 使用默认编码
+            }
+        }
+        return Charset.defaultCharset();
+    }
+    
     /**
      * Tee输出流 - 同时写入原始流和转发
+     * 原始流总是先写入，转发只是把解码后的行交给lineConsumer
      */
-    private class TeeOutputStream extends OutputStream {
+    static class TeeOutputStream extends OutputStream {
         private final OutputStream original;
-        private final StringBuilder buffer = new StringBuilder();
+        private final Consumer<String> lineConsumer;
+        private final CharsetDecoder decoder;
         private final Object lock = new Object();
+        private final ThreadLocal<Boolean> isForwarding = ThreadLocal.withInitial(() -> false);
         
-        public TeeOutputStream(OutputStream original) {
+        // 以下字段由lock保护
+        private byte[] line = new byte[256];
+        private int lineLength = 0;
+        private ByteBuffer lineBuffer = ByteBuffer.wrap(line);
+        private CharBuffer chars = CharBuffer.allocate(256);
+        
+        TeeOutputStream(OutputStream original, Charset charset, Consumer<String> lineConsumer) {
             this.original = original;
+            this.lineConsumer = lineConsumer;
+            this.decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
         }
         
         @Override
@@ -68,30 +111,35 @@ public class SystemOutCapture {
                     return;
                 }
                 
-                // 收集到缓冲区
                 if (b == '\n') {
-                    String line = buffer.toString();
-                    buffer.setLength(0);
-                    
-                    // 移除末尾的空白字符，但保留原始内容
-                    String trimmedLine = line.trim();
-                    if (!trimmedLine.isEmpty()) {
-                        // 转发到远程控制端（转发原始行，包含所有内容）
-                        isForwarding.set(true);
-                        try {
-                            // 直接转发，不做任何过滤
-                            pluginMode.sendLog(trimmedLine);
-                        } catch (Exception e) {
-                            // 忽略转发错误，不影响原始输出
-                            // 注意：这里不能使用System.out/System.err，会导致循环
-                        } finally {
-                            isForwarding.set(false);
-                        }
+                    forwardLine();
+                } else {
+                    ensureCapacity(1);
+                    line[lineLength++] = (byte) b;
+                }
+            }
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (lock) {
+                original.write(b, off, len);
+                
+                if (isForwarding.get()) {
+                    return;
+                }
+                
+                // 整块扫描换行符，只复制行内容，不逐字节加锁
+                int start = off;
+                int end = off + len;
+                for (int i = off; i < end; i++) {
+                    if (b[i] == '\n') {
+                        append(b, start, i - start);
+                        forwardLine();
+                        start = i + 1;
                     }
-                } else if (b != '\r') {
-                    // 收集所有非回车符的字符
-                    buffer.append((char) b);
                 }
+                append(b, start, end - start);
             }
         }
         
@@ -99,6 +147,91 @@ public class SystemOutCapture {
         public void flush() throws IOException {
             original.flush();
         }
+        
+        private void append(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (lineLength == MAX_LINE_BYTES) {
+                    // 超长行先转发已收到的部分
+                    forwardPartialLine();
+                }
+                int n = Math.min(len, MAX_LINE_BYTES - lineLength);
+                ensureCapacity(n);
+                System.arraycopy(b, off, line, lineLength, n);
+                lineLength += n;
+                off += n;
+                len -= n;
+            }
+        }
+        
+        private void ensureCapacity(int extra) {
+            if (lineLength + extra > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + extra));
+                lineBuffer = ByteBuffer.wrap(line);
+            }
+        }
+        
+        /**
+         * 解码并转发当前行，清空行缓冲区
+         */
+        private void forwardLine() {
+            decode(true);
+            lineLength = 0;
+            forward();
+        }
+        
+        /**
+         * 解码并转发超长行中已完整的字符，末尾不完整的多字节字符留到下一段
+         */
+        private void forwardPartialLine() {
+            int consumed = decode(false);
+            System.arraycopy(line, consumed, line, 0, lineLength - consumed);
+            lineLength -= consumed;
+            forward();
+        }
+        
+        /**
+         * 把行缓冲区解码到chars
+         * @return 已解码的字节数
+         */
+        private int decode(boolean endOfInput) {
+            if (chars.capacity() < lineLength) {
+                chars = CharBuffer.allocate(Math.max(lineLength, chars.capacity() * 2));
+            }
+            lineBuffer.limit(lineLength).position(0);
+            chars.clear();
+            decoder.reset();
+            decoder.decode(lineBuffer, chars, endOfInput);
+            if (endOfInput) {
+                decoder.flush(chars);
+            }
+            chars.flip();
+            return lineBuffer.position();
+        }
+        
+        private void forward() {
+            // 去掉首尾空白（包括行尾的'\r'），只为非空行创建字符串
+            char[] array = chars.array();
+            int start = 0;
+            int end = chars.limit();
+            while (start < end && array[start] <= ' ') {
+                start++;
+            }
+            while (end > start && array[end - 1] <= ' ') {
+                end--;
+            }
+            if (start == end) {
+                return;
+            }
+            
+            isForwarding.set(true);
+            try {
+                lineConsumer.accept(new String(array, start, end - start));
+            } catch (Exception e) {
+                // 忽略转发错误，不影响原始输出
+                // 注意：这里不能使用System.out/System.err，会导致循环
+            } finally {
+                isForwarding.set(false);
+            }
+        }
     }
 }
-
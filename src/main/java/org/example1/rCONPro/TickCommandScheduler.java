@@ -0,0 +1,183 @@
+package org.example1.rCONPro;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按tick执行的命令调度器 - 命令先进入队列，每个tick在主线程上按时间预算取出执行，
+ * 大量耗时命令（批量tp、fill、execute as @e等）被分摊到多个tick，不会让单个tick明显变长
+ * 队列分为优先级不同的通道：交互通道的命令总是先于批量通道执行，操作员的命令不会排在自动化脚本之后
+ * 每个tick至少执行一条命令，保证单条命令超出预算时也能前进
+ */
+public class TickCommandScheduler implements Runnable {
+    /**
+     * 优先级通道，按声明顺序执行
+     */
+    public enum Lane {
+        INTERACTIVE("交互"), // 操作员输入的命令
+        BULK("批量");        // 脚本和大量流水线发送的命令
+        
+        final String displayName;
+        
+        Lane(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+    
+    private final Plugin plugin;
+    private final long budgetNanos;
+    private final LaneQueue[] lanes = new LaneQueue[Lane.values().length];
+    // 每个tick实际占用的主线程时间
+    private final LatencyHistogram tickUsage = new LatencyHistogram();
+    private final LongAdder overBudgetTicks = new LongAdder();
+    private BukkitTask task;
+    private volatile boolean stopped = false;
+    
+    /**
+     * @param budgetMs 每个tick最多占用的主线程时间
+     */
+    public TickCommandScheduler(Plugin plugin, long budgetMs) {
+        this.plugin = plugin;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, budgetMs));
+        for (Lane lane : Lane.values()) {
+            lanes[lane.ordinal()] = new LaneQueue();
+        }
+    }
+    
+    /**
+     * 在每个tick运行；已启动时直接返回，可在首次使用时调用（任意线程）
+     * @return 已停止或没有运行中的服务器（如负载测试）时返回false
+     */
+    public synchronized boolean start() {
+        if (task != null) {
+            return true;
+        }
+        BukkitScheduler bukkitScheduler = Bukkit.getScheduler();
+        if (stopped || bukkitScheduler == null) {
+            return false;
+        }
+        task = bukkitScheduler.runTaskTimer(plugin, this, 1L, 1L);
+        return true;
+    }
+    
+    /**
+     * 停止调度并丢弃队列中未执行的命令，丢弃的命令调用提交时给出的回调，提交方不必等到超时
+     */
+    public void stop() {
+        stopped = true;
+        synchronized (this) {
+            if (task != null) {
+                task.cancel();
+                task = null;
+            }
+        }
+        for (LaneQueue queue : lanes) {
+            Entry entry;
+            while ((entry = queue.entries.poll()) != null) {
+                queue.depth.decrementAndGet();
+                try {
+                    entry.onDiscard.run();
+                } catch (RuntimeException e) {
+                    plugin.getLogger().warning("丢弃排队的命令时出错: " + e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 把命令放入通道（可在任意线程调用），action在主线程上执行
+     * @param onDiscard 调度器停止时命令仍在排队则调用（在调用stop的线程中）
+     * @return 调度器已停止时返回false，命令不会执行
+     */
+    public boolean submit(Lane lane, Runnable action, Runnable onDiscard) {
+        if (stopped) {
+            return false;
+        }
+        LaneQueue queue = lanes[lane.ordinal()];
+        queue.entries.add(new Entry(action, onDiscard, System.nanoTime()));
+        queue.depth.incrementAndGet();
+        return true;
+    }
+    
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        boolean executed = false;
+        for (LaneQueue queue : lanes) {
+            Entry entry;
+            while ((!executed || System.nanoTime() - deadline < 0) && (entry = queue.entries.poll()) != null) {
+                queue.depth.decrementAndGet();
+                queue.wait.recordNanos(System.nanoTime() - entry.enqueuedNanos);
+                try {
+                    entry.action.run();
+                } catch (RuntimeException e) {
+                    plugin.getLogger().warning("执行排队的命令时出错: " + e);
+                }
+                queue.executed.increment();
+                executed = true;
+            }
+        }
+        if (executed) {
+            long used = System.nanoTime() - start;
+            tickUsage.recordNanos(used);
+            if (used > budgetNanos) {
+                overBudgetTicks.increment();
+            }
+        }
+    }
+    
+    public int getQueueDepth(Lane lane) {
+        return lanes[lane.ordinal()].depth.get();
+    }
+    
+    /**
+     * 命令在通道中的等待时间
+     */
+    public LatencyHistogram getWaitHistogram(Lane lane) {
+        return lanes[lane.ordinal()].wait;
+    }
+    
+    /**
+     * 统计摘要，每个通道一行
+     */
+    public String getStats() {
+        StringBuilder stats = new StringBuilder();
+        for (Lane lane : Lane.values()) {
+            LaneQueue queue = lanes[lane.ordinal()];
+            stats.append(lane.displayName).append("通道: 排队 ").append(queue.depth.get())
+                    .append("，已执行 ").append(queue.executed.sum())
+                    .append("，等待 ").append(queue.wait.summary()).append('\n');
+        }
+        stats.append("每tick占用: ").append(tickUsage.summary()).append("，超出预算 ").append(overBudgetTicks.sum()).append(" 次");
+        return stats.toString();
+    }
+    
+    private static class LaneQueue {
+        final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+        // ConcurrentLinkedQueue.size()需要遍历，深度单独计数
+        final AtomicInteger depth = new AtomicInteger();
+        final LatencyHistogram wait = new LatencyHistogram();
+        final LongAdder executed = new LongAdder();
+    }
+    
+    private static class Entry {
+        final Runnable action;
+        final Runnable onDiscard;
+        final long enqueuedNanos;
+        
+        Entry(Runnable action, Runnable onDiscard, long enqueuedNanos) {
+            this.action = action;
+            this.onDiscard = onDiscard;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}